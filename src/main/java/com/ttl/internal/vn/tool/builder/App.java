@@ -3,7 +3,10 @@ package com.ttl.internal.vn.tool.builder;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import javax.swing.UnsupportedLookAndFeelException;
 
@@ -32,8 +35,13 @@ import org.eclipse.jgit.api.errors.InvalidRemoteException;
 import org.eclipse.jgit.errors.TransportException;
 
 import com.ttl.internal.vn.tool.builder.cli.CliBuildTool;
+import com.ttl.internal.vn.tool.builder.cli.CliBuildTool.BuildTarget;
 import com.ttl.internal.vn.tool.builder.cli.CliBuildTool.DefaultCliGetArtifactInfo;
 import com.ttl.internal.vn.tool.builder.component.BuildTool;
+import com.ttl.internal.vn.tool.builder.git.RenameSettings;
+import com.ttl.internal.vn.tool.builder.task.ConcurrentBuildTask;
+import com.ttl.internal.vn.tool.builder.task.DefaultSubscriber;
+import com.ttl.internal.vn.tool.builder.task.Task;
 
 public class App {
         private static final Options options = new Options() {
@@ -93,6 +101,13 @@ public class App {
                                         .hasArg(true)
                                         .numberOfArgs(1)
                                         .build());
+                        addOption(Option.builder()
+                                        .desc("Build several targets at the same time, comma separated baseRef..targetRef pairs (i.e. v1.0..release/1.0,v2.0..release/2.0). Every target is built in the worktree of its targetRef into a sub folder of artifactFolder named after its targetRef, the artifact info is never asked. NOTE: Setting this will ignore baseRef, targetRef and interactive parameter")
+                                        .longOpt("targets")
+                                        .required(false)
+                                        .hasArg(true)
+                                        .numberOfArgs(1)
+                                        .build());
                         addOption(Option.builder()
                                         .desc("Use working directory as the target of the build, use this to quickly build a test package from working directory, you're expected to fix any compilation first before running with this option, you can use this in addition with entryFilter flag to exclude any erroneous entry from the artifact. NOTE: Setting this will ignore targetRef, patchFile and projectPom parameter")
                                         .option("useWorkingDirectory")
@@ -181,6 +196,69 @@ public class App {
                                         .hasArg(true)
                                         .numberOfArgs(1)
                                         .build());
+                        addOption(Option.builder()
+                                        .desc("Calculate classpaths by forking maven dependency:build-classpath instead of resolving them in-process against the local repository. Default: false")
+                                        .option("forkMavenResolution")
+                                        .required(false)
+                                        .hasArg(false)
+                                        .build());
+                        addOption(Option.builder()
+                                        .desc("Only compile the changed modules and the modules they depend on without running maven clean, the target/classes of other modules are reused. Default: false")
+                                        .option("incrementalCompile")
+                                        .required(false)
+                                        .hasArg(false)
+                                        .build());
+                        addOption(Option.builder()
+                                        .desc("Compile only the changed java sources in-process against the known classpaths and the existing target/classes instead of invoking maven, fall back to maven when it's not possible. Default: false")
+                                        .option("fastCompile")
+                                        .required(false)
+                                        .hasArg(false)
+                                        .build());
+                        addOption(Option.builder()
+                                        .desc("Stash the changes and checkout targetRef in the project folder like before instead of building in a worktree at <artifactFolder>/cache/worktrees, HEAD is restored after the build. Default: false")
+                                        .option("checkoutInPlace")
+                                        .required(false)
+                                        .hasArg(false)
+                                        .build());
+                        addOption(Option.builder()
+                                        .desc("Number of threads used by maven to build the reactor in parallel, same as maven -T (i.e. 4 or 1C). Default: single thread")
+                                        .longOpt("mavenThreads")
+                                        .required(false)
+                                        .hasArg(true)
+                                        .numberOfArgs(1)
+                                        .build());
+                        addOption(Option.builder()
+                                        .desc("Max number of added or deleted files to look for renames by content similarity, 0 for no limit. Default: diff.renameLimit of the repository")
+                                        .longOpt("renameLimit")
+                                        .required(false)
+                                        .hasArg(true)
+                                        .numberOfArgs(1)
+                                        .build());
+                        addOption(Option.builder()
+                                        .desc("Min similarity percentage (0-100) of a rename. Default: 60")
+                                        .longOpt("renameScore")
+                                        .required(false)
+                                        .hasArg(true)
+                                        .numberOfArgs(1)
+                                        .build());
+                        addOption(Option.builder()
+                                        .desc("Only detect exact renames of binary files. Default: false")
+                                        .option("skipBinaryRenames")
+                                        .required(false)
+                                        .hasArg(false)
+                                        .build());
+                        addOption(Option.builder()
+                                        .desc("Only detect renames of files with the exact same content. Default: false")
+                                        .option("exactRenamesOnly")
+                                        .required(false)
+                                        .hasArg(false)
+                                        .build());
+                        addOption(Option.builder()
+                                        .desc("Also copy what is archived to the build folder of the artifact folder, for debugging. Default: false")
+                                        .option("keepStaging")
+                                        .required(false)
+                                        .hasArg(false)
+                                        .build());
                         addOption(Option.builder()
                                         .desc("Whether it will ask for artifact info interactively")
                                         .option("interactive")
@@ -224,6 +302,7 @@ public class App {
                         String gitPassword = commandLine.getOptionValue("gitPassword");
                         String baseRef = commandLine.getOptionValue("baseRef");
                         String targetRef = commandLine.getOptionValue("targetRef");
+                        String targets = commandLine.getOptionValue("targets");
                         File artifactFolder = new File(commandLine.getOptionValue("artifactFolder"));
                         boolean buildConfigJar = commandLine.hasOption("buildConfigJar");
                         boolean buildPatch = commandLine.hasOption("buildPatch");
@@ -265,26 +344,110 @@ public class App {
                                         patchFile,
                                         m2SettingsXml,
                                         DefaultCliGetArtifactInfo.getArtifactInfo(interactive))) {
+                                cliBuildTool.setForkMavenResolution(commandLine.hasOption("forkMavenResolution"));
+                                cliBuildTool.setIncrementalCompile(commandLine.hasOption("incrementalCompile"));
+                                cliBuildTool.setFastCompile(commandLine.hasOption("fastCompile"));
+                                cliBuildTool.setCheckoutInPlace(commandLine.hasOption("checkoutInPlace"));
+                                cliBuildTool.setMavenThreads(getMavenThreads(commandLine));
+                                cliBuildTool.setKeepStaging(commandLine.hasOption("keepStaging"));
+                                cliBuildTool.setRenameSettings(RenameSettings.builder()
+                                                .renameLimit(getIntOption(commandLine, "renameLimit", 0, Integer.MAX_VALUE))
+                                                .renameScore(getIntOption(commandLine, "renameScore", 0, 100))
+                                                .skipBinaryFiles(commandLine.hasOption("skipBinaryRenames"))
+                                                .exactOnly(commandLine.hasOption("exactRenamesOnly"))
+                                                .build());
                                 cliBuildTool.startBuildEnvironment();
-                                cliBuildTool.build(fetch).start();
+                                if (StringUtils.isNotBlank(targets)) {
+                                        buildTargets(cliBuildTool, targets, fetch);
+                                } else {
+                                        cliBuildTool.build(fetch).start();
+                                }
                         }
                 }
         }
 
+        private static void buildTargets(CliBuildTool cliBuildTool, String targets, boolean fetch)
+                        throws IOException, GitAPIException, MavenInvocationException, ClassNotFoundException,
+                        ModelBuildingException, XmlPullParserException, InterruptedException {
+                List<BuildTarget> buildTargets = null;
+                try {
+                        buildTargets = Arrays.stream(targets.split(","))
+                                        .filter(StringUtils::isNotBlank)
+                                        .map(BuildTarget::parse)
+                                        .collect(Collectors.toList());
+                } catch (IllegalArgumentException e) {
+                        exitWithUsage(e.getMessage(), options);
+                }
+                ConcurrentBuildTask buildTask = cliBuildTool.buildTargets(buildTargets, fetch);
+                buildTask.subscribe(new DefaultSubscriber<Task>() {
+                        private String lastProgress;
+
+                        @Override
+                        public synchronized void onNext(Task task) {
+                                // NOTE: One line per target, only printed when one of them progress
+                                String progress = buildTask.explainTask();
+                                if (!progress.equals(lastProgress)) {
+                                        lastProgress = progress;
+                                        System.out.println(progress);
+                                }
+                        }
+
+                        @Override
+                        public void onError(Throwable e) {
+                                System.out.println(e.getMessage());
+                        }
+                });
+                buildTask.start();
+        }
+
         public static CommandLine parseArgs(String[] args, Options options) throws ParseException {
                 try {
                         CommandLineParser parser = new DefaultParser();
                         return parser.parse(options, args);
                 } catch (ParseException e) {
-                        System.out.println(e.getMessage());
-                        HelpFormatter formatter = new HelpFormatter();
-                        formatter.printHelp("java -jar ${artifact}.jar <options> | java -cp <classpaths> "
-                                        + App.class.getName() + " <options>", options);
-                        System.exit(1);
+                        exitWithUsage(e.getMessage(), options);
                         return null;
                 }
         }
 
+        private static void exitWithUsage(String message, Options options) {
+                System.out.println(message);
+                HelpFormatter formatter = new HelpFormatter();
+                formatter.printHelp("java -jar ${artifact}.jar <options> | java -cp <classpaths> "
+                                + App.class.getName() + " <options>", options);
+                System.exit(1);
+        }
+
+        // The maven threads value, maven would only reject it after the build started
+        private static String getMavenThreads(CommandLine commandLine) {
+                String mavenThreads = commandLine.getOptionValue("mavenThreads");
+                try {
+                        CliBuildTool.getMavenThreadCount(mavenThreads);
+                } catch (IllegalArgumentException e) {
+                        exitWithUsage(e.getMessage(), options);
+                }
+                return mavenThreads;
+        }
+
+        // The value of an integer option between min and max, null when the option is not set
+        private static Integer getIntOption(CommandLine commandLine, String option, int min, int max) {
+                String value = commandLine.getOptionValue(option);
+                if (value == null) {
+                        return null;
+                }
+                try {
+                        int intValue = Integer.parseInt(value.trim());
+                        if (intValue >= min && intValue <= max) {
+                                return intValue;
+                        }
+                } catch (NumberFormatException e) {
+                        /** reported below */
+                }
+                exitWithUsage("Invalid " + option + " " + value + ", expected an integer "
+                                + (max == Integer.MAX_VALUE ? ">= " + min : "between " + min + " and " + max), options);
+                return null;
+        }
+
         private static void configureLog4j2(String logDirectory) {
                 File logDirectoryFolder;
                 if (StringUtils.isBlank(logDirectory) || !new File(logDirectory).isDirectory()) {
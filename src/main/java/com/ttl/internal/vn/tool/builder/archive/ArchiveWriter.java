@@ -0,0 +1,608 @@
+package com.ttl.internal.vn.tool.builder.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import com.ttl.internal.vn.tool.builder.util.FutureTasks;
+
+import lombok.Getter;
+
+// NOTE: Write a zip (or jar) archive with the entries deflated in parallel. Every entry is cut in chunks, each chunk is
+// deflated on its own by a worker with its own Deflater and buffers, primed with the 32K before the chunk as dictionary
+// and ended by a sync flush, so the chunks of an entry concatenated in order are one valid deflate stream (the same
+// trick as pigz). The chunks are deflated on the executor of the caller, only a bounded window of them is in flight,
+// the writer stitch them in order into the archive through one large direct buffer and compute the CRC. Already compressed files (i.e. nested jars) are stored as they
+// are, and zip64 records are only written when an entry, an offset or the entry count need them.
+// Archives are reproducible: entries are sorted by name (the manifest first), every entry has the same fixed time and
+// the chunks don't depend on the number of threads, so the same content always give the same bytes. A content manifest
+// (the SHA-256 of every entry) is written next to the archive, and an archive whose content manifest didn't change is
+// not written again
+public class ArchiveWriter {
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int DEFLATE_BUFFER_SIZE = 64 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+    // Chunks in flight per thread
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    // General purpose flag bit 11, the names are UTF-8
+    private static final int UTF8_FLAG = 0x0800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_ENTRY_COUNT_LIMIT = 0xFFFF;
+    // 1980-01-01 00:00:00, the first MS-DOS date
+    private static final long FIXED_DOS_TIME = (1 << 21) | (1 << 16);
+
+    private static final String CONTENT_MANIFEST_EXTENSION = ".sha256";
+    // First line of a content manifest, to be changed with anything changing the bytes written for the same entries
+    private static final String CONTENT_MANIFEST_HEADER = "# archive-writer 1";
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "jar", "war", "ear", "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "png", "jpg", "jpeg", "gif", "mp3", "mp4"));
+
+    private final Executor executor;
+    // Chunks deflated at the same time, the executor isn't owned so it can't tell
+    private final int threads;
+    // Sizes and offsets from this one on are written in zip64 records, only lowered to test them on small archives
+    private final long zip64Limit;
+
+    public ArchiveWriter(Executor executor, int threads) {
+        this(executor, threads, ZIP64_LIMIT);
+    }
+
+    ArchiveWriter(Executor executor, int threads, long zip64Limit) {
+        this.executor = executor;
+        this.threads = Math.max(1, threads);
+        this.zip64Limit = zip64Limit;
+    }
+
+    // An entry of the archive, the content is read from a file or given in memory
+    @Getter
+    public static class Entry {
+        // '/' separated path in the archive
+        private final String name;
+        private final File file;
+        private final byte[] content;
+
+        private Entry(String name, File file, byte[] content) {
+            this.name = name;
+            this.file = file;
+            this.content = content;
+        }
+
+        public static Entry ofFile(String name, File file) {
+            return new Entry(name, file, null);
+        }
+
+        public static Entry ofContent(String name, byte[] content) {
+            return new Entry(name, null, content);
+        }
+
+        long size() {
+            return file != null ? file.length() : content.length;
+        }
+
+        boolean isCompressed() {
+            int extensionIndex = name.lastIndexOf('.');
+            return extensionIndex >= 0
+                    && COMPRESSED_EXTENSIONS.contains(name.substring(extensionIndex + 1).toLowerCase(Locale.ROOT));
+        }
+    }
+
+    public static File getContentManifestFile(File archiveFile) {
+        return new File(archiveFile.getParentFile(), archiveFile.getName() + CONTENT_MANIFEST_EXTENSION);
+    }
+
+    // false when the archive was already written with the same content
+    public boolean write(File archiveFile, Manifest manifest, Collection<Entry> entries) throws IOException {
+        List<Entry> archiveEntries = new ArrayList<>();
+        if (manifest != null) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            manifest.write(os);
+            archiveEntries.add(Entry.ofContent(JarFile.MANIFEST_NAME, os.toByteArray()));
+        }
+        archiveEntries.addAll(entries);
+        return write(archiveFile, archiveEntries);
+    }
+
+    public boolean write(File archiveFile, List<Entry> entries) throws IOException {
+        List<Entry> sortedEntries = new ArrayList<>(entries);
+        sortedEntries.sort(Comparator.comparing((Entry entry) -> !JarFile.MANIFEST_NAME.equals(entry.getName()))
+                .thenComparing(Entry::getName));
+        for (int i = 1; i < sortedEntries.size(); i++) {
+            if (sortedEntries.get(i).getName().equals(sortedEntries.get(i - 1).getName())) {
+                throw new ZipException("duplicate entry: " + sortedEntries.get(i).getName());
+            }
+        }
+        archiveFile.getAbsoluteFile().getParentFile().mkdirs();
+        Workers workers = new Workers();
+        try {
+            // NOTE: Hashing read every entry once more, but that's far cheaper than deflating and writing it again,
+            // and the second read of a small file mostly come from the page cache
+            String contentManifest = getContentManifest(sortedEntries);
+            File contentManifestFile = getContentManifestFile(archiveFile);
+            if (archiveFile.isFile() && contentManifestFile.isFile()
+                    && contentManifest.equals(new String(Files.readAllBytes(contentManifestFile.toPath()), StandardCharsets.UTF_8))) {
+                return false;
+            }
+            // The content manifest is only written once the archive is complete, a failed write never look unchanged
+            Files.deleteIfExists(contentManifestFile.toPath());
+            writeArchive(archiveFile, sortedEntries, workers);
+            File tmpFile = new File(contentManifestFile.getParentFile(), contentManifestFile.getName() + ".tmp");
+            Files.write(tmpFile.toPath(), contentManifest.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmpFile.toPath(), contentManifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } finally {
+            workers.close();
+        }
+    }
+
+    private void writeArchive(File archiveFile, List<Entry> entries, Workers workers) throws IOException {
+        try (ZipOutput output = new ZipOutput(FileChannel.open(archiveFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), zip64Limit)) {
+            Iterator<Chunk> chunks = entries.stream().flatMap(ArchiveWriter::toChunks).iterator();
+            Deque<FutureTask<DeflatedChunk>> inFlight = new ArrayDeque<>();
+            try {
+                List<CentralEntry> centralEntries = new ArrayList<>();
+                CentralEntry current = null;
+                while (chunks.hasNext() || !inFlight.isEmpty()) {
+                    while (chunks.hasNext() && inFlight.size() < threads * CHUNKS_PER_THREAD) {
+                        Chunk chunk = chunks.next();
+                        inFlight.add(submit(() -> deflate(chunk, workers)));
+                    }
+                    DeflatedChunk deflatedChunk = FutureTasks.getResult(inFlight.poll());
+                    if (deflatedChunk.chunk.first) {
+                        current = new CentralEntry(deflatedChunk.chunk.entry);
+                        centralEntries.add(current);
+                    }
+                    output.write(current, deflatedChunk);
+                }
+                output.writeCentralDirectory(centralEntries);
+            } finally {
+                // The chunks not started yet after a failure are never run
+                inFlight.forEach(future -> future.cancel(false));
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(archiveFile.toPath());
+            throw e;
+        }
+    }
+
+    private <T> FutureTask<T> submit(Callable<T> callable) {
+        FutureTask<T> future = new FutureTask<>(callable);
+        executor.execute(future);
+        return future;
+    }
+
+    // One "<sha-256> <name>" line per entry in the order of the archive
+    private String getContentManifest(List<Entry> entries) throws IOException {
+        List<FutureTask<String>> hashes = new ArrayList<>();
+        try {
+            for (Entry entry : entries) {
+                hashes.add(submit(() -> hash(entry)));
+            }
+            StringBuilder sb = new StringBuilder(CONTENT_MANIFEST_HEADER);
+            if (zip64Limit != ZIP64_LIMIT) {
+                sb.append(" zip64Limit=").append(zip64Limit);
+            }
+            sb.append('\n');
+            for (int i = 0; i < entries.size(); i++) {
+                sb.append(FutureTasks.getResult(hashes.get(i))).append("  ").append(entries.get(i).getName()).append('\n');
+            }
+            return sb.toString();
+        } finally {
+            hashes.forEach(future -> future.cancel(false));
+        }
+    }
+
+    private static String hash(Entry entry) throws IOException {
+        MessageDigest digest = newDigest();
+        if (entry.getContent() != null) {
+            digest.update(entry.getContent());
+        } else {
+            try (FileChannel channel = FileChannel.open(entry.getFile().toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Stream<Chunk> toChunks(Entry entry) {
+        long size = entry.size();
+        boolean deflate = !entry.isCompressed();
+        int chunkCount = (int) Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        List<Chunk> chunks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            long offset = (long) i * CHUNK_SIZE;
+            chunks.add(new Chunk(entry, size, offset, (int) Math.min(CHUNK_SIZE, size - offset), i == 0, i == chunkCount - 1, deflate));
+        }
+        return chunks.stream();
+    }
+
+    private static DeflatedChunk deflate(Chunk chunk, Workers workers) throws IOException {
+        Worker worker = workers.take();
+        try {
+            byte[] raw = new byte[chunk.length];
+            read(chunk.entry, chunk.offset, raw, raw.length);
+            if (!chunk.deflate) {
+                return new DeflatedChunk(chunk, raw, null);
+            }
+            Deflater deflater = worker.deflater;
+            deflater.reset();
+            if (!chunk.first) {
+                int dictionaryLength = (int) Math.min(DICTIONARY_SIZE, chunk.offset);
+                read(chunk.entry, chunk.offset - dictionaryLength, worker.dictionary, dictionaryLength);
+                deflater.setDictionary(worker.dictionary, 0, dictionaryLength);
+            }
+            deflater.setInput(raw);
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(raw.length / 2 + 64);
+            if (chunk.last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflated.write(worker.buffer, 0, deflater.deflate(worker.buffer));
+                }
+            } else {
+                int length;
+                do {
+                    length = deflater.deflate(worker.buffer, 0, worker.buffer.length, Deflater.SYNC_FLUSH);
+                    deflated.write(worker.buffer, 0, length);
+                } while (length == worker.buffer.length);
+            }
+            return new DeflatedChunk(chunk, raw, deflated.toByteArray());
+        } finally {
+            workers.release(worker);
+        }
+    }
+
+    private static void read(Entry entry, long offset, byte[] bytes, int length) throws IOException {
+        if (entry.getContent() != null) {
+            System.arraycopy(entry.getContent(), (int) offset, bytes, 0, length);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(entry.getFile().toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException(entry.getFile() + " changed while it was archived");
+                }
+            }
+        }
+    }
+
+    // A Deflater and the buffers of one worker, a worker is used by one chunk at a time
+    private static class Worker {
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final byte[] dictionary = new byte[DICTIONARY_SIZE];
+        private final byte[] buffer = new byte[DEFLATE_BUFFER_SIZE];
+    }
+
+    // NOTE: The idle workers of one archive. A chunk never wait for a worker, one is created when none is idle (the
+    // executor already bound how many chunks run at once). A chunk still running after a failure end its own worker
+    // once the archive is closed, so no Deflater is ended while in use
+    private static class Workers {
+        private final Deque<Worker> idle = new ArrayDeque<>();
+        private boolean closed;
+
+        synchronized Worker take() {
+            Worker worker = idle.poll();
+            return worker != null ? worker : new Worker();
+        }
+
+        synchronized void release(Worker worker) {
+            if (closed) {
+                worker.deflater.end();
+            } else {
+                idle.push(worker);
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            idle.forEach(worker -> worker.deflater.end());
+            idle.clear();
+        }
+    }
+
+    private static class Chunk {
+        private final Entry entry;
+        // Size of the whole entry
+        private final long size;
+        private final long offset;
+        private final int length;
+        private final boolean first;
+        private final boolean last;
+        private final boolean deflate;
+
+        Chunk(Entry entry, long size, long offset, int length, boolean first, boolean last, boolean deflate) {
+            this.entry = entry;
+            this.size = size;
+            this.offset = offset;
+            this.length = length;
+            this.first = first;
+            this.last = last;
+            this.deflate = deflate;
+        }
+    }
+
+    private static class DeflatedChunk {
+        private final Chunk chunk;
+        private final byte[] raw;
+        // null when the chunk is stored
+        private final byte[] deflated;
+
+        DeflatedChunk(Chunk chunk, byte[] raw, byte[] deflated) {
+            this.chunk = chunk;
+            this.raw = raw;
+            this.deflated = deflated;
+        }
+    }
+
+    // What the central directory need to know about an entry
+    private static class CentralEntry {
+        private final byte[] name;
+        private final CRC32 crc = new CRC32();
+        private int method;
+        private long size;
+        private long compressedSize;
+        private long headerOffset;
+        private boolean zip64;
+
+        CentralEntry(Entry entry) {
+            this.name = entry.getName().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    // Sequential writer of the archive file, the local header of an entry written in several chunks is patched once
+    // its CRC and compressed size are known
+    private static class ZipOutput implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final long zip64Limit;
+        private long position;
+
+        ZipOutput(FileChannel channel, long zip64Limit) {
+            this.channel = channel;
+            this.zip64Limit = zip64Limit;
+        }
+
+        void write(CentralEntry entry, DeflatedChunk deflatedChunk) throws IOException {
+            Chunk chunk = deflatedChunk.chunk;
+            entry.crc.update(deflatedChunk.raw);
+            if (chunk.first && chunk.last) {
+                // The whole entry is known, the header is written right away. An entry that doesn't shrink is stored
+                boolean deflate = deflatedChunk.deflated != null && deflatedChunk.deflated.length < deflatedChunk.raw.length;
+                byte[] data = deflate ? deflatedChunk.deflated : deflatedChunk.raw;
+                entry.method = deflate ? DEFLATED : STORED;
+                entry.size = chunk.length;
+                entry.compressedSize = data.length;
+                entry.headerOffset = position;
+                writeLocalHeader(entry, entry.crc.getValue());
+                writeBytes(data);
+                return;
+            }
+            if (chunk.first) {
+                entry.method = chunk.deflate ? DEFLATED : STORED;
+                entry.size = chunk.size;
+                entry.headerOffset = position;
+                // NOTE: A deflated entry could grow a bit, the margin is far more than deflate could ever add
+                entry.zip64 = chunk.size + (chunk.size >>> 9) + 1024 >= zip64Limit;
+                writeLocalHeader(entry, 0);
+            }
+            byte[] data = deflatedChunk.deflated != null ? deflatedChunk.deflated : deflatedChunk.raw;
+            entry.compressedSize += data.length;
+            writeBytes(data);
+            if (chunk.last) {
+                patchLocalHeader(entry);
+            }
+        }
+
+        private void writeLocalHeader(CentralEntry entry, long crc) throws IOException {
+            ensureRemaining(LOCAL_HEADER_SIZE + entry.name.length + 20);
+            buffer.putInt(LOCAL_HEADER_SIGNATURE);
+            buffer.putShort((short) (entry.zip64 ? ZIP64_VERSION : VERSION));
+            buffer.putShort((short) UTF8_FLAG);
+            buffer.putShort((short) entry.method);
+            buffer.putInt((int) FIXED_DOS_TIME);
+            buffer.putInt((int) crc);
+            buffer.putInt((int) (entry.zip64 ? ZIP64_LIMIT : entry.compressedSize));
+            buffer.putInt((int) (entry.zip64 ? ZIP64_LIMIT : entry.size));
+            buffer.putShort((short) entry.name.length);
+            buffer.putShort((short) (entry.zip64 ? 20 : 0));
+            buffer.put(entry.name);
+            if (entry.zip64) {
+                buffer.putShort((short) ZIP64_EXTRA_ID);
+                buffer.putShort((short) 16);
+                buffer.putLong(entry.size);
+                buffer.putLong(entry.compressedSize);
+            }
+            position += LOCAL_HEADER_SIZE + entry.name.length + (entry.zip64 ? 20 : 0);
+        }
+
+        private void patchLocalHeader(CentralEntry entry) throws IOException {
+            flush();
+            ByteBuffer patch = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            patch.putInt((int) entry.crc.getValue()).flip();
+            writeFully(patch, entry.headerOffset + 14);
+            if (entry.zip64) {
+                patch = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                patch.putLong(entry.compressedSize).flip();
+                writeFully(patch, entry.headerOffset + LOCAL_HEADER_SIZE + entry.name.length + 12);
+            } else {
+                patch.clear();
+                patch.putInt((int) entry.compressedSize).flip();
+                writeFully(patch, entry.headerOffset + 18);
+            }
+        }
+
+        void writeCentralDirectory(List<CentralEntry> entries) throws IOException {
+            long centralDirectoryOffset = position;
+            for (CentralEntry entry : entries) {
+                boolean zip64Size = entry.size >= zip64Limit || entry.compressedSize >= zip64Limit;
+                boolean zip64Offset = entry.headerOffset >= zip64Limit;
+                int extraLength = (zip64Size ? 16 : 0) + (zip64Offset ? 8 : 0);
+                int version = zip64Size || zip64Offset || entry.zip64 ? ZIP64_VERSION : VERSION;
+                ensureRemaining(46 + entry.name.length + 4 + extraLength);
+                buffer.putInt(CENTRAL_HEADER_SIGNATURE);
+                buffer.putShort((short) version);
+                buffer.putShort((short) version);
+                buffer.putShort((short) UTF8_FLAG);
+                buffer.putShort((short) entry.method);
+                buffer.putInt((int) FIXED_DOS_TIME);
+                buffer.putInt((int) entry.crc.getValue());
+                buffer.putInt((int) (zip64Size ? ZIP64_LIMIT : entry.compressedSize));
+                buffer.putInt((int) (zip64Size ? ZIP64_LIMIT : entry.size));
+                buffer.putShort((short) entry.name.length);
+                buffer.putShort((short) (extraLength > 0 ? extraLength + 4 : 0));
+                // comment length, disk number, internal and external attributes
+                buffer.putShort((short) 0);
+                buffer.putShort((short) 0);
+                buffer.putShort((short) 0);
+                buffer.putInt(0);
+                buffer.putInt((int) (zip64Offset ? ZIP64_LIMIT : entry.headerOffset));
+                buffer.put(entry.name);
+                if (extraLength > 0) {
+                    buffer.putShort((short) ZIP64_EXTRA_ID);
+                    buffer.putShort((short) extraLength);
+                    if (zip64Size) {
+                        buffer.putLong(entry.size);
+                        buffer.putLong(entry.compressedSize);
+                    }
+                    if (zip64Offset) {
+                        buffer.putLong(entry.headerOffset);
+                    }
+                }
+                position += 46 + entry.name.length + (extraLength > 0 ? extraLength + 4 : 0);
+            }
+            long centralDirectorySize = position - centralDirectoryOffset;
+            boolean zip64Size = centralDirectorySize >= zip64Limit;
+            boolean zip64Offset = centralDirectoryOffset >= zip64Limit;
+            boolean zip64 = entries.size() >= ZIP64_ENTRY_COUNT_LIMIT || zip64Size || zip64Offset;
+            ensureRemaining(56 + 20 + 22);
+            if (zip64) {
+                long zip64EndOffset = position;
+                buffer.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+                buffer.putLong(44);
+                buffer.putShort((short) ZIP64_VERSION);
+                buffer.putShort((short) ZIP64_VERSION);
+                buffer.putInt(0);
+                buffer.putInt(0);
+                buffer.putLong(entries.size());
+                buffer.putLong(entries.size());
+                buffer.putLong(centralDirectorySize);
+                buffer.putLong(centralDirectoryOffset);
+                buffer.putInt(ZIP64_LOCATOR_SIGNATURE);
+                buffer.putInt(0);
+                buffer.putLong(zip64EndOffset);
+                buffer.putInt(1);
+                position += 56 + 20;
+            }
+            buffer.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) Math.min(entries.size(), ZIP64_ENTRY_COUNT_LIMIT));
+            buffer.putShort((short) Math.min(entries.size(), ZIP64_ENTRY_COUNT_LIMIT));
+            buffer.putInt((int) (zip64Size ? ZIP64_LIMIT : centralDirectorySize));
+            buffer.putInt((int) (zip64Offset ? ZIP64_LIMIT : centralDirectoryOffset));
+            buffer.putShort((short) 0);
+            position += 22;
+            flush();
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            if (bytes.length <= buffer.remaining()) {
+                buffer.put(bytes);
+            } else {
+                // Large data bypass the buffer
+                flush();
+                ByteBuffer data = ByteBuffer.wrap(bytes);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            position += bytes.length;
+        }
+
+        private void ensureRemaining(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer bytes, long offset) throws IOException {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes, offset + bytes.position());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
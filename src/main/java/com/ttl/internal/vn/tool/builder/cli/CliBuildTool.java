@@ -1,6 +1,21 @@
 package com.ttl.internal.vn.tool.builder.cli;
 
+import com.ttl.internal.vn.tool.builder.archive.ArchiveWriter;
+import com.ttl.internal.vn.tool.builder.compiler.ClassFileScanner;
+import com.ttl.internal.vn.tool.builder.compiler.FastCompiler;
+import com.ttl.internal.vn.tool.builder.compiler.SourceIndex;
+import com.ttl.internal.vn.tool.builder.git.DiffCache;
 import com.ttl.internal.vn.tool.builder.git.GitRef;
+import com.ttl.internal.vn.tool.builder.git.GitWorktree;
+import com.ttl.internal.vn.tool.builder.git.RenameSettings;
+import com.ttl.internal.vn.tool.builder.git.RenameStats;
+import com.ttl.internal.vn.tool.builder.maven.ClasspathCache;
+import com.ttl.internal.vn.tool.builder.maven.MavenBuildReport;
+import com.ttl.internal.vn.tool.builder.maven.MavenDependencyResolver;
+import com.ttl.internal.vn.tool.builder.maven.MavenRuntime;
+import com.ttl.internal.vn.tool.builder.maven.ModuleDiscovery;
+import com.ttl.internal.vn.tool.builder.maven.ModuleGraph;
+import com.ttl.internal.vn.tool.builder.maven.ModulePathTrie;
 import com.ttl.internal.vn.tool.builder.task.*;
 import com.ttl.internal.vn.tool.builder.util.GitUtil;
 import lombok.AllArgsConstructor;
@@ -9,6 +24,8 @@ import lombok.Getter;
 import lombok.Setter;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.building.*;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
@@ -18,30 +35,37 @@ import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.errors.RevisionSyntaxException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import java.io.*;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.ZipOutputStream;
 
 public class CliBuildTool implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(CliBuildTool.class);
     private final boolean clone;
     private final String repoURI;
     private final String username;
@@ -65,10 +89,42 @@ public class CliBuildTool implements AutoCloseable {
     private final File buildFolder;
 
     private final File projectFolder;
+    // NOTE: Folder the build run in, a worktree of targetRef unless the build use the working directory of the user
+    private File workspaceFolder;
     private final Function<List<String>, Map<String, ArtifactInfo>> getArtifactInfo;
 
     private GitUtil gitUtil;
 
+    // NOTE: Use the old dependency:build-classpath invocation instead of the in-process resolver
+    @Setter
+    private boolean forkMavenResolution;
+    // NOTE: Skip maven clean and reuse the target/classes of every module
+    @Setter
+    private boolean incrementalCompile;
+    // NOTE: Maven -T value (i.e. 4 or 1C), blank to build the reactor with a single thread
+    @Setter
+    private String mavenThreads;
+    // NOTE: Compile the changed sources in-process with javac instead of maven when the classpaths are known
+    @Setter
+    private boolean fastCompile;
+    // NOTE: Shared with other builds (i.e. the ui session) to keep maven warm, a private one is created when unset
+    @Setter
+    private MavenRuntime mavenRuntime;
+    private boolean ownedMavenRuntime;
+    private boolean ownedGitUtil;
+    // NOTE: Old behavior, stash the changes and checkout targetRef in the working directory of the user instead of
+    // building in a worktree, HEAD is restored after the build
+    @Setter
+    private boolean checkoutInPlace;
+    // NOTE: Other builds run at the same time on the same local maven repository
+    private boolean concurrentBuild;
+    // NOTE: Bounds of the rename detection of the diff, large refactorings could otherwise spend minutes scoring renames
+    @Setter
+    private RenameSettings renameSettings = RenameSettings.DEFAULT;
+    // NOTE: Also write what is archived to the build folder, only useful to debug an artifact
+    @Setter
+    private boolean keepStaging;
+
     // NOTE: Testing-purpose only
     public static void main(String[] args) throws IOException, GitAPIException, MavenInvocationException,
             ClassNotFoundException, ModelBuildingException, XmlPullParserException, InterruptedException {
@@ -138,6 +194,7 @@ public class CliBuildTool implements AutoCloseable {
         this.repoURI = repoURI;
         this.patchFile = patchFile;
         this.projectFolder = projectFolder;
+        this.workspaceFolder = projectFolder;
         this.username = username;
         this.password = password;
         this.baseRef = baseRef;
@@ -173,17 +230,32 @@ public class CliBuildTool implements AutoCloseable {
             git = GitUtil.openLocalRepo(projectFolder);
         }
         this.gitUtil = new GitUtil(git);
+        this.ownedGitUtil = true;
+        gitUtil.setDiffCache(new DiffCache(GitUtil.DEFAULT_DIFF_CACHE_SIZE, getDiffCacheFolder()));
         if (!artifactFolder.exists()) {
             artifactFolder.mkdirs();
         }
     }
 
-    public static List<DiffEntry> getDiff(GitUtil gitUtil, String baseRef, String targetRef, String entryFilter, boolean useWorkingDirectory) throws IOException {
+    public static List<DiffEntry> getDiff(GitUtil gitUtil, String baseRef, String targetRef, String entryFilter, boolean useWorkingDirectory,
+                                          RenameSettings renameSettings) throws IOException {
+        return getDiff(gitUtil, baseRef, targetRef, entryFilter, useWorkingDirectory, null, renameSettings,
+                renameStats -> logger.info("Diff of {}..{}: {}", baseRef, useWorkingDirectory ? "working directory" : targetRef, renameStats));
+    }
+
+    // NOTE: Only the files under modulePaths (null for every file) are walked, a change outside of every leaf module
+    // never end up in an artifact so the rest of the tree (i.e. vendored folders) is never read. The config and
+    // database change prefixes are inside the modules so they are already covered. The entry filter match the whole
+    // entry (change type included) and can only be applied on the result
+    public static List<DiffEntry> getDiff(GitUtil gitUtil, String baseRef, String targetRef, String entryFilter, boolean useWorkingDirectory,
+                                          List<String> modulePaths, RenameSettings renameSettings,
+                                          Consumer<RenameStats> renameStatsConsumer) throws IOException {
+        TreeFilter pathFilter = getPathFilter(modulePaths);
         List<DiffEntry> diffEntries;
         if (useWorkingDirectory) {
-            diffEntries = gitUtil.getDiffWd(baseRef);
+            diffEntries = gitUtil.getDiffWd(baseRef, pathFilter, renameSettings, renameStatsConsumer);
         } else {
-            diffEntries = gitUtil.getDiff(baseRef, targetRef);
+            diffEntries = gitUtil.getDiff(baseRef, targetRef, pathFilter, renameSettings, renameStatsConsumer);
         }
         return Optional
                 .ofNullable(entryFilter).map(Pattern::compile).map(pattern -> diffEntries.stream()
@@ -192,7 +264,39 @@ public class CliBuildTool implements AutoCloseable {
     }
 
     public List<DiffEntry> getDiff() throws IOException {
-        return getDiff(gitUtil, baseRef, targetRef, entryFilter, useWorkingDirectory);
+        return getDiff(gitUtil, baseRef, targetRef, entryFilter, useWorkingDirectory, renameSettings);
+    }
+
+    private static TreeFilter getPathFilter(List<String> relativePaths) {
+        if (relativePaths == null || relativePaths.isEmpty()) {
+            return TreeFilter.ALL;
+        }
+        List<String> gitPaths = relativePaths.stream()
+                .map(path -> path.replace(File.separatorChar, '/'))
+                .collect(Collectors.toList());
+        // A single module project has the project folder as its only leaf module
+        if (gitPaths.stream().anyMatch(String::isEmpty)) {
+            return TreeFilter.ALL;
+        }
+        return PathFilterGroup.createFromStrings(gitPaths);
+    }
+
+    // Leaf module relative paths touched by the diff entries, when targetRef is given the modules are read from its
+    // tree in the git object database so nothing need to be checked out
+    public static List<String> getImpactedModules(GitUtil gitUtil, ModuleDiscovery moduleDiscovery, File projectFolder,
+                                                  List<DiffEntry> diffEntries, String targetRef, boolean useWorkingDirectory)
+            throws IOException, XmlPullParserException, ModelBuildingException, InterruptedException {
+        List<String> leafModuleRelativePaths = useWorkingDirectory || targetRef == null
+                ? moduleDiscovery.discoverLeafModules(projectFolder, Runtime.getRuntime().availableProcessors())
+                : moduleDiscovery.discoverLeafModules(gitUtil, targetRef);
+        ModulePathTrie modulePathTrie = new ModulePathTrie(leafModuleRelativePaths);
+        return diffEntries.stream()
+                .flatMap(diffEntry -> Stream.of(diffEntry.getOldPath(), diffEntry.getNewPath()))
+                .filter(path -> !DiffEntry.DEV_NULL.equals(path))
+                .map(modulePathTrie::findModule)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
     }
 
     @Getter
@@ -200,138 +304,215 @@ public class CliBuildTool implements AutoCloseable {
     public static class CliBuildToolBuildContext {
         private String previousHEAD;
         private List<String> leafModuleRelativePaths;
+        // NOTE: Built once from leafModuleRelativePaths, shared by every stage mapping a path to its module
+        private ModulePathTrie modulePathTrie;
         private List<DiffEntry> diffEntries;
         private Map<String, List<DiffEntry>> moduleToDeletedEntriesMap;
         private Map<String, List<DiffEntry>> moduleToChangedEntriesMap;
         private Map<String, List<String>> classpathMap;
+        private String classpathCacheKey;
+        private ModuleGraph moduleGraph;
         private Map<String, List<String>> depedendOnOtherModuleMap;
         private Map<String, List<String>> depedendOnModuleMap;
         private List<String> freeChangedModules;
         private List<String> freeDeletedModules;
         private Map<String, ArtifactInfo> artifactInfoModuleMap;
+        private Map<String, File> fastCompileOutputFolderMap;
+        private MavenBuildReport mavenBuildReport = new MavenBuildReport();
     }
 
-    public BuildTask build(boolean fetch) throws IOException, GitAPIException, MavenInvocationException,
-            ClassNotFoundException, ModelBuildingException, XmlPullParserException, InterruptedException {
-        BuildTask buildTask = new BuildTask() {
+    private DiscreteTask newFetchTask() {
+        GitFetchTask gitFetchTask = new GitFetchTask(gitUtil, username, password);
+        gitFetchTask.setProgressMonitor(new GitCloneProgressMonitor(gitFetchTask, new PrintWriter(System.out)));
+        return new DiscreteTask("Fetch latest update") {
             @Override
-            public void cleanup() throws GitAPIException, IOException {
-                if (!useWorkingDirectory) {
-                    restoreGitWorkingDirectory(((CliBuildToolBuildContext) getBuildCtx()).getPreviousHEAD());
-                }
+            public boolean start() throws GitAPIException {
+                inProgress = true;
+                gitFetchTask.start();
+                return true;
             }
-        };
 
-        buildTask.setBuildCtx(new CliBuildToolBuildContext());
-        if (fetch) {
-            GitFetchTask gitFetchTask = new GitFetchTask(gitUtil, username, password);
-            gitFetchTask.setProgressMonitor(new GitCloneProgressMonitor(gitFetchTask, new PrintWriter(System.out)));
-            buildTask.addSubTask(new DiscreteTask("Fetch latest update") {
-                @Override
-                public boolean start() throws GitAPIException {
-                    inProgress = true;
-                    gitFetchTask.start();
-                    return true;
-                }
+            @Override
+            public int totalWork() {
+                int totalWork = gitFetchTask.totalWork();
+                return Math.max(totalWork, 0);
+            }
 
-                @Override
-                public int totalWork() {
-                    int totalWork = gitFetchTask.totalWork();
-                    return Math.max(totalWork, 0);
-                }
+            @Override
+            public int doneWork() {
+                return gitFetchTask.doneWork();
+            }
+        };
+    }
 
-                @Override
-                public int doneWork() {
-                    return gitFetchTask.doneWork();
-                }
-            });
+    // NOTE: Build every target at the same time, each one in the worktree of its targetRef and in its own artifact sub
+    // folder. The repository and the maven runtime of this build tool are shared by all of them, forked maven builds
+    // lock the shared local repository with file locks. The artifact info of this build tool is asked for one build at
+    // a time since it could be interactive. The build tool of every target is closed once all of them are done
+    public ConcurrentBuildTask buildTargets(List<BuildTarget> targets, boolean fetch) throws IOException, GitAPIException,
+            MavenInvocationException, ClassNotFoundException, ModelBuildingException, XmlPullParserException, InterruptedException {
+        if (useWorkingDirectory || checkoutInPlace) {
+            throw new IllegalArgumentException("Multiple targets can only be built in worktrees, not with "
+                    + (useWorkingDirectory ? "useWorkingDirectory" : "checkoutInPlace"));
         }
-
-        buildTask.addSubTask(new DiscreteTask("Clean-up previous build artifacts") {
+        Set<String> targetRefs = new HashSet<>();
+        for (BuildTarget target : targets) {
+            if (!targetRefs.add(target.getTargetRef())) {
+                throw new IllegalArgumentException("Every target must have a different targetRef, they are built in the worktree of their targetRef: "
+                        + target.getTargetRef() + " is the targetRef of several targets");
+            }
+        }
+        List<CliBuildTool> targetBuildTools = new ArrayList<>();
+        ConcurrentBuildTask concurrentBuildTask = new ConcurrentBuildTask() {
             @Override
-            public boolean start() throws IOException {
-                inProgress = true;
-                FileUtils.deleteDirectory(targetFolder);
-                FileUtils.deleteDirectory(buildFolder);
-                return true;
+            public void cleanup() throws Exception {
+                closeAll(targetBuildTools);
             }
-        });
+        };
+        if (fetch) {
+            concurrentBuildTask.setPreparationTask(newFetchTask());
+        }
+        Function<List<String>, Map<String, ArtifactInfo>> sharedGetArtifactInfo = modules -> {
+            synchronized (targetBuildTools) {
+                return getArtifactInfo.apply(modules);
+            }
+        };
+        try {
+            for (BuildTarget target : targets) {
+                CliBuildTool targetBuildTool = forTarget(target, sharedGetArtifactInfo);
+                targetBuildTools.add(targetBuildTool);
+                concurrentBuildTask.addBuild(target.toString(), targetBuildTool.build(false));
+            }
+        } catch (Exception e) {
+            try {
+                closeAll(targetBuildTools);
+            } catch (Exception ex) {
+                e.addSuppressed(ex);
+            }
+            throw e;
+        }
+        return concurrentBuildTask;
+    }
 
-        buildTask.addSubTask(new DiscreteTask("Saving previous git HEAD") {
-            @Override
-            public boolean start() throws Exception {
-                inProgress = true;
-                CliBuildToolBuildContext buildCtx = (CliBuildToolBuildContext) buildTask.getBuildCtx();
-                buildCtx.setPreviousHEAD(Optional.of(gitUtil.findRef("HEAD")).map(GitRef::getRawRef).map(ref -> {
-                    if (ref.isSymbolic()) {
-                        return ref.getLeaf().getName();
-                    } else {
-                        return ref.getObjectId().getName();
-                    }
-                }).orElseThrow(() -> new UnsupportedOperationException("should not happen with normal git repo")));
-                return true;
+    private static void closeAll(List<CliBuildTool> cliBuildTools) throws GitAPIException, IOException {
+        Exception failure = null;
+        for (CliBuildTool cliBuildTool : cliBuildTools) {
+            try {
+                cliBuildTool.close();
+            } catch (GitAPIException | IOException | RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
             }
-        });
+        }
+        cliBuildTools.clear();
+        if (failure instanceof GitAPIException) {
+            throw (GitAPIException) failure;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
 
-        // NOTE: If useWorkingDirectory is enabled it should not perform any checkout or
-        // apply git patch
-        if (!useWorkingDirectory) {
-            buildTask.addSubTask(new DiscreteTask("Checking out " + targetRef) {
-                @Override
-                public boolean start() throws Exception {
-                    inProgress = true;
-                    checkout(targetRef);
-                    return true;
+    // NOTE: The returned build tool share the git repository and the maven runtime of this one, closing it doesn't
+    // close them
+    private CliBuildTool forTarget(BuildTarget target, Function<List<String>, Map<String, ArtifactInfo>> getArtifactInfo)
+            throws ModelBuildingException {
+        CliBuildTool cliBuildTool = new CliBuildTool(
+                false,
+                repoURI,
+                projectFolder,
+                username,
+                password,
+                target.getBaseRef(),
+                target.getTargetRef(),
+                entryFilter,
+                new File(artifactFolder, GitWorktree.toFolderName(target.getTargetRef())),
+                updateSnapshot,
+                shouldBuildConfigJar,
+                shouldBuildReleasePackage,
+                shouldBuildPatch,
+                false,
+                String.join(",", configPrefixes),
+                String.join(",", databaseChangePrefixes),
+                javaHome,
+                patchFile,
+                m2SettingXml,
+                getArtifactInfo);
+        cliBuildTool.gitUtil = gitUtil;
+        cliBuildTool.mavenRuntime = getMavenRuntime();
+        cliBuildTool.forkMavenResolution = forkMavenResolution;
+        cliBuildTool.incrementalCompile = incrementalCompile;
+        cliBuildTool.mavenThreads = mavenThreads;
+        cliBuildTool.fastCompile = fastCompile;
+        cliBuildTool.renameSettings = renameSettings;
+        cliBuildTool.keepStaging = keepStaging;
+        cliBuildTool.concurrentBuild = true;
+        return cliBuildTool;
+    }
+
+    public BuildTask build(boolean fetch) throws IOException, GitAPIException, MavenInvocationException,
+            ClassNotFoundException, ModelBuildingException, XmlPullParserException, InterruptedException {
+        BuildTask buildTask = new BuildTask() {
+            @Override
+            public void cleanup() throws GitAPIException, IOException {
+                // NOTE: Every build has a report, even when maven didn't run (i.e. cached classpaths and nothing to
+                // compile), it's written before the working directory is restored since the module names are read
+                // from the poms of the build
+                reportMavenBuild((CliBuildToolBuildContext) getBuildCtx());
+                if (!useWorkingDirectory && checkoutInPlace) {
+                    restoreGitWorkingDirectory(((CliBuildToolBuildContext) getBuildCtx()).getPreviousHEAD());
                 }
-            });
-            if (patchFile != null) {
-                buildTask.addSubTask(new DiscreteTask("Apply git patch") {
-                    @Override
-                    public boolean start() throws Exception {
-                        inProgress = true;
-                        gitUtil.applyPatchFile(patchFile);
-                        return true;
-                    }
-                });
             }
+        };
+
+        buildTask.setBuildCtx(new CliBuildToolBuildContext());
+        workspaceFolder = useWorkingDirectory || checkoutInPlace
+                ? projectFolder
+                : GitWorktree.getFolder(getWorktreesFolder(), targetRef);
+        if (fetch) {
+            buildTask.addSubTask(newFetchTask());
         }
 
-        buildTask.addSubTask(new DiscreteTask("Get all leaf maven submodule relative paths and their output folders") {
+        // NOTE: Without a git patch every pom of targetRef could be read straight from the git object database, so
+        // the modules and the changes are planned before the working tree is touched
+        boolean planFromGit = !useWorkingDirectory && patchFile == null;
+        DiscreteTask discoverModulesTask = new DiscreteTask("Get all leaf maven submodule relative paths and their output folders") {
             @Override
             public boolean start() throws Exception {
                 inProgress = true;
-                Deque<String> modulesStack = new ArrayDeque<>();
-                modulesStack.add(".");
-                List<String> leafModuleRelativePaths = new ArrayList<>();
-                while (!modulesStack.isEmpty()) {
-                    String moduleRelativePath = modulesStack.pop();
-                    File moduleFolder = new File(projectFolder, moduleRelativePath);
-                    File modulePom = new File(moduleFolder, "pom.xml");
-                    Model mavenModel = buildMavenProjectModel(modulePom);
-                    if (mavenModel.getModules().isEmpty()) {
-                        String normalizeModuleRelativePath = relativize(moduleFolder, projectFolder).toString();
-                        leafModuleRelativePaths.add(normalizeModuleRelativePath);
-                    } else {
-                        modulesStack.addAll(mavenModel.getModules().stream().map(submodule -> Paths.get(moduleRelativePath, submodule)).map(Path::toString).collect(Collectors.toList()));
-                    }
-                }
+                List<String> leafModuleRelativePaths = planFromGit
+                        ? getMavenRuntime().getModuleDiscovery().discoverLeafModules(gitUtil, targetRef)
+                        : getMavenRuntime().getModuleDiscovery().discoverLeafModules(workspaceFolder, Runtime.getRuntime().availableProcessors());
                 CliBuildToolBuildContext buildCtx = (CliBuildToolBuildContext) buildTask.getBuildCtx();
                 buildCtx.setLeafModuleRelativePaths(leafModuleRelativePaths);
+                buildCtx.setModulePathTrie(new ModulePathTrie(leafModuleRelativePaths));
                 return true;
             }
-        });
+        };
 
-        buildTask.addSubTask(new DiscreteTask("Calculate the diff") {
+        DiscreteTask diffTask = new DiscreteTask("Calculate the diff") {
             @Override
             public boolean start() throws Exception {
                 inProgress = true;
-                ((CliBuildToolBuildContext) buildTask.getBuildCtx()).setDiffEntries(getDiff());
+                CliBuildToolBuildContext buildCtx = (CliBuildToolBuildContext) buildTask.getBuildCtx();
+                buildCtx.setDiffEntries(getDiff(gitUtil, baseRef, targetRef, entryFilter, useWorkingDirectory,
+                        buildCtx.getLeafModuleRelativePaths(), renameSettings, renameStats -> {
+                            logger.info("Diff of {}..{}: {}", baseRef, useWorkingDirectory ? "working directory" : targetRef, renameStats);
+                            explainTask = "Calculate the diff (" + renameStats + ")";
+                            Optional.ofNullable(subscriber).ifPresent(it -> it.onNext(this));
+                        }));
                 return true;
             }
-        });
+        };
 
         // module relative path -> diffs (group by type)
-        buildTask.addSubTask(new DiscreteTask("Calculate submodules, changed submodules, submodules that have deleted entry") {
+        DiscreteTask groupChangesTask = new DiscreteTask("Calculate submodules, changed submodules, submodules that have deleted entry") {
             @Override
             public boolean start() {
                 inProgress = true;
@@ -340,25 +521,25 @@ public class CliBuildTool implements AutoCloseable {
                 buildCtx.setModuleToDeletedEntriesMap(moduleToDeletedEntriesMap);
                 Map<String, List<DiffEntry>> moduleToChangedEntriesMap = new HashMap<>();
                 buildCtx.setModuleToChangedEntriesMap(moduleToChangedEntriesMap);
-                List<String> leafModuleRelativePaths = buildCtx.getLeafModuleRelativePaths();
+                ModulePathTrie modulePathTrie = buildCtx.getModulePathTrie();
                 for (DiffEntry diffEntry : buildCtx.getDiffEntries()) {
                     switch (diffEntry.getChangeType()) {
                         case DELETE: {
-                            Optional.ofNullable(getModuleFromRelativePath(projectFolder.getAbsolutePath(), diffEntry.getOldPath(), leafModuleRelativePaths))
+                            Optional.ofNullable(modulePathTrie.findModule(diffEntry.getOldPath()))
                                     .ifPresent(moduleRelativePath ->  moduleToDeletedEntriesMap.computeIfAbsent(moduleRelativePath, k -> new ArrayList<>()).add(diffEntry));
                             break;
                         }
                         case MODIFY:
                         case COPY:
                         case ADD: {
-                            Optional.ofNullable(getModuleFromRelativePath(projectFolder.getAbsolutePath(), diffEntry.getNewPath(), leafModuleRelativePaths))
+                            Optional.ofNullable(modulePathTrie.findModule(diffEntry.getNewPath()))
                                     .ifPresent(moduleRelativePath ->  moduleToChangedEntriesMap.computeIfAbsent(moduleRelativePath, k -> new ArrayList<>()).add(diffEntry));
                             break;
                         }
                         case RENAME: {
-                            Optional.ofNullable(getModuleFromRelativePath(projectFolder.getAbsolutePath(), diffEntry.getOldPath(), leafModuleRelativePaths))
+                            Optional.ofNullable(modulePathTrie.findModule(diffEntry.getOldPath()))
                                     .ifPresent(deletedModuleRelativePath ->  moduleToDeletedEntriesMap.computeIfAbsent(deletedModuleRelativePath, k -> new ArrayList<>()).add(diffEntry));
-                            Optional.ofNullable(getModuleFromRelativePath(projectFolder.getAbsolutePath(), diffEntry.getNewPath(), leafModuleRelativePaths))
+                            Optional.ofNullable(modulePathTrie.findModule(diffEntry.getNewPath()))
                                     .ifPresent(modifyModuleRelativePath ->  moduleToChangedEntriesMap.computeIfAbsent(modifyModuleRelativePath, k -> new ArrayList<>()).add(diffEntry));
                             break;
                         }
@@ -368,8 +549,93 @@ public class CliBuildTool implements AutoCloseable {
                 }
                 return true;
             }
+        };
+
+        buildTask.addSubTask(new DiscreteTask("Clean-up previous build artifacts") {
+            @Override
+            public boolean start() throws IOException {
+                inProgress = true;
+                // NOTE: The artifacts of the previous build are kept aside, an archive whose content didn't change is
+                // moved back instead of being written again
+                File previousTargetFolder = getPreviousTargetFolder();
+                FileUtils.deleteDirectory(previousTargetFolder);
+                if (targetFolder.exists()) {
+                    previousTargetFolder.getParentFile().mkdirs();
+                    Files.move(targetFolder.toPath(), previousTargetFolder.toPath());
+                }
+                FileUtils.deleteDirectory(buildFolder);
+                return true;
+            }
         });
 
+        if (planFromGit) {
+            buildTask.addSubTask(discoverModulesTask);
+            buildTask.addSubTask(diffTask);
+            buildTask.addSubTask(groupChangesTask);
+        }
+
+        // NOTE: If useWorkingDirectory is enabled it should not perform any checkout or
+        // apply git patch
+        if (!useWorkingDirectory && checkoutInPlace) {
+            buildTask.addSubTask(new DiscreteTask("Saving previous git HEAD") {
+                @Override
+                public boolean start() throws Exception {
+                    inProgress = true;
+                    CliBuildToolBuildContext buildCtx = (CliBuildToolBuildContext) buildTask.getBuildCtx();
+                    buildCtx.setPreviousHEAD(Optional.of(gitUtil.findRef("HEAD")).map(GitRef::getRawRef).map(ref -> {
+                        if (ref.isSymbolic()) {
+                            return ref.getLeaf().getName();
+                        } else {
+                            return ref.getObjectId().getName();
+                        }
+                    }).orElseThrow(() -> new UnsupportedOperationException("should not happen with normal git repo")));
+                    return true;
+                }
+            });
+            buildTask.addSubTask(new DiscreteTask("Checking out " + targetRef) {
+                @Override
+                public boolean start() throws Exception {
+                    inProgress = true;
+                    checkout(targetRef);
+                    return true;
+                }
+            });
+            if (patchFile != null) {
+                buildTask.addSubTask(new DiscreteTask("Apply git patch") {
+                    @Override
+                    public boolean start() throws Exception {
+                        inProgress = true;
+                        gitUtil.applyPatchFile(patchFile);
+                        return true;
+                    }
+                });
+            }
+        } else if (!useWorkingDirectory) {
+            // NOTE: HEAD, the index and the working directory of the user are left untouched, the worktree is reused
+            // by the next build of the same ref so only the changed files are written
+            buildTask.addSubTask(new DiscreteTask("Checking out " + targetRef + " into " + workspaceFolder) {
+                @Override
+                public boolean start() throws Exception {
+                    inProgress = true;
+                    try (GitWorktree worktree = GitWorktree.open(gitUtil.getRepository(), getWorktreesFolder(), targetRef)) {
+                        worktree.checkout(targetRef);
+                        if (patchFile != null) {
+                            explainTask = "Apply git patch";
+                            Optional.ofNullable(subscriber).ifPresent(it -> it.onNext(this));
+                            worktree.applyPatch(patchFile);
+                        }
+                    }
+                    return true;
+                }
+            });
+        }
+
+        if (!planFromGit) {
+            buildTask.addSubTask(discoverModulesTask);
+            buildTask.addSubTask(diffTask);
+            buildTask.addSubTask(groupChangesTask);
+        }
+
         buildTask.addSubTask(new DiscreteTask("Calculate classpath of the project") {
             private int totalWork;
             private int doneWork;
@@ -391,18 +657,70 @@ public class CliBuildTool implements AutoCloseable {
             }
 
             @Override
-            public synchronized boolean start() throws InterruptedException {
+            public synchronized boolean start() throws InterruptedException, IOException, XmlPullParserException {
                 CliBuildToolBuildContext buildCtx = (CliBuildToolBuildContext) buildTask.getBuildCtx();
                 Map<String, List<String>> classpathMap = new HashMap<>();
                 buildCtx.setClasspathMap(classpathMap);
 
-                MavenTask mavenTask = calculateClasspaths(new File(projectFolder, "pom.xml"), m2SettingXml, buildCtx.getLeafModuleRelativePaths());
+                // NOTE: The classpath of a module only depends on the poms, the settings.xml and the parent poms,
+                // so when none of them changed since the last build we could skip the dependency resolution entirely
+                ClasspathCache classpathCache = new ClasspathCache(getClasspathCacheFolder());
+                String classpathCacheKey = classpathCache.computeKey(workspaceFolder, buildCtx.getLeafModuleRelativePaths(), m2SettingXml);
+                buildCtx.setClasspathCacheKey(classpathCacheKey);
+                // NOTE: Planning pass, when the module graph of these poms is already known only the free modules
+                // affected by the diff and the modules they depend on are resolved and compiled. Their classpaths are
+                // not a complete entry of the cache, so they are not stored
+                Optional<List<String>> plannedModules = planModules(buildCtx, classpathCache, classpathCacheKey);
+                if (plannedModules.isPresent() && plannedModules.get().isEmpty()) {
+                    // No module is affected by the diff
+                    return true;
+                }
+                List<String> classpathModules = plannedModules.orElse(buildCtx.getLeafModuleRelativePaths());
+                Optional<Map<String, List<String>>> knownClasspathMap = classpathCache.load(classpathCacheKey);
+                if (!knownClasspathMap.isPresent() && !forkMavenResolution) {
+                    explainTask = "Resolve dependencies of " + classpathModules.size() + " modules";
+                    Optional.ofNullable(subscriber).ifPresent(it -> it.onNext(this));
+                    knownClasspathMap = resolveClasspathsInProcess(classpathModules);
+                    if (knownClasspathMap.isPresent() && !plannedModules.isPresent()) {
+                        storeClasspathCache(classpathCache, classpathCacheKey, knownClasspathMap.get());
+                    }
+                }
+
+                MavenTask mavenTask;
+                if (knownClasspathMap.isPresent()) {
+                    classpathMap.putAll(knownClasspathMap.get());
+                    List<String> changedModules = getChangedModules(buildCtx);
+                    if (changedModules.isEmpty()) {
+                        // Nothing to compile
+                        return true;
+                    }
+                    if (fastCompile && !hasChangedPom(buildCtx)) {
+                        explainTask = "Compile changed sources of " + changedModules.size() + " modules in-process";
+                        Optional.ofNullable(subscriber).ifPresent(it -> it.onNext(this));
+                        Optional<Map<String, File>> fastCompileOutputFolderMap = new FastCompiler(workspaceFolder, CliBuildTool.this::getFastCompileFolder)
+                                .compile(getChangedJavaFiles(buildCtx), classpathMap);
+                        if (fastCompileOutputFolderMap.isPresent()) {
+                            buildCtx.setFastCompileOutputFolderMap(fastCompileOutputFolderMap.get());
+                            return true;
+                        }
+                    }
+                    mavenTask = compileModules(new File(workspaceFolder, "pom.xml"), m2SettingXml, changedModules);
+                } else {
+                    mavenTask = calculateClasspaths(new File(workspaceFolder, "pom.xml"), m2SettingXml, classpathModules,
+                            plannedModules.isPresent());
+                }
                 mavenTask.subscribe(new DefaultSubscriber<Task>() {
                     @SuppressWarnings("unchecked")
                     @Override
                     public void onComplete() {
                         Map<String, List<String>> classpaths = (Map<String, List<String>>) mavenTask.getResult();
+                        if (classpaths == null) {
+                            return;
+                        }
                         classpathMap.putAll(classpaths);
+                        if (!plannedModules.isPresent()) {
+                            storeClasspathCache(classpathCache, classpathCacheKey, classpaths);
+                        }
                     }
 
                     @Override
@@ -419,6 +737,7 @@ public class CliBuildTool implements AutoCloseable {
                         Optional.ofNullable(subscriber).ifPresent(it -> it.onError(throwable));
                     }
                 });
+                mavenTask.addEventListener(buildCtx.getMavenBuildReport());
                 ExecutorService executorService = Executors.newSingleThreadExecutor();
                 Future<Boolean> classpathMapFuture = executorService.submit(mavenTask::start);
                 while (!classpathMapFuture.isDone()) {
@@ -441,6 +760,8 @@ public class CliBuildTool implements AutoCloseable {
                 } catch (Throwable ex1) {
                     mavenTask.stopExceptionally(ex1);
                     return false;
+                } finally {
+                    executorService.shutdown();
                 }
             }
         });
@@ -463,39 +784,26 @@ public class CliBuildTool implements AutoCloseable {
                 buildCtx.setDepedendOnOtherModuleMap(depedendOnOtherModuleMap);
                 buildCtx.setFreeChangedModules(freeChangedModules);
                 buildCtx.setFreeDeletedModules(freeDeletedModules);
-                // Calculate dependent module map: module relative path -> depend on module relative paths (not include self)
+                ModuleGraph moduleGraph = getModuleGraph(buildCtx);
+                buildCtx.setModuleGraph(moduleGraph);
+                if (moduleGraph.hasCycle()) {
+                    logger.warn("Modules {} depend on each other", moduleGraph.getCyclicModules());
+                }
+                // Calculate dependent module map: module relative path -> depend on module relative paths (not include self),
+                // in classpath order
                 for (String leafModuleRelativePath : leafModuleRelativePaths) {
-                    List<String> moduleClasspaths = buildCtx.getClasspathMap().get(leafModuleRelativePath).stream()
-                            .map(Paths::get)
-                            .filter(classpath -> classpath.startsWith(projectFolder.getAbsolutePath()))
-                            .map(path -> relativize(path.toFile(), projectFolder))
-                            .map(Path::toString)
-                            .map(classpath -> getModuleFromRelativePath(projectFolder.getAbsolutePath(), classpath, leafModuleRelativePaths))
-                            .collect(Collectors.toList());
-                    depedendOnOtherModuleMap.put(leafModuleRelativePath, moduleClasspaths);
+                    depedendOnOtherModuleMap.put(leafModuleRelativePath, moduleGraph.getOrderedDependencies(leafModuleRelativePath));
                 }
                 // Calculate depedent module map: module relative path -> depend on module relative paths (including self)
                 depedendOnModuleMap.putAll(depedendOnOtherModuleMap.entrySet().stream()
                         .collect(Collectors.toMap(Entry::getKey, it -> Stream.of(Collections.singletonList(it.getKey()), it.getValue())
                                 .flatMap(List::stream).collect(Collectors.toList()))));
 
-                // Calculate free module relative paths
-                Set<String> aggregatedDependOnModuleRelativePaths = depedendOnOtherModuleMap.entrySet().stream()
-                        .flatMap(it -> it.getValue().stream()).collect(Collectors.toSet());
-                List<String> freeModuleRelativePaths = leafModuleRelativePaths.stream().filter(it -> !aggregatedDependOnModuleRelativePaths.contains(it))
-                        .collect(Collectors.toList());
-
-                // Filter out only free modules that have submodules that have deleted files
-                freeDeletedModules.addAll(freeModuleRelativePaths.stream().filter(moduleRelativePath -> {
-                    List<String> dependOnModuleRelativePaths = depedendOnModuleMap.get(moduleRelativePath);
-                    return dependOnModuleRelativePaths.stream().anyMatch(moduleToDeletedEntriesMap::containsKey);
-                }).collect(Collectors.toList()));
-
-                // Filter out only free modules that have submodules that changed
-                freeChangedModules.addAll(freeModuleRelativePaths.stream().filter(module -> {
-                    List<String> dependOnModules = depedendOnModuleMap.get(module);
-                    return dependOnModules.stream().anyMatch(moduleToChangedEntriesMap::containsKey);
-                }).collect(Collectors.toList()));
+                // Free modules (no other module depend on them) that have submodules that have deleted files
+                freeDeletedModules.addAll(moduleGraph.getAffectedRoots(moduleToDeletedEntriesMap.keySet()));
+
+                // Free modules that have submodules that changed
+                freeChangedModules.addAll(moduleGraph.getAffectedRoots(moduleToChangedEntriesMap.keySet()));
                 return true;
             }
         });
@@ -508,9 +816,13 @@ public class CliBuildTool implements AutoCloseable {
                 CliBuildToolBuildContext buildCtx = (CliBuildToolBuildContext) buildTask.getBuildCtx();
 
                 buildCtx.getFreeChangedModules().forEach(freeChangedModuleRelativePath -> {
-                    File mavenOutputTargetDir = Paths.get(projectFolder.getAbsolutePath(), freeChangedModuleRelativePath, "target", "classes").toFile();
+                    File mavenOutputTargetDir = Paths.get(workspaceFolder.getAbsolutePath(), freeChangedModuleRelativePath, "target", "classes").toFile();
                     List<String> moduleClasspaths = buildCtx.getClasspathMap().get(freeChangedModuleRelativePath);
-                    List<String> addedModuleClasspaths = Stream.of(Stream.of(mavenOutputTargetDir), moduleClasspaths.stream().map(File::new))
+                    // NOTE: Classes compiled by the fast path shadow the stale ones inside target/classes
+                    Stream<File> fastCompileOutputDirs = buildCtx.getDepedendOnModuleMap().get(freeChangedModuleRelativePath).stream()
+                            .map(module -> Optional.ofNullable(buildCtx.getFastCompileOutputFolderMap()).map(it -> it.get(module)).orElse(null))
+                            .filter(Objects::nonNull);
+                    List<String> addedModuleClasspaths = Stream.of(fastCompileOutputDirs, Stream.of(mavenOutputTargetDir), moduleClasspaths.stream().map(File::new))
                             .flatMap(st -> st)
                             .filter(File::exists)
                             .map(File::getAbsolutePath)
@@ -542,38 +854,13 @@ public class CliBuildTool implements AutoCloseable {
                     noteDeletedFiles(buildCtx.getFreeDeletedModules(), buildCtx.getDepedendOnModuleMap(), buildCtx.getModuleToDeletedEntriesMap());
                 }
 
-                if (shouldBuildPatch) {
-                    buildPatch(buildCtx.getFreeChangedModules(), buildCtx.getDepedendOnModuleMap(), buildCtx.getModuleToChangedEntriesMap(), buildCtx.getClasspathMap(),
-                            buildCtx.getArtifactInfoModuleMap());
-                }
-
-                if (shouldBuildConfigJar) {
-                    buildConfig(buildCtx.getFreeChangedModules(), buildCtx.getDepedendOnModuleMap(), buildCtx.getModuleToChangedEntriesMap(), buildCtx.getArtifactInfoModuleMap(),
-                            configPrefixes);
-                }
-
-                if (shouldBuildReleasePackage) {
-                    buildReleasePackage(buildCtx.getFreeChangedModules(), buildCtx.getDepedendOnModuleMap(), buildCtx.getModuleToChangedEntriesMap(),
-                            buildCtx.getArtifactInfoModuleMap(),
-                            databaseChangePrefixes);
-                }
+                buildArtifacts(buildCtx);
                 return true;
             }
         });
         return buildTask;
     }
 
-    private String getModuleFromRelativePath(String rootPath, String checkedPath, List<String> leafModuleRelativePaths) {
-        String normalizedCheckedPath = Paths.get(rootPath, checkedPath).normalize().toAbsolutePath().toString();
-        for (String leafModuleRelativePath : leafModuleRelativePaths) {
-            String normalizedLeafModuleRelativePath = Paths.get(rootPath, leafModuleRelativePath).normalize().toAbsolutePath().toString();
-            if (normalizedCheckedPath.startsWith(normalizedLeafModuleRelativePath)) {
-                return leafModuleRelativePath;
-            }
-        }
-        return null;
-    }
-
     private void noteDeletedFiles(List<String> freeModuleContainDeletedFiles,
                                   Map<String, List<String>> dependOnModuleMap, Map<String, List<DiffEntry>> moduleToDeletedEntriesMap)
             throws IOException {
@@ -598,20 +885,6 @@ public class CliBuildTool implements AutoCloseable {
         }
     }
 
-    private Model buildMavenProjectModel(File pomFile) throws ModelBuildingException, IOException, XmlPullParserException {
-        MavenXpp3Reader pomReader = new MavenXpp3Reader();
-        Model simpleModel = pomReader.read(new FileInputStream(pomFile));
-        if (!Optional.ofNullable(simpleModel.getModules()).orElseGet(ArrayList::new).isEmpty()) {
-            ModelBuilder modelBuilder = new DefaultModelBuilderFactory().newInstance();
-            ModelBuildingRequest buildingRequest = new DefaultModelBuildingRequest();
-            buildingRequest.setPomFile(pomFile);
-            ModelBuildingResult buildingResult = modelBuilder.build(buildingRequest);
-            return buildingResult.getEffectiveModel();
-        } else {
-            return simpleModel;
-        }
-    }
-
     private static Path relativize(File child, File parent) {
         return parent.toPath().toAbsolutePath().normalize().relativize(child.toPath().toAbsolutePath().normalize());
     }
@@ -620,228 +893,168 @@ public class CliBuildTool implements AutoCloseable {
         return gitUtil.checkoutAndStash(target);
     }
 
-    // package -> changed class files
-    private Map<String, List<File>> filterCompiledClassesInChangedModule(URLClassLoader classLoader,
-                                                                         Map<String, List<DiffEntry>> changedModuleToEntriesMap, String module) throws IOException, ClassNotFoundException {
+    // package -> changed class files, the class files of every class declared in the changed sources (nested and
+    // secondary top level classes included) are found by reading the class files, nothing is loaded. Sources already
+    // in the source index are only looked up by their blob id, the other ones are only added to the index when
+    // updateSourceIndex is set
+    private Map<String, List<File>> filterCompiledClassesInChangedModule(ClassFileScanner classFileScanner, SourceIndex sourceIndex,
+                                                                         boolean updateSourceIndex, Map<String, List<DiffEntry>> changedModuleToEntriesMap,
+                                                                         String module, Executor executor) throws IOException, ClassNotFoundException {
         Map<String, List<File>> packageToChangedClassFilesMap = new HashMap<>();
-        Map<String, List<Class<?>>> packageToChangedClassesMap = new HashMap<>();
         if (!changedModuleToEntriesMap.containsKey(module)) {
             return packageToChangedClassFilesMap;
         }
-        List<File> changedJavaFilesInModule = changedModuleToEntriesMap.get(module).stream()
-                .map(DiffEntry::getNewPath)
-                .map(it -> new File(projectFolder, it))
-                .filter(CliBuildTool::isJavaFile)
-                .collect(Collectors.toList());
-        for (File javaFile : changedJavaFilesInModule) {
-            String packageName = getJavaPackage(javaFile);
-            String className = getClassName(javaFile);
-            List<Class<?>> changedJavaClasses = new ArrayList<>();
-            Class<?> clazz = classLoader.loadClass(packageName + "." + className);
-
-            Deque<Class<?>> stack = new ArrayDeque<>();
-            stack.add(clazz);
-
-            while (!stack.isEmpty()) {
-                Class<?> c = stack.pop();
-                changedJavaClasses.add(c);
-                stack.addAll(Arrays.asList(c.getDeclaredClasses()));
+        // package relative source path -> blob id, sources missing from the index
+        Map<String, ObjectId> unindexedSources = new LinkedHashMap<>();
+        for (DiffEntry diffEntry : changedModuleToEntriesMap.get(module)) {
+            File javaFile = new File(workspaceFolder, diffEntry.getNewPath());
+            if (!isJavaFile(javaFile)) {
+                continue;
             }
-
-            List<File> classFiles = packageToChangedClassFilesMap.computeIfAbsent(packageName, k -> new ArrayList<>());
-            packageToChangedClassesMap.computeIfAbsent(packageName, k -> new ArrayList<>()).addAll(changedJavaClasses);
-            for (Class<?> c : changedJavaClasses) {
-                File classpath = new File(c.getProtectionDomain().getCodeSource().getLocation().getFile());
-                File classFile = new File(classpath, javaNameToPath(c.getName()) + ".class");
-                if (classFile.isFile()) {
-                    classFiles.add(classFile);
-                }
+            ObjectId blobId = getBlobId(diffEntry, javaFile);
+            Optional<SourceIndex.Entry> indexEntry = sourceIndex.get(blobId);
+            Optional<List<File>> classFiles = indexEntry.flatMap(classFileScanner::findClassFiles);
+            if (classFiles.isPresent()) {
+                packageToChangedClassFilesMap.computeIfAbsent(indexEntry.get().getPackageName(), k -> new ArrayList<>())
+                        .addAll(classFiles.get());
+                continue;
             }
+            String packageName = Optional.ofNullable(getJavaPackage(javaFile)).orElse("");
+            unindexedSources.put(packageName.isEmpty() ? javaFile.getName() : packageName.replace('.', '/') + "/" + javaFile.getName(), blobId);
         }
+        Map<String, SourceIndex.Entry> indexEntries = classFileScanner.indexSources(new ArrayList<>(unindexedSources.keySet()), executor);
+        for (Map.Entry<String, SourceIndex.Entry> entry : indexEntries.entrySet()) {
+            if (updateSourceIndex) {
+                sourceIndex.put(unindexedSources.get(entry.getKey()), entry.getValue());
+            }
+            // NOTE: The class files were just read so they exist
+            packageToChangedClassFilesMap.computeIfAbsent(entry.getValue().getPackageName(), k -> new ArrayList<>())
+                    .addAll(classFileScanner.findClassFiles(entry.getValue()).orElseThrow(IllegalStateException::new));
+        }
+        return packageToChangedClassFilesMap;
+    }
 
-        // NOTE: Quite a hacky approach to collect all anonymous classes, required maven
-        // clean for reproducible result
-        Map<String, List<File>> packageToChangedAnonymousClassMap = packageToChangedClassesMap.entrySet().stream()
-                .collect(Collectors.toMap(Entry::getKey, it -> {
-                    String packageName = it.getKey();
-                    Set<Class<?>> changedJavaClassSet = new HashSet<>(it.getValue());
-                    Set<String> classNameSet = changedJavaClassSet.stream()
-                            .map(Class::getName)
-                            .collect(Collectors.toSet());
-                    return packageToChangedClassFilesMap.get(packageName).stream()
-                            .map(File::getParentFile)
-                            .distinct()
-                            .map(File::listFiles)
-                            .flatMap(Stream::of)
-                            .filter(File::isFile)
-                            .map(File::getName)
-                            .filter(iit -> iit.endsWith(".class"))
-                            .map(iit -> iit.substring(0, iit.length() - ".class".length()))
-                            .map(iit -> packageName + "." + iit)
-                            .filter(iit -> !classNameSet.contains(iit))
-                            .map(iit -> {
-                                try {
-                                    return classLoader.loadClass(iit);
-                                } catch (ClassNotFoundException e) {
-                                    throw new RuntimeException(e);
-                                }
-                            })
-                            .filter(Class::isAnonymousClass)
-                            .filter(c -> {
-                                Class<?> enclosingClass = c;
-                                while (enclosingClass.getEnclosingClass() != null) {
-                                    enclosingClass = enclosingClass.getEnclosingClass();
-                                }
-                                return changedJavaClassSet.contains(enclosingClass);
-                            })
-                            .map(c -> {
-                                File classpath = new File(
-                                        c.getProtectionDomain().getCodeSource().getLocation().getFile());
-                                return new File(classpath, javaNameToPath(c.getName()) + ".class");
-                            })
-                            .collect(Collectors.toList());
-                }));
-
-        // Merge 2 map
-        return Stream.of(packageToChangedClassFilesMap, packageToChangedAnonymousClassMap)
-                .map(Map::entrySet)
-                .flatMap(Set::stream)
-                .collect(Collectors.toMap(
-                        Entry::getKey,
-                        Entry::getValue,
-                        (val1, val2) -> Stream.of(val1, val2).flatMap(List::stream).collect(Collectors.toList())));
+    // The blob id computed by the diff, the file is hashed when the diff doesn't know it or when the git patch could
+    // have changed it
+    private ObjectId getBlobId(DiffEntry diffEntry, File file) throws IOException {
+        if (patchFile == null && diffEntry.getNewId().isComplete() && !ObjectId.zeroId().equals(diffEntry.getNewId().toObjectId())) {
+            return diffEntry.getNewId().toObjectId();
+        }
+        return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, Files.readAllBytes(file.toPath()));
     }
 
-    private void buildConfig(List<String> freeModules, Map<String, List<String>> dependentOnModuleMap,
-                             Map<String, List<DiffEntry>> changedModuleToEntriesMap, Map<String, ArtifactInfo> artifactInfoModuleMap,
-                             List<String> configPrefixes)
+    // config/ entries of the release package: the config jar, or the config files themselves when they are not
+    // compressed
+    private List<ArchiveWriter.Entry> buildConfig(String module, Map<String, List<String>> dependentOnModuleMap,
+                                                  Map<String, List<DiffEntry>> changedModuleToEntriesMap, Map<String, ArtifactInfo> artifactInfoModuleMap,
+                                                  List<String> configPrefixes, Executor executor)
             throws IOException {
-        for (String module : freeModules) {
-            File buildConfigFolder = getBuildConfigFolder(module);
-            buildConfigFolder.mkdirs();
-
-            ArtifactInfo artifactInfo = artifactInfoModuleMap.get(module);
-            List<String> dependOnModules = dependentOnModuleMap.get(module);
-
-            Map<String, List<File>> changedConfigFilesModuleMap = dependOnModules.stream()
-                    .collect(Collectors.toMap(dependOnModule -> dependOnModule, dependOnModule -> {
-                        File moduleFolder = new File(projectFolder, dependOnModule);
-                        return changedModuleToEntriesMap.getOrDefault(dependOnModule, new ArrayList<>()).stream()
-                                .map(DiffEntry::getNewPath)
-                                .map(it -> new File(projectFolder, it))
-                                .filter(changedFile -> {
-                                    Path relativePathToModule = relativize(changedFile, moduleFolder);
-                                    return configPrefixes.stream().anyMatch(relativePathToModule::startsWith);
-                                })
-                                .collect(Collectors.toList());
-                    }));
-
-            // Copy config files starting from lowest priority module to highest priority
-            // module
-            // Highest priority module will override config from lower priority module, so
-            // make sure that config changed between module does not override each other
-            for (String dependOnModule : dependOnModules) {
-                File moduleFolder = new File(projectFolder, dependOnModule);
-                // Start copying
-                List<File> changedConfigFiles = changedConfigFilesModuleMap.getOrDefault(dependOnModule, new ArrayList<>());
-                for (File changedFile : changedConfigFiles) {
-                    Path relativePathToModule = relativize(changedFile, moduleFolder);
-                    File destinationFile = new File(buildConfigFolder,
-                            relativePathToModule.subpath(1, relativePathToModule.getNameCount()).toString());
-                    FileUtils.copyFile(changedFile, destinationFile);
-                }
-            }
-
-            if (buildConfigFolder.listFiles() != null && buildConfigFolder.listFiles().length > 0) {
-                if (artifactInfoModuleMap.get(module).isConfigCompress()) {
-                    // Create a jar
-                    createJarFile(getTargetConfigJarFile(module, artifactInfo), buildConfigFolder, null);
-                } else {
-                    // NOTE: I shouldn't use getTargetConfigJarFile, but I'm too lazy anyway
-                    FileUtils.copyDirectory(buildConfigFolder,
-                            getTargetConfigJarFile(module, artifactInfo).getParentFile());
-                }
+        ArtifactInfo artifactInfo = artifactInfoModuleMap.get(module);
+        Map<String, ArchiveWriter.Entry> entries = collectChangedFiles(workspaceFolder, dependentOnModuleMap.get(module), changedModuleToEntriesMap,
+                configPrefixes, "");
+        stage(getBuildConfigFolder(module), entries.values());
+        if (entries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        File targetConfigFile = getTargetConfigJarFile(module, artifactInfo);
+        if (artifactInfo.isConfigCompress()) {
+            writeArchive(targetConfigFile, null, entries.values(), executor);
+            return Collections.singletonList(ArchiveWriter.Entry.ofFile("config/" + targetConfigFile.getName(), targetConfigFile));
+        }
+        // NOTE: The release package read the config files from the workspace, they are only copied when they are the
+        // artifact. I shouldn't use getTargetConfigJarFile, but I'm too lazy anyway
+        if (!shouldBuildReleasePackage) {
+            for (ArchiveWriter.Entry entry : entries.values()) {
+                FileUtils.copyFile(entry.getFile(), new File(targetConfigFile.getParentFile(), entry.getName()));
             }
         }
+        return entries.values().stream()
+                .map(entry -> ArchiveWriter.Entry.ofFile("config/" + entry.getName(), entry.getFile()))
+                .collect(Collectors.toList());
     }
 
-    private void buildReleasePackage(List<String> freeModules, Map<String, List<String>> dependentOnModuleMap,
-                                     Map<String, List<DiffEntry>> changedModuleToEntriesMap, Map<String, ArtifactInfo> artifactInfoModuleMap,
-                                     List<String> databaseChangePrefixes)
+    // The release package, empty when there is nothing to release
+    private Optional<File> buildReleasePackage(String module, Map<String, List<String>> dependentOnModuleMap,
+                                               Map<String, List<DiffEntry>> changedModuleToEntriesMap, Map<String, ArtifactInfo> artifactInfoModuleMap,
+                                               List<String> databaseChangePrefixes, List<ArchiveWriter.Entry> patchEntries,
+                                               List<ArchiveWriter.Entry> configEntries, Executor executor)
             throws IOException {
+        ArtifactInfo artifactInfo = artifactInfoModuleMap.get(module);
+        Map<String, ArchiveWriter.Entry> entries = new TreeMap<>();
+        configEntries.forEach(entry -> entries.put(entry.getName(), entry));
+        patchEntries.forEach(entry -> entries.put(entry.getName(), entry));
+        entries.putAll(collectChangedFiles(workspaceFolder, dependentOnModuleMap.get(module), changedModuleToEntriesMap, databaseChangePrefixes,
+                "DatabaseChange/"));
+        stage(getBuildReleaseFolder(module), entries.values());
+
+        Optional<File> releasePackageFile = Optional.empty();
+        if (!entries.isEmpty()) {
+            releasePackageFile = Optional.of(getTargetReleasePackageZipFile(module, artifactInfo));
+            writeArchive(releasePackageFile.get(), null, entries.values(), executor);
+        }
+        // NOTE: The patch and config are delivered inside the release package
+        File targetConfigJarFolder = getTargetConfigJarFile(module, artifactInfo).getParentFile();
+        if (targetConfigJarFolder.exists()) {
+            FileUtils.deleteDirectory(targetConfigJarFolder);
+        }
+        File targetPatchFolder = getTargetPatchJarFile(module, artifactInfo).getParentFile();
+        if (targetPatchFolder.exists()) {
+            FileUtils.deleteDirectory(targetPatchFolder);
+        }
+        return releasePackageFile;
+    }
 
-        for (String module : freeModules) {
-            File buildReleasePackageFolder = getBuildReleaseFolder(module);
-            buildReleasePackageFolder.mkdirs();
-
-            ArtifactInfo artifactInfo = artifactInfoModuleMap.get(module);
-            File targetPatchJarFile = getTargetPatchJarFile(module, artifactInfo);
-
-            File changedReleaseConfigFolder = new File(buildReleasePackageFolder, "config");
-            File changedDatabaseFolder = new File(buildReleasePackageFolder, "DatabaseChange");
-            File libFolder = new File(buildReleasePackageFolder, "Lib");
-
-            File targetConfigJarFolder = getTargetConfigJarFile(module, artifactInfo).getParentFile();
-
-            // Copy config changes
-            if (targetConfigJarFolder.listFiles() != null && targetConfigJarFolder.listFiles().length > 0) {
-                FileUtils.copyDirectory(targetConfigJarFolder, changedReleaseConfigFolder);
-            }
-
-            // Copy patch to lib folder
-            if (targetPatchJarFile.isFile()) {
-                FileUtils.copyFileToDirectory(targetPatchJarFile, libFolder);
-            }
-
-            // Copy database changes
-            List<String> dependOnModules = dependentOnModuleMap.get(module);
-            Map<String, List<File>> changedDatabaseModuleMap = dependOnModules.stream()
-                    .collect(Collectors.toMap(dependOnModule -> dependOnModule, dependOnModule -> {
-                        File moduleFolder = new File(projectFolder, dependOnModule);
-                        return changedModuleToEntriesMap.getOrDefault(dependOnModule, new ArrayList<>()).stream()
-                                .map(DiffEntry::getNewPath)
-                                .map(it -> new File(projectFolder, it))
-                                .filter(changedFile -> {
-                                    Path relativePathToModule = relativize(changedFile, moduleFolder);
-                                    return databaseChangePrefixes.stream().anyMatch(relativePathToModule::startsWith);
-                                })
-                                .collect(Collectors.toList());
-                    }));
-            for (String dependOnModule : dependOnModules) {
-                File moduleFolder = new File(projectFolder, dependOnModule);
-                // Start copying
-                List<File> changedDatabaseFiles = changedDatabaseModuleMap.get(dependOnModule);
-                for (File changedFile : changedDatabaseFiles) {
-                    Path relativePathToModule = relativize(changedFile, moduleFolder);
-                    File destinationFile = new File(changedDatabaseFolder,
-                            relativePathToModule.subpath(1, relativePathToModule.getNameCount()).toString());
-                    FileUtils.copyFile(changedFile, destinationFile);
+    // archive entry name -> changed file of dependOnModules under one of the prefixes, named by its path in the module
+    // without the first folder. dependOnModules go from the lowest to the highest priority module, so a file changed by
+    // a higher priority module override the same file of a lower priority one
+    static Map<String, ArchiveWriter.Entry> collectChangedFiles(File workspaceFolder, List<String> dependOnModules,
+                                                                Map<String, List<DiffEntry>> changedModuleToEntriesMap, List<String> prefixes, String folder) {
+        Map<String, ArchiveWriter.Entry> entries = new TreeMap<>();
+        for (String dependOnModule : dependOnModules) {
+            File moduleFolder = new File(workspaceFolder, dependOnModule);
+            for (DiffEntry diffEntry : changedModuleToEntriesMap.getOrDefault(dependOnModule, new ArrayList<>())) {
+                File changedFile = new File(workspaceFolder, diffEntry.getNewPath());
+                Path relativePathToModule = relativize(changedFile, moduleFolder);
+                if (prefixes.stream().anyMatch(relativePathToModule::startsWith)) {
+                    String name = folder + relativePathToModule.subpath(1, relativePathToModule.getNameCount()).toString()
+                            .replace(File.separatorChar, '/');
+                    entries.put(name, ArchiveWriter.Entry.ofFile(name, changedFile));
                 }
             }
-
-            if (targetConfigJarFolder.exists()) {
-                FileUtils.deleteDirectory(targetConfigJarFolder);
-            }
-            if (targetPatchJarFile.getParentFile().exists()) {
-                FileUtils.deleteDirectory(targetPatchJarFile.getParentFile());
-            }
-            if (buildReleasePackageFolder.listFiles() != null && buildReleasePackageFolder.listFiles().length > 0) {
-                // Create package release zip files
-                createZipFile(getTargetReleasePackageZipFile(module, artifactInfo), buildReleasePackageFolder);
-            }
         }
+        return entries;
     }
 
-    private String getClassName(File javaFile) {
-        if (!isJavaFile(javaFile)) {
-            return null;
+    // NOTE: Archives are written straight from the workspace and class folders, the staging folders are only written
+    // as a debug output of what is archived
+    private void stage(File stagingFolder, Collection<ArchiveWriter.Entry> entries) throws IOException {
+        if (!keepStaging) {
+            return;
+        }
+        for (ArchiveWriter.Entry entry : entries) {
+            File stagedFile = new File(stagingFolder, entry.getName());
+            if (entry.getFile() != null) {
+                FileUtils.copyFile(entry.getFile(), stagedFile);
+            } else {
+                FileUtils.writeByteArrayToFile(stagedFile, entry.getContent());
+            }
         }
-        String fileName = javaFile.getName();
-        return fileName.substring(0, fileName.length() - ".java".length()).trim();
     }
 
-    private Path javaNameToPath(String className) {
-        return Paths.get("", className.split("\\."));
+    private void writeArchive(File archiveFile, Manifest manifest, Collection<ArchiveWriter.Entry> entries, Executor executor)
+            throws IOException {
+        File previousArchiveFile = getPreviousTargetFolder().toPath()
+                .resolve(targetFolder.getAbsoluteFile().toPath().relativize(archiveFile.getAbsoluteFile().toPath())).toFile();
+        File previousContentManifestFile = ArchiveWriter.getContentManifestFile(previousArchiveFile);
+        if (previousArchiveFile.isFile() && previousContentManifestFile.isFile()) {
+            archiveFile.getParentFile().mkdirs();
+            Files.move(previousArchiveFile.toPath(), archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(previousContentManifestFile.toPath(), ArchiveWriter.getContentManifestFile(archiveFile).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (!new ArchiveWriter(executor, Runtime.getRuntime().availableProcessors()).write(archiveFile, manifest, entries)) {
+            logger.info("Skip writing unchanged " + archiveFile);
+        }
     }
 
     private static boolean haveFileExtension(File file, String extension) {
@@ -854,44 +1067,108 @@ public class CliBuildTool implements AutoCloseable {
         return haveFileExtension(file, ".java");
     }
 
-    private void buildPatch(List<String> freeModuleRelativePaths, Map<String, List<String>> dependentOnModuleMap,
-                            Map<String, List<DiffEntry>> changedModuleToEntriesMap, Map<String, List<String>> classpathMap,
-                            Map<String, ArtifactInfo> artifactInfoModuleMap)
-            throws ClassNotFoundException, IOException, MavenInvocationException, ModelBuildingException {
-        for (String moduleRelativePath : freeModuleRelativePaths) {
-            File buildPatchFolder = getBuildPatchFolder(moduleRelativePath);
-            buildPatchFolder.mkdirs();
-
-            ArtifactInfo artifactInfo = artifactInfoModuleMap.get(moduleRelativePath);
-            List<String> classpaths = new ArrayList<>(classpathMap.get(moduleRelativePath));
-            List<URL> urls = new ArrayList<>();
-            for (String classpath : classpaths) {
-                urls.add(new File(classpath).toURI().toURL());
+    // Lib/ entry of the release package, empty when no class changed
+    private List<ArchiveWriter.Entry> buildPatch(String moduleRelativePath, SourceIndex sourceIndex, boolean updateSourceIndex,
+                                                 Map<String, List<String>> dependentOnModuleMap,
+                                                 Map<String, List<DiffEntry>> changedModuleToEntriesMap, Map<String, List<String>> classpathMap,
+                                                 Map<String, ArtifactInfo> artifactInfoModuleMap, Executor executor)
+            throws ClassNotFoundException, IOException {
+        ArtifactInfo artifactInfo = artifactInfoModuleMap.get(moduleRelativePath);
+        // NOTE: Only the class folders of the classpath could contain a changed class, the first one wins like
+        // it would for a class loader
+        ClassFileScanner classFileScanner = new ClassFileScanner(classpathMap.get(moduleRelativePath).stream()
+                .map(File::new)
+                .filter(File::isDirectory)
+                .collect(Collectors.toList()));
+
+        List<String> dependOnModules = dependentOnModuleMap.get(moduleRelativePath);
+
+        // The class files are archived from the class folders
+        Map<String, ArchiveWriter.Entry> entries = new TreeMap<>();
+        for (String dependOnModule : dependOnModules) {
+            for (Map.Entry<String, List<File>> entry : filterCompiledClassesInChangedModule(classFileScanner, sourceIndex,
+                    updateSourceIndex, changedModuleToEntriesMap, dependOnModule, executor).entrySet()) {
+                String packagePath = entry.getKey().replace('.', '/');
+                for (File classFile : entry.getValue()) {
+                    String name = packagePath.isEmpty() ? classFile.getName() : packagePath + "/" + classFile.getName();
+                    entries.put(name, ArchiveWriter.Entry.ofFile(name, classFile));
+                }
             }
+        }
+        stage(getBuildPatchFolder(moduleRelativePath), entries.values());
+        if (entries.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-            List<String> dependOnModules = dependentOnModuleMap.get(moduleRelativePath);
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        File patchJarFile = getTargetPatchJarFile(moduleRelativePath, artifactInfo);
+        writeArchive(patchJarFile, manifest, entries.values(), executor);
+        return Collections.singletonList(ArchiveWriter.Entry.ofFile("Lib/" + patchJarFile.getName(), patchJarFile));
+    }
 
-            try (URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[]{}))) {
-                for (String dependOnModule : dependOnModules) {
-                    // Copy compiled classes to classes folder
-                    for (Map.Entry<String, List<File>> entry : filterCompiledClassesInChangedModule(loader,
-                            changedModuleToEntriesMap, dependOnModule).entrySet()) {
-                        for (File classFile : entry.getValue()) {
-                            File targetFile = Paths.get(buildPatchFolder.getAbsolutePath(),
-                                    javaNameToPath(entry.getKey()).toString()).toFile();
-                            FileUtils.copyFileToDirectory(classFile, targetFile);
-                        }
-                    }
+    @FunctionalInterface
+    private interface ArtifactStep<T> {
+        T run() throws Exception;
+    }
+
+    // NOTE: Every free module is its own pipeline: its patch and config are built at the same time and its release
+    // package as soon as both of them are done. The modules don't share any output folder, so the pipelines of all
+    // modules overlap on one pool of one thread per core. The work of a step (reading class files, hashing and
+    // deflating archive entries) run on the same pool, so the whole build never use more threads than cores
+    private void buildArtifacts(CliBuildToolBuildContext buildCtx) throws Exception {
+        List<String> freeModules = buildCtx.getFreeChangedModules();
+        SourceIndex sourceIndex = SourceIndex.load(getSourceIndexFile());
+        // NOTE: The class folders only hold exactly the classes of the changed sources after a clean compile: maven
+        // with the clean goal, or the in-process compiler which always write to an empty folder. The reused
+        // target/classes of an incremental compile could still hold stale classes, they must not be recorded
+        boolean updateSourceIndex = !incrementalCompile || buildCtx.getFastCompileOutputFolderMap() != null;
+        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<CompletableFuture<?>> pipelines = new ArrayList<>();
+            for (String module : freeModules) {
+                CompletableFuture<List<ArchiveWriter.Entry>> patch = shouldBuildPatch
+                        ? supplyAsync(() -> buildPatch(module, sourceIndex, updateSourceIndex, buildCtx.getDepedendOnModuleMap(), buildCtx.getModuleToChangedEntriesMap(),
+                                buildCtx.getClasspathMap(), buildCtx.getArtifactInfoModuleMap(), executorService), executorService)
+                        : CompletableFuture.completedFuture(Collections.emptyList());
+                CompletableFuture<List<ArchiveWriter.Entry>> config = shouldBuildConfigJar
+                        ? supplyAsync(() -> buildConfig(module, buildCtx.getDepedendOnModuleMap(), buildCtx.getModuleToChangedEntriesMap(),
+                                buildCtx.getArtifactInfoModuleMap(), configPrefixes, executorService), executorService)
+                        : CompletableFuture.completedFuture(Collections.emptyList());
+                CompletableFuture<?> pipeline = CompletableFuture.allOf(patch, config);
+                if (shouldBuildReleasePackage) {
+                    pipeline = pipeline.thenCompose(ignored -> supplyAsync(() -> buildReleasePackage(module, buildCtx.getDepedendOnModuleMap(),
+                            buildCtx.getModuleToChangedEntriesMap(), buildCtx.getArtifactInfoModuleMap(), databaseChangePrefixes,
+                            patch.join(), config.join(), executorService), executorService));
                 }
+                pipelines.add(pipeline);
             }
-
-            if (buildPatchFolder.listFiles() != null && buildPatchFolder.listFiles().length > 0) {
-                // Create a jar
-                Manifest manifest = new Manifest();
-                manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
-                createJarFile(getTargetPatchJarFile(moduleRelativePath, artifactInfo), buildPatchFolder, manifest);
+            // allOf complete only after every pipeline, so no step is still running when the pool is shut down
+            CompletableFuture.allOf(pipelines.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
             }
+            throw e;
+        } finally {
+            executorService.shutdownNow();
         }
+        try {
+            sourceIndex.store();
+        } catch (IOException e) {
+            // NOTE: The index is only an optimization, the patch is still correct without it
+            logger.warn("Can't store source index to " + getSourceIndexFile(), e);
+        }
+    }
+
+    private static <T> CompletableFuture<T> supplyAsync(ArtifactStep<T> step, ExecutorService executorService) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return step.run();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executorService);
     }
 
     private File getDeletedNoteFile(String module) {
@@ -916,6 +1193,10 @@ public class CliBuildTool implements AutoCloseable {
                 : Paths.get(targetFolder.getAbsolutePath(), module, "release", "release.zip").toFile();
     }
 
+    private File getFastCompileFolder(String module) {
+        return Paths.get(buildFolder.getAbsolutePath(), module, "classes").toFile();
+    }
+
     private File getBuildPatchFolder(String module) {
         return Paths.get(buildFolder.getAbsolutePath(), module, "patch").toFile();
     }
@@ -928,23 +1209,280 @@ public class CliBuildTool implements AutoCloseable {
         return Paths.get(buildFolder.getAbsolutePath(), module, "release").toFile();
     }
 
-    // module -> classpaths
-    private MavenTask calculateClasspaths(File pomFile, File m2SettingsXml, List<String> leafModuleRelativePaths) {
-        String classpathFileName = "classpath";
-        Invoker invoker = new DefaultInvoker();
+    // NOTE: Returns empty when the local repository can't satisfy the resolution, so the caller could fall back to
+    // forking maven which is able to download the missing artifacts
+    private Optional<Map<String, List<String>>> resolveClasspathsInProcess(List<String> leafModuleRelativePaths) throws InterruptedException {
+        try {
+            MavenDependencyResolver resolver = getMavenRuntime().getDependencyResolver(m2SettingXml);
+            return Optional.of(resolver.resolveClasspaths(workspaceFolder, leafModuleRelativePaths, Runtime.getRuntime().availableProcessors()));
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.warn("Can't resolve classpaths in-process, fall back to maven dependency:build-classpath", e);
+            return Optional.empty();
+        }
+    }
+
+    // Print the per module timing of the maven build and write it next to the artifacts
+    private void reportMavenBuild(CliBuildToolBuildContext buildCtx) {
+        MavenBuildReport buildReport = buildCtx.getMavenBuildReport();
+        try {
+            // The build could have failed before the modules are known
+            List<String> leafModuleRelativePaths = Optional.ofNullable(buildCtx.getLeafModuleRelativePaths()).orElseGet(Collections::emptyList);
+            // module relative path -> module relative paths it depends on, taken from the reactor part of the classpath
+            Map<String, List<String>> dependencies = new HashMap<>();
+            if (!buildReport.isEmpty()) {
+                Map<String, String> moduleNames = new HashMap<>();
+                for (String leafModuleRelativePath : leafModuleRelativePaths) {
+                    Model model = readRawModel(Paths.get(workspaceFolder.getAbsolutePath(), leafModuleRelativePath, "pom.xml").toFile());
+                    moduleNames.put(Optional.ofNullable(model.getName()).orElse(model.getArtifactId()), leafModuleRelativePath);
+                }
+                buildReport.setModulePaths(moduleNames);
+
+                Map<String, List<String>> classpathMap = Optional.ofNullable(buildCtx.getClasspathMap()).orElseGet(HashMap::new);
+                for (String leafModuleRelativePath : leafModuleRelativePaths) {
+                    dependencies.put(leafModuleRelativePath, classpathMap.getOrDefault(leafModuleRelativePath, Collections.emptyList()).stream()
+                            .map(Paths::get)
+                            .filter(classpath -> classpath.startsWith(workspaceFolder.getAbsolutePath()))
+                            .map(path -> relativize(path.toFile(), workspaceFolder).toString())
+                            .map(buildCtx.getModulePathTrie()::findModule)
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toList()));
+                }
+            }
+            MavenBuildReport.CriticalPath criticalPath = buildReport.getCriticalPath(dependencies);
+            logger.info("{}{}", System.lineSeparator(), buildReport.toSummaryTable(criticalPath));
+            buildReport.writeJson(new File(targetFolder, "build-report.json"), criticalPath);
+        } catch (IOException | XmlPullParserException | RuntimeException e) {
+            logger.warn("Can't write maven build report", e);
+        }
+    }
+
+    private static Model readRawModel(File pomFile) throws IOException, XmlPullParserException {
+        try (InputStream is = new FileInputStream(pomFile)) {
+            return new MavenXpp3Reader().read(is);
+        }
+    }
+
+    private void storeClasspathCache(ClasspathCache classpathCache, String classpathCacheKey, Map<String, List<String>> classpathMap) {
+        try {
+            classpathCache.store(classpathCacheKey, classpathMap);
+        } catch (IOException e) {
+            // NOTE: Failing to write the cache should never fail the build
+            logger.warn("Can't store classpath cache", e);
+        }
+    }
+
+    // Affected free modules and every module they depend on, empty when the module graph of these poms isn't known yet
+    // (i.e. first build after a pom change) or has a cycle
+    private Optional<List<String>> planModules(CliBuildToolBuildContext buildCtx, ClasspathCache classpathCache, String classpathCacheKey) {
+        Optional<ModuleGraph> moduleGraph = loadModuleGraph(classpathCache, classpathCacheKey, buildCtx.getLeafModuleRelativePaths())
+                .filter(it -> !it.hasCycle());
+        if (!moduleGraph.isPresent()) {
+            return Optional.empty();
+        }
+        buildCtx.setModuleGraph(moduleGraph.get());
+        List<String> plannedModules = moduleGraph.get().getAffectedModules(getChangedModules(buildCtx));
+        logger.info("Build {} of {} modules affected by the diff: {}", plannedModules.size(),
+                buildCtx.getLeafModuleRelativePaths().size(), plannedModules);
+        return Optional.of(plannedModules);
+    }
+
+    private Optional<ModuleGraph> loadModuleGraph(ClasspathCache classpathCache, String classpathCacheKey, List<String> leafModuleRelativePaths) {
+        try {
+            return classpathCache.loadModuleGraph(classpathCacheKey)
+                    .filter(moduleGraph -> moduleGraph.getModules().equals(leafModuleRelativePaths));
+        } catch (IOException e) {
+            logger.warn("Ignore unreadable module graph cache", e);
+            return Optional.empty();
+        }
+    }
+
+    // NOTE: The graph only depends on the classpaths, so it's read from the classpath cache when they came from there
+    private ModuleGraph getModuleGraph(CliBuildToolBuildContext buildCtx) {
+        if (buildCtx.getModuleGraph() != null) {
+            return buildCtx.getModuleGraph();
+        }
+        ClasspathCache classpathCache = new ClasspathCache(getClasspathCacheFolder());
+        String classpathCacheKey = buildCtx.getClasspathCacheKey();
+        List<String> leafModuleRelativePaths = buildCtx.getLeafModuleRelativePaths();
+        if (classpathCacheKey != null) {
+            Optional<ModuleGraph> cachedModuleGraph = loadModuleGraph(classpathCache, classpathCacheKey, leafModuleRelativePaths);
+            if (cachedModuleGraph.isPresent()) {
+                return cachedModuleGraph.get();
+            }
+        }
+        // module relative path -> module relative paths it depends on, taken from the reactor part of the classpath
+        Map<String, List<String>> dependencies = new HashMap<>();
+        for (String leafModuleRelativePath : leafModuleRelativePaths) {
+            dependencies.put(leafModuleRelativePath, buildCtx.getClasspathMap().get(leafModuleRelativePath).stream()
+                    .map(Paths::get)
+                    .filter(classpath -> classpath.startsWith(workspaceFolder.getAbsolutePath()))
+                    .map(path -> relativize(path.toFile(), workspaceFolder))
+                    .map(Path::toString)
+                    .map(buildCtx.getModulePathTrie()::findModule)
+                    .collect(Collectors.toList()));
+        }
+        ModuleGraph moduleGraph = ModuleGraph.of(leafModuleRelativePaths, dependencies);
+        if (classpathCacheKey != null) {
+            try {
+                classpathCache.storeModuleGraph(classpathCacheKey, moduleGraph);
+            } catch (IOException e) {
+                logger.warn("Can't store module graph cache", e);
+            }
+        }
+        return moduleGraph;
+    }
+
+    private File getDiffCacheFolder() {
+        return Paths.get(artifactFolder.getAbsolutePath(), "cache", "diff").toFile();
+    }
+
+    private File getPreviousTargetFolder() {
+        return Paths.get(artifactFolder.getAbsolutePath(), "cache", "previous-target").toFile();
+    }
+
+    private File getSourceIndexFile() {
+        return Paths.get(artifactFolder.getAbsolutePath(), "cache", "source", "source-index").toFile();
+    }
+
+    private File getClasspathCacheFolder() {
+        return Paths.get(artifactFolder.getAbsolutePath(), "cache", "classpath").toFile();
+    }
+
+    private File getWorktreesFolder() {
+        return Paths.get(artifactFolder.getAbsolutePath(), "cache", "worktrees").toFile();
+    }
+
+    // Modules that have changed or deleted entries, maven need to recompile both of them
+    private static List<String> getChangedModules(CliBuildToolBuildContext buildCtx) {
+        return Stream.of(buildCtx.getModuleToChangedEntriesMap().keySet(), buildCtx.getModuleToDeletedEntriesMap().keySet())
+                .flatMap(Set::stream)
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    // NOTE: A changed pom could change the classpath or the compiler settings, only maven could handle it properly
+    private static boolean hasChangedPom(CliBuildToolBuildContext buildCtx) {
+        return buildCtx.getDiffEntries().stream()
+                .flatMap(entry -> Stream.of(entry.getOldPath(), entry.getNewPath()))
+                .anyMatch(path -> "pom.xml".equals(new File(path).getName()));
+    }
+
+    // module -> changed java sources of that module
+    private Map<String, List<File>> getChangedJavaFiles(CliBuildToolBuildContext buildCtx) {
+        return buildCtx.getModuleToChangedEntriesMap().entrySet().stream()
+                .collect(Collectors.toMap(Entry::getKey, it -> it.getValue().stream()
+                        .map(DiffEntry::getNewPath)
+                        .filter(path -> Paths.get(path).startsWith(Paths.get(it.getKey(), "src", "main", "java")))
+                        .map(path -> new File(workspaceFolder, path))
+                        .filter(CliBuildTool::isJavaFile)
+                        .collect(Collectors.toList())));
+    }
+
+    // NOTE: In incremental compile mode the target/classes of every module is reused, maven-compiler-plugin will
+    // still recompile a whole module and remove its stale class files once it detect a changed source in that module
+    private List<String> withCleanGoal(String... goals) {
+        List<String> ret = new ArrayList<>();
+        if (!incrementalCompile) {
+            ret.add("clean");
+        }
+        ret.addAll(Arrays.asList(goals));
+        return ret;
+    }
+
+    private int getMavenThreadCount() {
+        return getMavenThreadCount(mavenThreads);
+    }
+
+    // Number of threads maven will use, the "C" suffix multiply the value with the number of cores. Like maven, a
+    // multiple of cores is rounded down but never below one thread, any other value must be a positive number
+    public static int getMavenThreadCount(String mavenThreads) {
+        if (StringUtils.isBlank(mavenThreads)) {
+            return 1;
+        }
+        String threads = mavenThreads.trim();
+        boolean perCore = StringUtils.endsWithIgnoreCase(threads, "C");
+        String count = perCore ? threads.substring(0, threads.length() - 1) : threads;
+        if (!count.matches(perCore ? "\\d+(\\.\\d+)?" : "\\d+") || Double.parseDouble(count) <= 0) {
+            throw new IllegalArgumentException("Invalid maven threads " + mavenThreads
+                    + ", expected a positive number of threads (i.e. 4) or a multiple of cores (i.e. 1C)");
+        }
+        double threadCount = perCore ? Double.parseDouble(count) * Runtime.getRuntime().availableProcessors() : Double.parseDouble(count);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, threadCount));
+    }
+
+    private InvocationRequest newInvocationRequest(File pomFile, File m2SettingsXml, List<String> goals) {
         InvocationRequest request = new DefaultInvocationRequest();
         request.setPomFile(pomFile);
-        List<String> goals = new ArrayList<>();
-        goals.addAll(Arrays.asList("clean", "compile", "dependency:tree", "dependency:build-classpath"));
         request.setGoals(goals);
         request.setBatchMode(true);
         request.setOffline(false);
         request.setUserSettingsFile(m2SettingsXml);
         request.setUpdateSnapshots(updateSnapshot);
         request.setJavaHome(javaHome);
-        request.setMavenOpts("-Dmdep.outputFile=" + classpathFileName);
         request.setShowVersion(true);
         request.setShowErrors(true);
+        if (StringUtils.isNotBlank(mavenThreads)) {
+            request.setThreads(mavenThreads.trim());
+        }
+        if (concurrentBuild) {
+            // NOTE: The default lock of maven only protect the local repository inside one JVM
+            request.addArg("-Daether.syncContext.named.factory=file-lock");
+            request.addArg("-Daether.syncContext.named.nameMapper=file-gav");
+        }
+        getMavenRuntime().configure(request);
+        return request;
+    }
+
+    // Append the last errors reported by maven so the cause is visible without digging through the console
+    private static String withMavenErrors(String message, MavenTask mavenTask) {
+        List<String> errorLines = mavenTask.getErrorLines();
+        if (errorLines.isEmpty()) {
+            return message;
+        }
+        return message + System.lineSeparator() + String.join(System.lineSeparator(), errorLines);
+    }
+
+    // Compile only the given modules and the modules they depend on, the classpaths are already known
+    private MavenTask compileModules(File pomFile, File m2SettingsXml, List<String> moduleRelativePaths) {
+        Invoker invoker = getMavenRuntime().getInvoker();
+        InvocationRequest request = newInvocationRequest(pomFile, m2SettingsXml, withCleanGoal("compile"));
+        request.setProjects(moduleRelativePaths);
+        request.setAlsoMake(true);
+        MavenTask mavenTask = new MavenTask() {
+            @Override
+            public boolean start() throws Exception {
+                inProgress = true;
+                InvocationResult result = invoker.execute(request);
+                if (result.getExitCode() != 0) {
+                    throw new UnsupportedOperationException(withMavenErrors(
+                            "Can't compile changed modules, please check your m2 settings or pom file and make sure maven can compile the project successfully", this));
+                }
+                return true;
+            }
+        };
+
+        mavenTask.setThreads(getMavenThreadCount());
+        request.setOutputHandler(mavenTask.getOutputHandler());
+        return mavenTask;
+    }
+
+    // module -> classpaths, only the given modules (and the modules they depend on) are built when selected
+    private MavenTask calculateClasspaths(File pomFile, File m2SettingsXml, List<String> leafModuleRelativePaths, boolean selected) {
+        String classpathFileName = "classpath";
+        Invoker invoker = getMavenRuntime().getInvoker();
+        InvocationRequest request = newInvocationRequest(pomFile, m2SettingsXml,
+                withCleanGoal("compile", "dependency:tree", "dependency:build-classpath"));
+        // NOTE: Passed as a user property instead of MAVEN_OPTS, the maven daemon doesn't read MAVEN_OPTS of the client
+        Properties properties = new Properties();
+        properties.setProperty("mdep.outputFile", classpathFileName);
+        request.setProperties(properties);
+        if (selected) {
+            request.setProjects(leafModuleRelativePaths);
+            request.setAlsoMake(true);
+        }
         MavenTask mavenTask = new MavenTask() {
             @Override
             public boolean start() throws Exception {
@@ -952,12 +1490,12 @@ public class CliBuildTool implements AutoCloseable {
                     inProgress = true;
                     InvocationResult result = invoker.execute(request);
                     if (result.getExitCode() != 0) {
-                        throw new UnsupportedOperationException(
-                                "Can't calculate classpaths, please check your m2 settings or pom file and make sure maven can compile the project successfully");
+                        throw new UnsupportedOperationException(withMavenErrors(
+                                "Can't calculate classpaths, please check your m2 settings or pom file and make sure maven can compile the project successfully", this));
                     }
                     Map<String, List<String>> ret = new HashMap<>();
                     for (String module : leafModuleRelativePaths) {
-                        File classpathFile = Paths.get(projectFolder.getAbsolutePath(), module, classpathFileName).toFile();
+                        File classpathFile = Paths.get(workspaceFolder.getAbsolutePath(), module, classpathFileName).toFile();
                         try (
                                 Reader reader = new FileReader(classpathFile);
                                 BufferedReader br = new BufferedReader(reader)) {
@@ -968,14 +1506,14 @@ public class CliBuildTool implements AutoCloseable {
                     this.result = ret;
                     return true;
                 } finally {
-                    Deque<File> classpathFileStack = leafModuleRelativePaths.stream().map(moduleRelativePath -> Paths.get(projectFolder.getAbsolutePath(), moduleRelativePath, classpathFileName)).map(Path::toFile).collect(Collectors.toCollection(ArrayDeque::new));
+                    Deque<File> classpathFileStack = leafModuleRelativePaths.stream().map(moduleRelativePath -> Paths.get(workspaceFolder.getAbsolutePath(), moduleRelativePath, classpathFileName)).map(Path::toFile).collect(Collectors.toCollection(ArrayDeque::new));
                     Set<File> classpathFiles = new HashSet<>();
                     // Traverse up from leaf module classpath files and delete all parent classpath file up to project folder
                     while (classpathFileStack.size() > 0) {
                         File classpathFile = classpathFileStack.pop();
                         File moduleFolder = classpathFile.getParentFile();
                         classpathFiles.add(classpathFile);
-                        if (moduleFolder.equals(projectFolder)) {
+                        if (moduleFolder.equals(workspaceFolder)) {
                             break;
                         }
                         File parentModuleFolder = moduleFolder.getParentFile();
@@ -986,76 +1524,11 @@ public class CliBuildTool implements AutoCloseable {
             }
         };
 
+        mavenTask.setThreads(getMavenThreadCount());
         request.setOutputHandler(mavenTask.getOutputHandler());
         return mavenTask;
     }
 
-    public static void createJarFile(File jarFile, File sourceFolder, Manifest manifest) throws IOException {
-        if (!jarFile.exists()) {
-            jarFile.getParentFile().mkdirs();
-            jarFile.createNewFile();
-        }
-        try (
-                OutputStream os = new FileOutputStream(jarFile);
-                JarOutputStream jos = manifest == null ? new JarOutputStream(os) : new JarOutputStream(os, manifest)) {
-            for (File f : sourceFolder.listFiles()) {
-                addToJarFile(jos, sourceFolder, relativize(f, sourceFolder));
-            }
-        }
-    }
-
-    public static void createZipFile(File zipFile, File sourceFolder) throws FileNotFoundException, IOException {
-        if (!zipFile.exists()) {
-            zipFile.getParentFile().mkdirs();
-            zipFile.createNewFile();
-        }
-        try (
-                OutputStream os = new FileOutputStream(zipFile);
-                ZipOutputStream zos = new ZipOutputStream(os)) {
-            for (File f : sourceFolder.listFiles()) {
-                addToZipFile(zos, sourceFolder, relativize(f, sourceFolder));
-            }
-        }
-    }
-
-    private static void addToJarFile(JarOutputStream jos, File workingDir, Path relativePath) throws IOException {
-        File file = new File(workingDir, relativePath.toString());
-        if (file.isFile()) {
-            byte[] buffer = new byte[1024];
-            jos.putNextEntry(new JarEntry(relativePath.toString()));
-            try (InputStream is = new FileInputStream(file)) {
-                int lengthRead;
-                while ((lengthRead = is.read(buffer)) > 0) {
-                    jos.write(buffer, 0, lengthRead);
-                }
-            }
-            jos.closeEntry();
-        } else if (file.isDirectory()) {
-            for (File f : file.listFiles()) {
-                addToJarFile(jos, workingDir, relativize(f, workingDir));
-            }
-        }
-    }
-
-    private static void addToZipFile(ZipOutputStream zos, File workingDir, Path relativePath) throws IOException {
-        File file = new File(workingDir, relativePath.toString());
-        if (file.isFile()) {
-            byte[] buffer = new byte[1024];
-            zos.putNextEntry(new JarEntry(relativePath.toString()));
-            try (InputStream is = new FileInputStream(file)) {
-                int lengthRead;
-                while ((lengthRead = is.read(buffer)) > 0) {
-                    zos.write(buffer, 0, lengthRead);
-                }
-            }
-            zos.closeEntry();
-        } else if (file.isDirectory()) {
-            for (File f : file.listFiles()) {
-                addToZipFile(zos, workingDir, relativize(f, workingDir));
-            }
-        }
-    }
-
     private void restoreGitWorkingDirectory(String previousHEAD) throws GitAPIException, RevisionSyntaxException, IOException {
         // Recheckout the previous head
         if (previousHEAD != null) {
@@ -1083,7 +1556,42 @@ public class CliBuildTool implements AutoCloseable {
 
     @Override
     public void close() throws GitAPIException, RevisionSyntaxException, IOException {
-        gitUtil.close();
+        if (ownedGitUtil) {
+            gitUtil.close();
+        }
+        if (ownedMavenRuntime) {
+            mavenRuntime.close();
+        }
+    }
+
+    private synchronized MavenRuntime getMavenRuntime() {
+        if (mavenRuntime == null) {
+            mavenRuntime = new MavenRuntime(false);
+            ownedMavenRuntime = true;
+        }
+        return mavenRuntime;
+    }
+
+    @Builder
+    @Getter
+    @AllArgsConstructor
+    public static class BuildTarget {
+        private String baseRef;
+        private String targetRef;
+
+        // baseRef..targetRef
+        public static BuildTarget parse(String target) {
+            String[] refs = target.trim().split("\\.\\.");
+            if (refs.length != 2 || StringUtils.isAnyBlank(refs)) {
+                throw new IllegalArgumentException("Invalid target " + target + ", expected baseRef..targetRef");
+            }
+            return new BuildTarget(refs[0].trim(), refs[1].trim());
+        }
+
+        @Override
+        public String toString() {
+            return baseRef + ".." + targetRef;
+        }
     }
 
     @Builder
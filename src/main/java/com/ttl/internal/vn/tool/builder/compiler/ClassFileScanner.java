@@ -0,0 +1,354 @@
+package com.ttl.internal.vn.tool.builder.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+
+import com.ttl.internal.vn.tool.builder.util.FutureTasks;
+
+// NOTE: Find the class files of a top level class and of every class nested in it (member, local and anonymous
+// classes at any depth) by reading the class files only, nothing is loaded so no static initializer run and missing
+// optional dependencies don't matter. javac name a nested class <Outer>$<...>, so only those siblings are read, and
+// each of them is kept only when its constant pool and NestHost, InnerClasses or EnclosingMethod attributes lead back
+// to the top level class (a top level class could also be named Outer$Inner). The classes of a whole source, secondary
+// top level classes included, are found by the SourceFile attribute instead
+public class ClassFileScanner {
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+    private static final String CLASS_FILE_EXTENSION = ".class";
+
+    private final List<File> classFolders;
+    // package folder -> class infos of its class files
+    private final Map<File, Map<String, ClassInfo>> packages = new ConcurrentHashMap<>();
+
+    // classFolders are searched in order, the first one with the top level class file is used (i.e. the classes compiled
+    // in-process shadow target/classes)
+    public ClassFileScanner(List<File> classFolders) {
+        this.classFolders = classFolders;
+    }
+
+    // package relative source path (i.e. com/example/Outer.java) -> index entry of the classes compiled from that
+    // source, the class files are read in parallel on the executor of the caller
+    public Map<String, SourceIndex.Entry> indexSources(List<String> sourcePaths, Executor executor) throws IOException, ClassNotFoundException {
+        Map<String, FutureTask<SourceIndex.Entry>> futures = new LinkedHashMap<>();
+        try {
+            for (String sourcePath : sourcePaths) {
+                FutureTask<SourceIndex.Entry> future = new FutureTask<>(() -> indexSource(sourcePath));
+                futures.put(sourcePath, future);
+                executor.execute(future);
+            }
+            Map<String, SourceIndex.Entry> entries = new LinkedHashMap<>();
+            for (Map.Entry<String, FutureTask<SourceIndex.Entry>> entry : futures.entrySet()) {
+                entries.put(entry.getKey(), FutureTasks.getResult(entry.getValue(), ClassNotFoundException.class));
+            }
+            return entries;
+        } finally {
+            futures.values().forEach(future -> future.cancel(false));
+        }
+    }
+
+    // NOTE: Every class compiled from a source has the source file name in its SourceFile attribute, so the classes of
+    // the package folder with that attribute are exactly the classes of the source, secondary top level classes
+    // included. A source compiled without it (-g:none) fall back to the class named like the source and its nested
+    // classes
+    public SourceIndex.Entry indexSource(String sourcePath) throws IOException, ClassNotFoundException {
+        int separatorIndex = sourcePath.lastIndexOf('/');
+        String packagePath = separatorIndex < 0 ? "" : sourcePath.substring(0, separatorIndex);
+        String sourceFileName = sourcePath.substring(separatorIndex + 1);
+        String packageName = packagePath.replace('/', '.');
+        for (File classFolder : classFolders) {
+            Map<String, ClassInfo> classInfos = readPackage(new File(classFolder, packagePath));
+            Map<String, String> enclosingClasses = new HashMap<>();
+            classInfos.forEach((name, classInfo) -> enclosingClasses.put(name, classInfo.getEnclosingClass()));
+            List<String> topLevelTypes = new ArrayList<>();
+            List<String> classFiles = new ArrayList<>();
+            classInfos.values().stream()
+                    .filter(classInfo -> sourceFileName.equals(classInfo.sourceFile))
+                    .map(classInfo -> classInfo.name)
+                    .sorted()
+                    .forEach(name -> {
+                        if (name.equals(getTopLevelClass(name, enclosingClasses))) {
+                            topLevelTypes.add(name.replace('/', '.'));
+                        }
+                        classFiles.add(name + CLASS_FILE_EXTENSION);
+                    });
+            if (!classFiles.isEmpty()) {
+                return new SourceIndex.Entry(packageName, topLevelTypes, classFiles);
+            }
+        }
+        String simpleName = sourceFileName.substring(0, sourceFileName.length() - ".java".length());
+        String className = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        // The nested classes are always in the package folder of their top level class
+        return new SourceIndex.Entry(packageName, Collections.singletonList(className), findClassFiles(className).stream()
+                .map(classFile -> packagePath.isEmpty() ? classFile.getName() : packagePath + "/" + classFile.getName())
+                .collect(Collectors.toList()));
+    }
+
+    // Class files of an index entry from the first class folder holding all of them, empty when none does (i.e. the
+    // module was cleaned or the entry belong to another module)
+    public Optional<List<File>> findClassFiles(SourceIndex.Entry entry) {
+        for (File classFolder : classFolders) {
+            List<File> classFiles = entry.getClassFiles().stream()
+                    .map(classFile -> new File(classFolder, classFile))
+                    .collect(Collectors.toList());
+            if (classFiles.stream().allMatch(File::isFile)) {
+                return Optional.of(classFiles);
+            }
+        }
+        return Optional.empty();
+    }
+
+    // internal name -> class info of every class file of the folder, a package is read once per scanner
+    private Map<String, ClassInfo> readPackage(File packageFolder) throws IOException {
+        Map<String, ClassInfo> classInfos = packages.get(packageFolder);
+        if (classInfos != null) {
+            return classInfos;
+        }
+        classInfos = new HashMap<>();
+        File[] classFiles = Optional.ofNullable(packageFolder.listFiles(file -> file.getName().endsWith(CLASS_FILE_EXTENSION)))
+                .orElse(new File[0]);
+        for (File classFile : classFiles) {
+            ClassInfo classInfo = ClassInfo.read(classFile);
+            classInfos.put(classInfo.name, classInfo);
+        }
+        packages.putIfAbsent(packageFolder, classInfos);
+        return classInfos;
+    }
+
+    public List<File> findClassFiles(String className) throws IOException, ClassNotFoundException {
+        String internalName = className.replace('.', '/');
+        File classFile = null;
+        for (File classFolder : classFolders) {
+            File candidate = new File(classFolder, internalName + CLASS_FILE_EXTENSION);
+            if (candidate.isFile()) {
+                classFile = candidate;
+                break;
+            }
+        }
+        if (classFile == null) {
+            throw new ClassNotFoundException("Can't find class file of " + className + " in " + classFolders);
+        }
+        String simpleName = classFile.getName().substring(0, classFile.getName().length() - CLASS_FILE_EXTENSION.length());
+        File[] siblings = Optional.ofNullable(classFile.getParentFile()
+                .listFiles(file -> file.getName().startsWith(simpleName + "$") && file.getName().endsWith(CLASS_FILE_EXTENSION)))
+                .orElse(new File[0]);
+        // internal name -> enclosing class internal name (the nest host when known), null for a top level class
+        Map<String, String> enclosingClasses = new HashMap<>();
+        Map<String, File> siblingFiles = new HashMap<>();
+        for (File sibling : siblings) {
+            ClassInfo classInfo = ClassInfo.read(sibling);
+            enclosingClasses.put(classInfo.name, classInfo.getEnclosingClass());
+            siblingFiles.put(classInfo.name, sibling);
+        }
+        List<File> classFiles = new ArrayList<>();
+        classFiles.add(classFile);
+        siblingFiles.keySet().stream()
+                .sorted()
+                .filter(name -> internalName.equals(getTopLevelClass(name, enclosingClasses)))
+                .map(siblingFiles::get)
+                .forEach(classFiles::add);
+        return classFiles;
+    }
+
+    private static String getTopLevelClass(String name, Map<String, String> enclosingClasses) {
+        String current = name;
+        // Bounded walk, a broken class file should never loop forever
+        for (int i = 0; i <= enclosingClasses.size(); i++) {
+            String enclosingClass = enclosingClasses.get(current);
+            if (enclosingClass == null) {
+                return current;
+            }
+            current = enclosingClass;
+        }
+        return null;
+    }
+
+    // The part of a class file (JVMS chapter 4) needed to find the enclosing class
+    private static class ClassInfo {
+        private String name;
+        // NestHost attribute (java 11+), always the top level class
+        private String nestHost;
+        // outer_class_info of the InnerClasses entry of this class, only set for member classes
+        private String outerClass;
+        // class_index of the EnclosingMethod attribute, only set for local and anonymous classes
+        private String enclosingMethodClass;
+        // SourceFile attribute, the source file name without its folder
+        private String sourceFile;
+
+        String getEnclosingClass() {
+            if (nestHost != null) {
+                return nestHost.equals(name) ? null : nestHost;
+            }
+            return outerClass != null ? outerClass : enclosingMethodClass;
+        }
+
+        static ClassInfo read(File classFile) throws IOException {
+            try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(classFile)))) {
+                if (is.readInt() != CLASS_FILE_MAGIC) {
+                    throw new IOException(classFile + " is not a class file");
+                }
+                is.readUnsignedShort();
+                is.readUnsignedShort();
+                ConstantPool constantPool = ConstantPool.read(is);
+                ClassInfo classInfo = new ClassInfo();
+                is.readUnsignedShort();
+                classInfo.name = constantPool.getClassName(is.readUnsignedShort());
+                is.readUnsignedShort();
+                skipFully(is, 2 * is.readUnsignedShort());
+                skipMembers(is);
+                skipMembers(is);
+                int attributeCount = is.readUnsignedShort();
+                for (int i = 0; i < attributeCount; i++) {
+                    String attributeName = constantPool.getUtf8(is.readUnsignedShort());
+                    int length = is.readInt();
+                    if ("NestHost".equals(attributeName)) {
+                        classInfo.nestHost = constantPool.getClassName(is.readUnsignedShort());
+                    } else if ("SourceFile".equals(attributeName)) {
+                        classInfo.sourceFile = constantPool.getUtf8(is.readUnsignedShort());
+                    } else if ("EnclosingMethod".equals(attributeName)) {
+                        classInfo.enclosingMethodClass = constantPool.getClassName(is.readUnsignedShort());
+                        is.readUnsignedShort();
+                    } else if ("InnerClasses".equals(attributeName)) {
+                        int classCount = is.readUnsignedShort();
+                        for (int j = 0; j < classCount; j++) {
+                            int innerClassIndex = is.readUnsignedShort();
+                            int outerClassIndex = is.readUnsignedShort();
+                            is.readUnsignedShort();
+                            is.readUnsignedShort();
+                            if (outerClassIndex != 0 && classInfo.name.equals(constantPool.getClassName(innerClassIndex))) {
+                                classInfo.outerClass = constantPool.getClassName(outerClassIndex);
+                            }
+                        }
+                    } else {
+                        skipFully(is, length);
+                    }
+                }
+                return classInfo;
+            }
+        }
+
+        // fields or methods
+        private static void skipMembers(DataInputStream is) throws IOException {
+            int memberCount = is.readUnsignedShort();
+            for (int i = 0; i < memberCount; i++) {
+                skipFully(is, 6);
+                int attributeCount = is.readUnsignedShort();
+                for (int j = 0; j < attributeCount; j++) {
+                    is.readUnsignedShort();
+                    skipFully(is, is.readInt());
+                }
+            }
+        }
+
+        private static void skipFully(DataInputStream is, int length) throws IOException {
+            int skipped = 0;
+            while (skipped < length) {
+                int n = is.skipBytes(length - skipped);
+                if (n <= 0) {
+                    throw new IOException("Unexpected end of class file");
+                }
+                skipped += n;
+            }
+        }
+    }
+
+    // Only the Utf8 and Class entries are kept, the others are skipped
+    private static class ConstantPool {
+        private static final int UTF8 = 1;
+        private static final int INTEGER = 3;
+        private static final int FLOAT = 4;
+        private static final int LONG = 5;
+        private static final int DOUBLE = 6;
+        private static final int CLASS = 7;
+        private static final int STRING = 8;
+        private static final int FIELD_REF = 9;
+        private static final int METHOD_REF = 10;
+        private static final int INTERFACE_METHOD_REF = 11;
+        private static final int NAME_AND_TYPE = 12;
+        private static final int METHOD_HANDLE = 15;
+        private static final int METHOD_TYPE = 16;
+        private static final int DYNAMIC = 17;
+        private static final int INVOKE_DYNAMIC = 18;
+        private static final int MODULE = 19;
+        private static final int PACKAGE = 20;
+
+        private final String[] utf8s;
+        // index -> name index of a Class entry
+        private final int[] classNameIndexes;
+
+        private ConstantPool(int size) {
+            this.utf8s = new String[size];
+            this.classNameIndexes = new int[size];
+        }
+
+        static ConstantPool read(DataInputStream is) throws IOException {
+            int size = is.readUnsignedShort();
+            ConstantPool constantPool = new ConstantPool(size);
+            for (int i = 1; i < size; i++) {
+                int tag = is.readUnsignedByte();
+                switch (tag) {
+                    case UTF8:
+                        constantPool.utf8s[i] = is.readUTF();
+                        break;
+                    case CLASS:
+                        constantPool.classNameIndexes[i] = is.readUnsignedShort();
+                        break;
+                    case STRING:
+                    case METHOD_TYPE:
+                    case MODULE:
+                    case PACKAGE:
+                        is.readUnsignedShort();
+                        break;
+                    case METHOD_HANDLE:
+                        ClassInfo.skipFully(is, 3);
+                        break;
+                    case INTEGER:
+                    case FLOAT:
+                    case FIELD_REF:
+                    case METHOD_REF:
+                    case INTERFACE_METHOD_REF:
+                    case NAME_AND_TYPE:
+                    case DYNAMIC:
+                    case INVOKE_DYNAMIC:
+                        is.readInt();
+                        break;
+                    case LONG:
+                    case DOUBLE:
+                        // NOTE: 8 bytes constants take 2 entries of the pool
+                        is.readLong();
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag + " at " + i);
+                }
+            }
+            return constantPool;
+        }
+
+        String getUtf8(int index) throws IOException {
+            if (index <= 0 || index >= utf8s.length || utf8s[index] == null) {
+                throw new IOException("Invalid Utf8 constant " + index);
+            }
+            return utf8s[index];
+        }
+
+        String getClassName(int index) throws IOException {
+            if (index <= 0 || index >= classNameIndexes.length || classNameIndexes[index] == 0) {
+                throw new IOException("Invalid Class constant " + index);
+            }
+            return getUtf8(classNameIndexes[index]);
+        }
+    }
+}
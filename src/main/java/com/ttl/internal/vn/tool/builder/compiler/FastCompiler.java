@@ -0,0 +1,242 @@
+package com.ttl.internal.vn.tool.builder.compiler;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.lang.model.SourceVersion;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+// NOTE: Compile only the changed sources of each module in-process with javax.tools against the known classpath of
+// the module and its existing target/classes, the compiled classes are written to a separated output folder so
+// target/classes is never touched. Any failure (no system compiler, stale target/classes, compilation error) will
+// return empty and the caller is expected to fall back to maven
+public class FastCompiler {
+    private static final Logger logger = LogManager.getLogger(FastCompiler.class);
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+    // NOTE: Class file major version of java 1.1, java 5 is 49 and so on
+    private static final int CLASS_FILE_MAJOR_VERSION_OFFSET = 44;
+
+    private final File projectFolder;
+    private final Function<String, File> outputFolderProvider;
+
+    public FastCompiler(File projectFolder, Function<String, File> outputFolderProvider) {
+        this.projectFolder = projectFolder;
+        this.outputFolderProvider = outputFolderProvider;
+    }
+
+    // module -> compiled classes folder
+    public Optional<Map<String, File>> compile(Map<String, List<File>> moduleToJavaFilesMap, Map<String, List<String>> classpathMap) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            logger.warn("No system java compiler available (running on a JRE?), fall back to maven");
+            return Optional.empty();
+        }
+        try {
+            Map<String, File> outputFolderMap = new LinkedHashMap<>();
+            Set<File> changedJavaFiles = moduleToJavaFilesMap.values().stream()
+                    .flatMap(List::stream)
+                    .map(File::getAbsoluteFile)
+                    .collect(Collectors.toSet());
+            // A module always has less reactor dependencies than the modules depending on it, so this order compile
+            // the dependencies first and their output could be put in front of the classpath of the dependents
+            List<String> modules = moduleToJavaFilesMap.keySet().stream()
+                    .sorted(Comparator.comparingLong((String module) -> getReactorClasspaths(classpathMap.get(module)).count())
+                            .thenComparing(Function.identity()))
+                    .collect(Collectors.toList());
+            for (String module : modules) {
+                List<File> javaFiles = moduleToJavaFilesMap.get(module);
+                if (javaFiles.isEmpty()) {
+                    continue;
+                }
+                File outputFolder = outputFolderProvider.apply(module);
+                if (!compileModule(compiler, module, javaFiles, changedJavaFiles, classpathMap.get(module), outputFolderMap.values(), outputFolder)) {
+                    return Optional.empty();
+                }
+                outputFolderMap.put(module, outputFolder);
+            }
+            return Optional.of(outputFolderMap);
+        } catch (IOException | XmlPullParserException | RuntimeException e) {
+            logger.warn("Can't compile changed sources in-process, fall back to maven", e);
+            return Optional.empty();
+        }
+    }
+
+    private boolean compileModule(JavaCompiler compiler, String module, List<File> javaFiles, Set<File> changedJavaFiles,
+                                  List<String> moduleClasspaths, Iterable<File> compiledOutputFolders, File outputFolder) throws IOException, XmlPullParserException {
+        File moduleFolder = new File(projectFolder, module);
+        File targetClassesFolder = getTargetClassesFolder(moduleFolder);
+        if (!targetClassesFolder.isDirectory()) {
+            logger.info("Module {} haven't been compiled by maven yet, fall back to maven", module);
+            return false;
+        }
+        for (File reactorModuleFolder : Stream.concat(Stream.of(moduleFolder), getReactorClasspaths(moduleClasspaths)
+                .map(classpath -> classpath.getParentFile().getParentFile())).collect(Collectors.toList())) {
+            if (!isUpToDate(reactorModuleFolder, changedJavaFiles)) {
+                logger.info("Compiled classes of module {} are older than its sources, fall back to maven",
+                        relativize(reactorModuleFolder));
+                return false;
+            }
+        }
+
+        List<File> classpaths = new ArrayList<>();
+        compiledOutputFolders.forEach(classpaths::add);
+        classpaths.add(targetClassesFolder);
+        moduleClasspaths.stream().map(File::new).filter(File::exists).forEach(classpaths::add);
+
+        FileUtils.deleteDirectory(outputFolder);
+        outputFolder.mkdirs();
+
+        List<String> options = new ArrayList<>(Arrays.asList("-g", "-nowarn", "-d", outputFolder.getAbsolutePath(),
+                "-classpath", classpaths.stream().map(File::getAbsolutePath).collect(Collectors.joining(File.pathSeparator))));
+        getRelease(targetClassesFolder).ifPresent(release -> options.addAll(getReleaseOptions(release)));
+        Charset encoding = getSourceEncoding(moduleFolder);
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StringWriter compilerOutput = new StringWriter();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, encoding)) {
+            Iterable<? extends JavaFileObject> compilationUnits = fileManager.getJavaFileObjectsFromFiles(javaFiles);
+            boolean success = compiler.getTask(compilerOutput, fileManager, diagnostics, options, null, compilationUnits).call();
+            if (!success) {
+                String errors = diagnostics.getDiagnostics().stream()
+                        .filter(it -> it.getKind() == Diagnostic.Kind.ERROR)
+                        .map(Object::toString)
+                        .collect(Collectors.joining(System.lineSeparator()));
+                logger.warn("Can't compile changed sources of module {} in-process, fall back to maven{}{}{}", module,
+                        System.lineSeparator(), errors, compilerOutput);
+            }
+            return success;
+        }
+    }
+
+    // NOTE: Same idea as the stale source detection of maven-compiler-plugin, if any source (except the changed ones
+    // which are going to be compiled anyway) is newer than the newest class file then target/classes doesn't belong
+    // to the current checkout
+    private static boolean isUpToDate(File moduleFolder, Set<File> changedJavaFiles) throws IOException {
+        File sourceFolder = Paths.get(moduleFolder.getAbsolutePath(), "src", "main", "java").toFile();
+        File targetClassesFolder = getTargetClassesFolder(moduleFolder);
+        if (!sourceFolder.isDirectory()) {
+            return true;
+        }
+        if (!targetClassesFolder.isDirectory()) {
+            return false;
+        }
+        long newestSource = getNewestModifiedTime(sourceFolder, ".java", changedJavaFiles);
+        long newestClass = getNewestModifiedTime(targetClassesFolder, ".class", Collections.emptySet());
+        return newestSource <= newestClass;
+    }
+
+    private static long getNewestModifiedTime(File folder, String extension, Set<File> excludedFiles) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder.toPath())) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(extension))
+                    .map(Path::toFile)
+                    .filter(file -> !excludedFiles.contains(file.getAbsoluteFile()))
+                    .mapToLong(File::lastModified)
+                    .max()
+                    .orElse(0);
+        }
+    }
+
+    // Reactor module classpaths are the target/classes folder of that module inside the project
+    private Stream<File> getReactorClasspaths(List<String> classpaths) {
+        String projectPath = projectFolder.getAbsoluteFile().toPath().normalize().toString();
+        return Optional.ofNullable(classpaths).orElseGet(ArrayList::new).stream()
+                .map(File::new)
+                .filter(classpath -> classpath.toPath().toAbsolutePath().normalize().startsWith(projectPath))
+                .filter(File::isDirectory);
+    }
+
+    // NOTE: Compile with the same release that maven used for the existing class files so the patch doesn't
+    // require a newer jvm than the one running the application
+    private static Optional<Integer> getRelease(File targetClassesFolder) throws IOException {
+        Optional<Path> classFile;
+        try (Stream<Path> paths = Files.walk(targetClassesFolder.toPath())) {
+            classFile = paths.filter(path -> path.getFileName().toString().endsWith(".class")).findFirst();
+        }
+        if (!classFile.isPresent()) {
+            return Optional.empty();
+        }
+        try (InputStream is = new FileInputStream(classFile.get().toFile()); DataInputStream dis = new DataInputStream(is)) {
+            if (dis.readInt() != CLASS_FILE_MAGIC) {
+                return Optional.empty();
+            }
+            dis.readUnsignedShort();
+            return Optional.of(dis.readUnsignedShort() - CLASS_FILE_MAJOR_VERSION_OFFSET);
+        }
+    }
+
+    private static List<String> getReleaseOptions(int release) {
+        if (SourceVersion.latest().ordinal() > SourceVersion.RELEASE_8.ordinal()) {
+            return Arrays.asList("--release", String.valueOf(release));
+        }
+        String version = release <= 8 ? "1." + release : String.valueOf(release);
+        return Arrays.asList("-source", version, "-target", version);
+    }
+
+    // Lookup project.build.sourceEncoding from the module pom up to the aggregator poms inside the project folder
+    private Charset getSourceEncoding(File moduleFolder) throws IOException, XmlPullParserException {
+        File normalizedProjectFolder = projectFolder.getAbsoluteFile().toPath().normalize().toFile();
+        File folder = moduleFolder.getAbsoluteFile().toPath().normalize().toFile();
+        while (folder != null) {
+            File pom = new File(folder, "pom.xml");
+            if (pom.isFile()) {
+                String encoding = readModel(pom).getProperties().getProperty("project.build.sourceEncoding");
+                if (StringUtils.isNotBlank(encoding)) {
+                    return Charset.forName(encoding.trim());
+                }
+            }
+            if (folder.equals(normalizedProjectFolder)) {
+                break;
+            }
+            folder = folder.getParentFile();
+        }
+        return Charset.defaultCharset();
+    }
+
+    private static Model readModel(File pom) throws IOException, XmlPullParserException {
+        try (InputStream is = new FileInputStream(pom)) {
+            return new MavenXpp3Reader().read(is);
+        }
+    }
+
+    private static File getTargetClassesFolder(File moduleFolder) {
+        return Paths.get(moduleFolder.getAbsolutePath(), "target", "classes").toFile();
+    }
+
+    private String relativize(File file) {
+        return projectFolder.getAbsoluteFile().toPath().normalize().relativize(file.getAbsoluteFile().toPath().normalize()).toString();
+    }
+}
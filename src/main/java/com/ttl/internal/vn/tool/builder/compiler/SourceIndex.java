@@ -0,0 +1,158 @@
+package com.ttl.internal.vn.tool.builder.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+import lombok.Getter;
+
+// NOTE: Source blob id -> package, top level types and class files emitted for that source. A blob never change, and
+// the same content always declare the same package and emit the same classes, so an entry never need to be
+// invalidated, only checked that its class files still exist. The index is kept in one file between runs (i.e. every
+// patch built from the same unchanged sources only look up the index). Every change of a source add an entry, so only
+// the most recently used entries are kept, they are stored from the least recently used one so the order survive a run
+public class SourceIndex {
+    public static final int DEFAULT_CAPACITY = 50_000;
+    private static final Logger logger = LogManager.getLogger(SourceIndex.class);
+    private static final int FORMAT_VERSION = 2;
+
+    private final File indexFile;
+    private final Map<ObjectId, Entry> entries;
+    private boolean modified;
+
+    @Getter
+    public static class Entry {
+        private final String packageName;
+        // Fully qualified names of the top level types, the secondary top level types of the source included
+        private final List<String> topLevelTypes;
+        // Class file paths relative to the class folder, '/' separated
+        private final List<String> classFiles;
+
+        public Entry(String packageName, List<String> topLevelTypes, List<String> classFiles) {
+            this.packageName = packageName;
+            this.topLevelTypes = Collections.unmodifiableList(new ArrayList<>(topLevelTypes));
+            this.classFiles = Collections.unmodifiableList(new ArrayList<>(classFiles));
+        }
+    }
+
+    private SourceIndex(File indexFile, int capacity) {
+        this.indexFile = indexFile;
+        this.entries = new LinkedHashMap<ObjectId, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ObjectId, Entry> eldest) {
+                if (size() > capacity) {
+                    modified = true;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static SourceIndex load(File indexFile) {
+        return load(indexFile, DEFAULT_CAPACITY);
+    }
+
+    // An unreadable or missing index file give an empty index
+    public static SourceIndex load(File indexFile, int capacity) {
+        SourceIndex sourceIndex = new SourceIndex(indexFile, capacity);
+        if (!indexFile.isFile()) {
+            return sourceIndex;
+        }
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (is.readInt() != FORMAT_VERSION) {
+                return sourceIndex;
+            }
+            int size = is.readInt();
+            for (int i = 0; i < size; i++) {
+                ObjectId blobId = ObjectId.fromString(is.readUTF());
+                String packageName = is.readUTF();
+                List<String> topLevelTypes = readStrings(is);
+                List<String> classFiles = readStrings(is);
+                sourceIndex.entries.put(blobId, new Entry(packageName, topLevelTypes, classFiles));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Ignore unreadable source index " + indexFile, e);
+            sourceIndex.entries.clear();
+            sourceIndex.modified = false;
+        }
+        // NOTE: modified is only set here when an index file over the capacity was pruned, so it's written back smaller
+        return sourceIndex;
+    }
+
+    // NOTE: A lookup also mark the entry as recently used, so it's kept even when nothing is added
+    public synchronized Optional<Entry> get(AnyObjectId blobId) {
+        Optional<Entry> entry = Optional.ofNullable(entries.get(blobId));
+        modified |= entry.isPresent();
+        return entry;
+    }
+
+    public synchronized void put(AnyObjectId blobId, Entry entry) {
+        entries.put(blobId.copy(), entry);
+        modified = true;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Nothing is written when the index wasn't used since it was loaded
+    public void store() throws IOException {
+        Map<ObjectId, Entry> snapshot;
+        synchronized (this) {
+            if (!modified) {
+                return;
+            }
+            snapshot = new LinkedHashMap<>(entries);
+            modified = false;
+        }
+        indexFile.getParentFile().mkdirs();
+        // Write to a temporary file first so a cancelled build never leaves a half written index behind
+        File tmpFile = new File(indexFile.getParentFile(), indexFile.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            os.writeInt(FORMAT_VERSION);
+            os.writeInt(snapshot.size());
+            for (Map.Entry<ObjectId, Entry> entry : snapshot.entrySet()) {
+                os.writeUTF(entry.getKey().name());
+                os.writeUTF(entry.getValue().getPackageName());
+                writeStrings(os, entry.getValue().getTopLevelTypes());
+                writeStrings(os, entry.getValue().getClassFiles());
+            }
+        }
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static List<String> readStrings(DataInputStream is) throws IOException {
+        int size = is.readInt();
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(is.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeStrings(DataOutputStream os, List<String> strings) throws IOException {
+        os.writeInt(strings.size());
+        for (String string : strings) {
+            os.writeUTF(string);
+        }
+    }
+}
@@ -66,6 +66,19 @@ public class BuildToolDashBoard extends JFrame implements ISimpleComponent {
         return MessageFormatter.format("Commit {}", gitUtil.getHeadRef().getShortCommitHash()).getMessage();
     }
 
+    // NOTE: The impacted modules are planned from the git object database, so they show up without any checkout
+    private void refreshDiffView() throws IOException {
+        session.getDiff().thenAccept(diffs -> {
+            SwingGraphicUtil.updateUI(() -> diffView.setDiffEntries(diffs));
+            session.getImpactedModules(diffs)
+                    .thenAccept(modules -> SwingGraphicUtil.updateUI(() -> diffView.setImpactedModules(modules)))
+                    .exceptionally(e -> {
+                        logger.warn("Can't find the impacted modules", e);
+                        return null;
+                    });
+        });
+    }
+
     private void refreshGitRelatedUI() throws IOException {
         if (!session.getUseWorkingDirectory()) {
             gitTreeView.setGitBranch(getSelectedBranches());
@@ -237,7 +250,7 @@ public class BuildToolDashBoard extends JFrame implements ISimpleComponent {
                             diffView.setLabel(MessageFormatter
                                     .format("Diff {} -> {}", "working directory", baseCommit.getShortHash())
                                     .getMessage());
-                            session.getDiff().thenAccept(diffs -> SwingGraphicUtil.updateUI(() -> diffView.setDiffEntries(diffs)));
+                            refreshDiffView();
                         } else {
                             diffView.setVisible(true);
                             GitCommit targetCommit = gitTreeView.getCommit(selectedRows[0]);
@@ -252,7 +265,7 @@ public class BuildToolDashBoard extends JFrame implements ISimpleComponent {
                             checkOutButton.setText("Checkout " + targetCommit.getShortHash());
                             diffView.setLabel(MessageFormatter.format("Diff {} -> {}", targetCommit.getShortHash(),
                                     firstParentBaseCommit.getShortHash()).getMessage());
-                            session.getDiff().thenAccept(diffs -> SwingGraphicUtil.updateUI(() -> diffView.setDiffEntries(diffs)));
+                            refreshDiffView();
                         }
                     } else {
                         diffView.setVisible(true);
@@ -266,7 +279,7 @@ public class BuildToolDashBoard extends JFrame implements ISimpleComponent {
                         diffView.setLabel(MessageFormatter
                                 .format("Diff {} -> {}", targetCommit.getShortHash(), baseCommit.getShortHash())
                                 .getMessage());
-                        session.getDiff().thenAccept(diffs -> SwingGraphicUtil.updateUI(() -> diffView.setDiffEntries(diffs)));
+                        refreshDiffView();
                     }
                 } catch (IOException ex) {
                     handleException(ex);
@@ -355,7 +368,7 @@ public class BuildToolDashBoard extends JFrame implements ISimpleComponent {
                     // Diffview already show up
                     if (session.getBaseCommit() != null) {
                         diffView.clearDiff();
-                        session.getDiff().thenAccept(diffs -> SwingGraphicUtil.updateUI(() -> diffView.setDiffEntries(diffs)));
+                        refreshDiffView();
                     }
                 } catch (IOException ex) {
                     handleException(ex);
@@ -10,6 +10,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import javax.swing.BoxLayout;
 import javax.swing.GroupLayout;
@@ -26,6 +27,7 @@ import com.ttl.internal.vn.tool.builder.component.input.TextField;
 import com.ttl.internal.vn.tool.builder.task.BuildTask;
 import com.ttl.internal.vn.tool.builder.task.DefaultSubscriber;
 import com.ttl.internal.vn.tool.builder.task.Task;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -34,6 +36,7 @@ import org.slf4j.helpers.MessageFormatter;
 
 import com.ttl.internal.vn.tool.builder.cli.CliBuildTool;
 import com.ttl.internal.vn.tool.builder.cli.CliBuildTool.ArtifactInfo;
+import com.ttl.internal.vn.tool.builder.cli.CliBuildTool.BuildTarget;
 import com.ttl.internal.vn.tool.builder.cli.CliBuildTool.DefaultCliGetArtifactInfo;
 import com.ttl.internal.vn.tool.builder.git.GitCommit;
 import com.ttl.internal.vn.tool.builder.util.SwingGraphicUtil;
@@ -43,10 +46,15 @@ public class ConfigDashBoard extends JPanel implements ISimpleComponent {
     private FileField artifactFolderFileField;
     private FileField mavenXmlSettingsFileField;
     private FileField patchFileField;
+    private TextField mavenThreadsField;
+    private TextField otherTargetsField;
     private CheckBox buildConfigJarCheckbox;
     private CheckBox buildReleasePackageZipCheckbox;
     private CheckBox buildPatchCheckbox;
     private CheckBox updateSnapshotCheckbox;
+    private CheckBox incrementalCompileCheckbox;
+    private CheckBox fastCompileCheckbox;
+    private CheckBox checkoutInPlaceCheckbox;
     private CheckBox interactive;
     private Button buildBtn;
     private Button cancelBtn;
@@ -91,23 +99,58 @@ public class ConfigDashBoard extends JPanel implements ISimpleComponent {
         this.patchFileField = new FileField("Git patch files", LABEL_WIDTH, INPUT_WIDTH, JFileChooser.FILES_ONLY,
                 true, BoxLayout.Y_AXIS, null, false);
 
+        List<TextValidator> mavenThreadsValidators = Collections.singletonList(val -> {
+            try {
+                CliBuildTool.getMavenThreadCount(val);
+                return null;
+            } catch (IllegalArgumentException e) {
+                return ValidatorError.builder()
+                        .validatorId("INVALID_MAVEN_THREADS")
+                        .validatorMessage("Maven threads must be a positive number of threads (i.e. 4) or a multiple of cores (i.e. 1C)")
+                        .build();
+            }
+        });
+        this.mavenThreadsField = new TextField("Maven threads", LABEL_WIDTH, INPUT_WIDTH, true, BoxLayout.Y_AXIS,
+                mavenThreadsValidators);
+
+        List<TextValidator> otherTargetsValidators = Collections.singletonList(val -> {
+            try {
+                getOtherTargets(val);
+                return null;
+            } catch (UnsupportedOperationException e) {
+                return ValidatorError.builder()
+                        .validatorId("INVALID_TARGETS")
+                        .validatorMessage(e.getMessage())
+                        .build();
+            }
+        });
+        this.otherTargetsField = new TextField("Also build (baseRef..targetRef, ...)", LABEL_WIDTH, INPUT_WIDTH, true,
+                BoxLayout.Y_AXIS, otherTargetsValidators);
+
         JPanel inputPanel = new JPanel();
         GroupLayout inputGroupLayout = new GroupLayout(inputPanel);
         inputPanel.setLayout(inputGroupLayout);
         inputGroupLayout.setHorizontalGroup(inputGroupLayout.createParallelGroup()
                 .addComponent(artifactFolderFileField)
                 .addComponent(mavenXmlSettingsFileField)
-                .addComponent(patchFileField));
+                .addComponent(patchFileField)
+                .addComponent(mavenThreadsField)
+                .addComponent(otherTargetsField));
         inputGroupLayout.setVerticalGroup(inputGroupLayout.createSequentialGroup()
                 .addComponent(artifactFolderFileField)
                 .addComponent(mavenXmlSettingsFileField)
-                .addComponent(patchFileField));
+                .addComponent(patchFileField)
+                .addComponent(mavenThreadsField)
+                .addComponent(otherTargetsField));
         inputPanel.setBackground(Color.GREEN);
 
         this.buildConfigJarCheckbox = new CheckBox(false, "Build config package?");
         this.buildReleasePackageZipCheckbox = new CheckBox(false, "Build release package?");
         this.buildPatchCheckbox = new CheckBox(true, "Build patch");
         this.updateSnapshotCheckbox = new CheckBox(true, "Update maven snapshot");
+        this.incrementalCompileCheckbox = new CheckBox(false, "Incremental compile (skip maven clean)");
+        this.fastCompileCheckbox = new CheckBox(false, "Fast compile (only changed sources, in-process)");
+        this.checkoutInPlaceCheckbox = new CheckBox(false, "Checkout in working directory instead of a worktree");
         this.interactive = new CheckBox(true, "Interactive");
 
         JPanel checkBoxPanel = new JPanel();
@@ -115,12 +158,18 @@ public class ConfigDashBoard extends JPanel implements ISimpleComponent {
         checkBoxPanel.setLayout(checkBoxPanelGroupLayout);
         checkBoxPanelGroupLayout.setHorizontalGroup(checkBoxPanelGroupLayout.createParallelGroup()
                 .addComponent(updateSnapshotCheckbox)
+                .addComponent(incrementalCompileCheckbox)
+                .addComponent(fastCompileCheckbox)
+                .addComponent(checkoutInPlaceCheckbox)
                 .addComponent(buildPatchCheckbox)
                 .addComponent(buildConfigJarCheckbox)
                 .addComponent(buildReleasePackageZipCheckbox)
                 .addComponent(interactive));
         checkBoxPanelGroupLayout.setVerticalGroup(checkBoxPanelGroupLayout.createSequentialGroup()
                 .addComponent(updateSnapshotCheckbox)
+                .addComponent(incrementalCompileCheckbox)
+                .addComponent(fastCompileCheckbox)
+                .addComponent(checkoutInPlaceCheckbox)
                 .addComponent(buildPatchCheckbox)
                 .addComponent(buildConfigJarCheckbox)
                 .addComponent(buildReleasePackageZipCheckbox)
@@ -178,6 +227,7 @@ public class ConfigDashBoard extends JPanel implements ISimpleComponent {
                 .addComponent(scrollPane));
 
         patchFileField.setVisible(!session.getUseWorkingDirectory());
+        otherTargetsField.setVisible(!session.getUseWorkingDirectory());
     }
 
     @Override
@@ -189,11 +239,16 @@ public class ConfigDashBoard extends JPanel implements ISimpleComponent {
         buildBtn.setEnabled(false);
         artifactFolderFileField.setEnabled(false);
         patchFileField.setEnabled(false);
+        mavenThreadsField.setEnabled(false);
+        otherTargetsField.setEnabled(false);
         mavenXmlSettingsFileField.setEnabled(false);
         buildConfigJarCheckbox.setEnabled(false);
         buildReleasePackageZipCheckbox.setEnabled(false);
         buildPatchCheckbox.setEnabled(false);
         updateSnapshotCheckbox.setEnabled(false);
+        incrementalCompileCheckbox.setEnabled(false);
+        fastCompileCheckbox.setEnabled(false);
+        checkoutInPlaceCheckbox.setEnabled(false);
         interactive.setEnabled(false);
         diffView.setVisible(true);
         openArtifactButton.setVisible(false);
@@ -208,8 +263,13 @@ public class ConfigDashBoard extends JPanel implements ISimpleComponent {
                 .setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         artifactFolderFileField.setEnabled(true);
         patchFileField.setEnabled(true);
+        mavenThreadsField.setEnabled(true);
+        otherTargetsField.setEnabled(true);
         mavenXmlSettingsFileField.setEnabled(true);
         updateSnapshotCheckbox.setEnabled(true);
+        incrementalCompileCheckbox.setEnabled(true);
+        fastCompileCheckbox.setEnabled(true);
+        checkoutInPlaceCheckbox.setEnabled(true);
         interactive.setEnabled(true);
         buildConfigJarCheckbox.setEnabled(true);
         buildReleasePackageZipCheckbox.setEnabled(true);
@@ -254,6 +314,13 @@ public class ConfigDashBoard extends JPanel implements ISimpleComponent {
                     interactive.isSelected() ? this::getArtifactInfo
                             : DefaultCliGetArtifactInfo.getArtifactInfo(false));
 
+                command.setMavenRuntime(session.getMavenRuntime());
+                command.setIncrementalCompile(incrementalCompileCheckbox.isSelected());
+                command.setFastCompile(fastCompileCheckbox.isSelected());
+                command.setCheckoutInPlace(checkoutInPlaceCheckbox.isSelected());
+                command.setMavenThreads(mavenThreadsField.getText());
+                command.setRenameSettings(session.getRenameSettings());
+
                 String targetBuild = session.getUseWorkingDirectory() ? "working directory"
                         : session.getTargetCommit().getShortHash();
                 diffView.setLabel(MessageFormatter.format("Build diff {} -> {}",
@@ -262,7 +329,18 @@ public class ConfigDashBoard extends JPanel implements ISimpleComponent {
                 List<DiffEntry> diffEntries = command.getDiff();
                 diffView.setDiffEntries(diffEntries);
                 SwingUtilities.getRoot(this).setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-                ConfigDashBoard.this.buildTask = command.build(false);
+                List<BuildTarget> otherTargets = session.getUseWorkingDirectory() ? Collections.emptyList()
+                        : getOtherTargets(otherTargetsField.getText());
+                if (otherTargets.isEmpty()) {
+                    ConfigDashBoard.this.buildTask = command.build(false);
+                } else {
+                    // NOTE: The selected commits are built together with the other targets, each one has its own
+                    // line in the progress status
+                    List<BuildTarget> targets = new ArrayList<>();
+                    targets.add(new BuildTarget(session.getBaseCommit().getHash(), session.getTargetCommit().getHash()));
+                    targets.addAll(otherTargets);
+                    ConfigDashBoard.this.buildTask = command.buildTargets(targets, false);
+                }
                 buildTask.subscribe(new DefaultSubscriber<Task>() {
                     @Override
                     public void onNext(Task task) {
@@ -335,8 +413,10 @@ public class ConfigDashBoard extends JPanel implements ISimpleComponent {
         session.<Boolean>addListener(Session.USE_WORKING_DIRECTORY_CHANGED, useWorkingDirectory -> {
             if (useWorkingDirectory) {
                 patchFileField.setVisible(false);
+                otherTargetsField.setVisible(false);
             } else {
                 patchFileField.setVisible(true);
+                otherTargetsField.setVisible(true);
             }
         });
 
@@ -349,6 +429,13 @@ public class ConfigDashBoard extends JPanel implements ISimpleComponent {
         });
     }
 
+    private static List<BuildTarget> getOtherTargets(String targets) {
+        return Arrays.stream(targets.split(","))
+                .filter(StringUtils::isNotBlank)
+                .map(BuildTarget::parse)
+                .collect(Collectors.toList());
+    }
+
     private void stopBuild() {
         Optional.ofNullable(buildTask).ifPresent(BuildTask::cancel);
     }
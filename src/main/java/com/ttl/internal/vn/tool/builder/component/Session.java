@@ -24,18 +24,24 @@ import java.util.stream.Stream;
 import com.ttl.internal.vn.tool.builder.cli.CliBuildTool;
 import com.ttl.internal.vn.tool.builder.util.SwingGraphicUtil;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import com.ttl.internal.vn.tool.builder.git.GitCommit;
+import com.ttl.internal.vn.tool.builder.git.RenameSettings;
+import com.ttl.internal.vn.tool.builder.maven.MavenRuntime;
 import com.ttl.internal.vn.tool.builder.util.GitUtil;
 import com.ttl.internal.vn.tool.builder.util.GitUtil.CredentialEntry;
 
 import lombok.Getter;
 import lombok.Setter;
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.errors.NoWorkTreeException;
 
 @Getter
 @Setter
 public class Session implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(Session.class);
     public static final String USE_WORKING_DIRECTORY_CHANGED = "USE_WORKING_DIRECTORY_CHANGED";
     private static Session instance = new Session();
     private String gitUsername;
@@ -51,6 +57,10 @@ public class Session implements AutoCloseable {
     private GitCommit targetCommit;
     private Boolean useWorkingDirectory;
     private String entryFilter;
+    // NOTE: Same bounds for the diff preview and the builds of this session
+    private RenameSettings renameSettings = RenameSettings.DEFAULT;
+    // NOTE: Kept alive for the whole session so every build after the first one start with a warm maven
+    private final MavenRuntime mavenRuntime = new MavenRuntime(true);
 
     private Map<String, List<Consumer<?>>> listeners = new HashMap<>();
 
@@ -76,6 +86,13 @@ public class Session implements AutoCloseable {
                     "Create new session for new git repo, this session is already binded to a repo");
         }
         this.gitUtil = gitUtil;
+        try {
+            // NOTE: The diff preview of the working directory is refreshed on every change of the selection, only
+            // the files written since the last refresh are hashed again
+            gitUtil.watchWorkingTree();
+        } catch (IOException | NoWorkTreeException e) {
+            logger.warn("Can't watch the working tree, every diff will scan it", e);
+        }
     }
 
     public String getGitRepoURI(String remoteName) {
@@ -145,13 +162,33 @@ public class Session implements AutoCloseable {
                         baseCommit.getHash(),
                         Optional.ofNullable(targetCommit).map(GitCommit::getHash).orElse(null),
                         entryFilter,
-                        useWorkingDirectory);
+                        useWorkingDirectory,
+                        renameSettings);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         });
     }
 
+    public CompletableFuture<List<String>> getImpactedModules(List<DiffEntry> diffEntries) {
+        return SwingGraphicUtil.supply(() -> {
+            try {
+                return CliBuildTool.getImpactedModules(
+                        gitUtil,
+                        mavenRuntime.getModuleDiscovery(),
+                        clonedFolder,
+                        diffEntries,
+                        Optional.ofNullable(targetCommit).map(GitCommit::getHash).orElse(null),
+                        getUseWorkingDirectory());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
     public void setEntryFilter(String filter) {
         this.entryFilter = Optional.ofNullable(filter)
                 .filter(StringUtils::isNotBlank)
@@ -186,6 +223,7 @@ public class Session implements AutoCloseable {
     @Override
     public void close() throws Exception {
         gitUtil.close();
+        mavenRuntime.close();
     }
 
     public <T> void addListener(String event, Consumer<T> listener) {
@@ -23,6 +23,7 @@ public class DiffView extends JPanel implements ISimpleComponent {
     private transient List<DiffEntry> diffEntries;
     private JPanel containerPanel;
     private JLabel diffLabel;
+    private JLabel impactedModulesLabel;
 
     public DiffView() {
         super();
@@ -34,6 +35,11 @@ public class DiffView extends JPanel implements ISimpleComponent {
         refreshUI();
     }
 
+    public void setImpactedModules(List<String> impactedModules) {
+        impactedModulesLabel.setText(impactedModules.isEmpty() ? "No impacted module"
+                : "Impacted modules: " + String.join(", ", impactedModules));
+    }
+
     @Override
     public void initUI() {
         this.containerPanel = new JPanel();
@@ -42,6 +48,7 @@ public class DiffView extends JPanel implements ISimpleComponent {
         setupGroupLayout(groupLayout, getLabelComponents(diffEntries));
 
         this.diffLabel = new JLabel();
+        this.impactedModulesLabel = new JLabel();
 
         JScrollPane scrollPane = new JScrollPane();
         scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
@@ -55,13 +62,16 @@ public class DiffView extends JPanel implements ISimpleComponent {
         setLayout(mainGroupLayout);
         mainGroupLayout.setHorizontalGroup(mainGroupLayout.createParallelGroup()
                 .addComponent(diffLabel, GroupLayout.Alignment.TRAILING)
+                .addComponent(impactedModulesLabel)
                 .addComponent(scrollPane));
         mainGroupLayout.setVerticalGroup(mainGroupLayout.createSequentialGroup()
                 .addComponent(diffLabel)
+                .addComponent(impactedModulesLabel)
                 .addComponent(scrollPane));
     }
 
     public void clearDiff() {
+        impactedModulesLabel.setText("");
         containerPanel.removeAll();
         containerPanel.revalidate();
         containerPanel.repaint();
@@ -0,0 +1,168 @@
+package com.ttl.internal.vn.tool.builder.git;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+// NOTE: Diff results keyed by the ids of both trees, the rename detection settings and the path filter. Trees are
+// immutable so an entry never need to be invalidated. The most recently used results are kept in memory, the optional
+// disk tier keep them between runs (i.e. every CLI build of the same range). Diffs against the working directory
+// can't be cached
+public class DiffCache {
+    private static final Logger logger = LogManager.getLogger(DiffCache.class);
+    private static final int FORMAT_VERSION = 2;
+    private static final String CACHE_FILE_EXTENSION = ".diff";
+
+    private final Map<String, List<DiffEntry>> entries;
+    private final File cacheFolder;
+
+    // cacheFolder is the disk tier, null to keep the cache in memory only
+    public DiffCache(int capacity, File cacheFolder) {
+        this.entries = new LinkedHashMap<String, List<DiffEntry>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<DiffEntry>> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.cacheFolder = cacheFolder;
+    }
+
+    public static String computeKey(AnyObjectId baseTreeId, AnyObjectId targetTreeId, String renameSettings, TreeFilter pathFilter) {
+        return baseTreeId.name() + ".." + targetTreeId.name() + " " + renameSettings + " " + pathFilter;
+    }
+
+    public Optional<List<DiffEntry>> get(String key) {
+        synchronized (entries) {
+            List<DiffEntry> diffEntries = entries.get(key);
+            if (diffEntries != null) {
+                return Optional.of(new ArrayList<>(diffEntries));
+            }
+        }
+        Optional<List<DiffEntry>> diffEntries = load(key);
+        diffEntries.ifPresent(it -> {
+            synchronized (entries) {
+                entries.put(key, Collections.unmodifiableList(new ArrayList<>(it)));
+            }
+        });
+        return diffEntries;
+    }
+
+    public void put(String key, List<DiffEntry> diffEntries) {
+        synchronized (entries) {
+            entries.put(key, Collections.unmodifiableList(new ArrayList<>(diffEntries)));
+        }
+        if (cacheFolder != null) {
+            try {
+                store(key, diffEntries);
+            } catch (IOException e) {
+                // NOTE: The disk tier is only an optimization, the diff is still correct without it
+                logger.warn("Can't store diff to " + cacheFolder, e);
+            }
+        }
+    }
+
+    private Optional<List<DiffEntry>> load(String key) {
+        if (cacheFolder == null) {
+            return Optional.empty();
+        }
+        File cacheFile = getCacheFile(key);
+        if (!cacheFile.isFile()) {
+            return Optional.empty();
+        }
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            // NOTE: The hash of the key is stored instead of the key, writeUTF can't write a key over 64KB (i.e. a
+            // path filter with a lot of paths)
+            if (is.readInt() != FORMAT_VERSION || !hash(key).equals(is.readUTF())) {
+                return Optional.empty();
+            }
+            int size = is.readInt();
+            List<DiffEntry> diffEntries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                diffEntries.add(new StoredDiffEntry(
+                        DiffEntry.ChangeType.valueOf(is.readUTF()),
+                        is.readUTF(),
+                        is.readUTF(),
+                        FileMode.fromBits(is.readInt()),
+                        FileMode.fromBits(is.readInt()),
+                        AbbreviatedObjectId.fromString(is.readUTF()),
+                        AbbreviatedObjectId.fromString(is.readUTF()),
+                        is.readInt()));
+            }
+            return Optional.of(diffEntries);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Ignore unreadable diff cache " + cacheFile, e);
+            return Optional.empty();
+        }
+    }
+
+    private void store(String key, List<DiffEntry> diffEntries) throws IOException {
+        File cacheFile = getCacheFile(key);
+        cacheFile.getParentFile().mkdirs();
+        // Write to a temporary file first so a cancelled build never leaves a half written cache entry behind
+        File tmpFile = new File(cacheFile.getParentFile(), cacheFile.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            os.writeInt(FORMAT_VERSION);
+            os.writeUTF(hash(key));
+            os.writeInt(diffEntries.size());
+            for (DiffEntry diffEntry : diffEntries) {
+                os.writeUTF(diffEntry.getChangeType().name());
+                os.writeUTF(diffEntry.getOldPath());
+                os.writeUTF(diffEntry.getNewPath());
+                os.writeInt(diffEntry.getOldMode().getBits());
+                os.writeInt(diffEntry.getNewMode().getBits());
+                os.writeUTF(diffEntry.getOldId().name());
+                os.writeUTF(diffEntry.getNewId().name());
+                os.writeInt(diffEntry.getScore());
+            }
+        }
+        Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private File getCacheFile(String key) {
+        return new File(cacheFolder, hash(key) + CACHE_FILE_EXTENSION);
+    }
+
+    private static String hash(String key) {
+        return toHex(newDigest().digest(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
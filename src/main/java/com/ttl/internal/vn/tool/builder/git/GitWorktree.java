@@ -0,0 +1,154 @@
+package com.ttl.internal.vn.tool.builder.git;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.eclipse.jgit.api.ApplyResult;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.dircache.DirCacheCheckout.CheckoutMetadata;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+
+// NOTE: A work tree of the repository managed by the build tool at <worktrees folder>/<name>, the worktrees folder is in
+// the cache of the build tool, not in .git which belong to git. It shares the object database of the repository but has its own index, and commits are checked out with DirCacheCheckout against
+// that index without updating any ref, so HEAD, the index and the working directory of the user are never touched.
+// The work tree is kept between builds: checking out another commit only rewrite the files that differ from the index
+// and the untracked build outputs (target folders) are kept, so maven could also build incrementally
+public class GitWorktree implements AutoCloseable {
+    private final Repository repository;
+    private final File folder;
+    // Files written by the last applied patch, they are restored before the next checkout
+    private final File patchedFilesFile;
+
+    private GitWorktree(Repository repository, File folder, File patchedFilesFile) {
+        this.repository = repository;
+        this.folder = folder;
+        this.patchedFilesFile = patchedFilesFile;
+    }
+
+    public static File getFolder(File worktreesFolder, String name) {
+        return new File(worktreesFolder, toFolderName(name));
+    }
+
+    public static GitWorktree open(Repository mainRepository, File worktreesFolder, String name) throws IOException {
+        File folder = getFolder(worktreesFolder, name);
+        folder.mkdirs();
+        Repository repository = new FileRepositoryBuilder()
+                .setGitDir(mainRepository.getDirectory())
+                .setWorkTree(folder)
+                .setIndexFile(new File(folder.getParentFile(), folder.getName() + ".index"))
+                .setMustExist(true)
+                .build();
+        return new GitWorktree(repository, folder, new File(folder.getParentFile(), folder.getName() + ".patched"));
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    public void checkout(String ref) throws IOException {
+        RevCommit commit;
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            commit = revWalk.parseCommit(repository.resolve(ref));
+        }
+        DirCache dirCache = repository.lockDirCache();
+        try {
+            restorePatchedFiles(dirCache);
+        } catch (IOException e) {
+            dirCache.unlock();
+            throw e;
+        }
+        // NOTE: Only the build tool write to this work tree, so a modified tracked file is a leftover of an
+        // interrupted build and is overwritten. DirCacheCheckout unlock the index itself
+        DirCacheCheckout dirCacheCheckout = new DirCacheCheckout(repository, dirCache, commit.getTree());
+        dirCacheCheckout.setForce(true);
+        dirCacheCheckout.checkout();
+    }
+
+    public void applyPatch(File patchFile) throws IOException, GitAPIException {
+        ApplyResult applyResult;
+        try (
+                InputStream is = new FileInputStream(patchFile);
+                Git git = new Git(repository)) {
+            applyResult = git.apply().setPatch(is).call();
+        }
+        List<String> patchedFiles = applyResult.getUpdatedFiles().stream()
+                .map(file -> folder.toPath().toAbsolutePath().relativize(file.toPath().toAbsolutePath()))
+                .map(path -> path.toString().replace(File.separatorChar, '/'))
+                .collect(Collectors.toList());
+        Files.write(patchedFilesFile.toPath(), patchedFiles, StandardCharsets.UTF_8);
+    }
+
+    // Tracked files are checked out again from the index, files added by the patch are deleted
+    private void restorePatchedFiles(DirCache dirCache) throws IOException {
+        if (!patchedFilesFile.isFile()) {
+            return;
+        }
+        List<String> patchedFiles = Files.readAllLines(patchedFilesFile.toPath(), StandardCharsets.UTF_8);
+        List<String> trackedFiles = new ArrayList<>();
+        for (String patchedFile : patchedFiles) {
+            if (dirCache.getEntry(patchedFile) != null) {
+                trackedFiles.add(patchedFile);
+            } else {
+                Files.deleteIfExists(new File(folder, patchedFile).toPath());
+            }
+        }
+        if (!trackedFiles.isEmpty()) {
+            // NOTE: The eol conversion and the smudge filter of each file come from the attributes, like a checkout
+            try (
+                    ObjectReader reader = repository.newObjectReader();
+                    TreeWalk treeWalk = new TreeWalk(repository, reader)) {
+                treeWalk.setOperationType(OperationType.CHECKOUT_OP);
+                treeWalk.addTree(new DirCacheIterator(dirCache));
+                treeWalk.setFilter(PathFilterGroup.createFromStrings(trackedFiles));
+                treeWalk.setRecursive(true);
+                while (treeWalk.next()) {
+                    DirCacheEntry entry = treeWalk.getTree(0, DirCacheIterator.class).getDirCacheEntry();
+                    CheckoutMetadata checkoutMetadata = new CheckoutMetadata(
+                            treeWalk.getEolStreamType(OperationType.CHECKOUT_OP),
+                            treeWalk.getFilterCommand(Constants.ATTR_FILTER_TYPE_SMUDGE));
+                    DirCacheCheckout.checkoutEntry(repository, entry, reader, false, checkoutMetadata);
+                }
+            }
+        }
+        Files.delete(patchedFilesFile.toPath());
+    }
+
+    // NOTE: Every other character is escaped as _<hex code point>_, '_' included, so two refs never share a folder
+    // (i.e. a/b is a_2f_b and a_b is a_5f_b)
+    public static String toFolderName(String name) {
+        StringBuilder folderName = new StringBuilder();
+        name.codePoints().forEach(codePoint -> {
+            if (codePoint < 128 && (Character.isLetterOrDigit(codePoint) || codePoint == '.' || codePoint == '-')) {
+                folderName.appendCodePoint(codePoint);
+            } else {
+                folderName.append('_').append(Integer.toHexString(codePoint)).append('_');
+            }
+        });
+        return folderName.toString();
+    }
+
+    @Override
+    public void close() {
+        repository.close();
+    }
+}
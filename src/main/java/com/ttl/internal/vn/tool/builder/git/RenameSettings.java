@@ -0,0 +1,50 @@
+package com.ttl.internal.vn.tool.builder.git;
+
+import org.eclipse.jgit.diff.RenameDetector;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+// NOTE: Bounds of the rename detection of a diff. Exact renames (same blob id) are cheap, content renames score every
+// added file against every deleted file so they are capped by renameLimit. Unset values keep the config of the
+// repository (diff.renameLimit) or the defaults of JGit
+@Getter
+@Builder(toBuilder = true)
+@AllArgsConstructor
+public class RenameSettings {
+    public static final RenameSettings DEFAULT = RenameSettings.builder().build();
+
+    // Max number of added or deleted files to look for content renames, 0 for no limit
+    private final Integer renameLimit;
+    // Min similarity percentage (0-100) for a pair of files to be a rename
+    private final Integer renameScore;
+    // Binary files are only paired by exact renames
+    private final boolean skipBinaryFiles;
+    // Only pair files with the exact same content, nothing is scored
+    private final boolean exactOnly;
+
+    public void configure(RenameDetector renameDetector) {
+        if (renameLimit != null) {
+            renameDetector.setRenameLimit(renameLimit);
+        }
+        if (renameScore != null) {
+            renameDetector.setRenameScore(renameScore);
+        }
+        renameDetector.setSkipContentRenamesForBinaryFiles(skipBinaryFiles);
+        if (exactOnly) {
+            // NOTE: JGit has no switch for it, a negative limit is always exceeded so the content renames are skipped
+            // (0 would mean no limit)
+            renameDetector.setRenameLimit(-1);
+        }
+    }
+
+    // Part of the diff cache key, it must change whenever the result could change
+    @Override
+    public String toString() {
+        return "renames(limit=" + (renameLimit == null ? "default" : renameLimit)
+                + ",score=" + (renameScore == null ? "default" : renameScore)
+                + ",skipBinaryFiles=" + skipBinaryFiles
+                + ",exactOnly=" + exactOnly + ")";
+    }
+}
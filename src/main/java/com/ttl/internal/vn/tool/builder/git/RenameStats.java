@@ -0,0 +1,23 @@
+package com.ttl.internal.vn.tool.builder.git;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// NOTE: Cost of the rename detection of one diff. maxScoredPairs is the number of (deleted file, added file) pairs the
+// content rename detection went through, files already matched as exact renames are not part of them. It is an upper
+// bound of the pairs whose content was scored: the pairs of different file types or of too different sizes are skipped
+// without reading their content
+@Getter
+@AllArgsConstructor
+public class RenameStats {
+    private final long durationMillis;
+    private final int maxScoredPairs;
+    private final int renames;
+    private final boolean overRenameLimit;
+
+    @Override
+    public String toString() {
+        return "rename detection took " + durationMillis + " ms, scored up to " + maxScoredPairs + " file pairs, found "
+                + renames + " renames" + (overRenameLimit ? ", the rename limit was exceeded" : "");
+    }
+}
@@ -0,0 +1,25 @@
+package com.ttl.internal.vn.tool.builder.git;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.FileMode;
+
+// DiffEntry has no public constructor, its fields are protected so a subclass could restore or copy them
+class StoredDiffEntry extends DiffEntry {
+    StoredDiffEntry(ChangeType changeType, String oldPath, String newPath, FileMode oldMode, FileMode newMode,
+                    AbbreviatedObjectId oldId, AbbreviatedObjectId newId, int score) {
+        this.changeType = changeType;
+        this.oldPath = oldPath;
+        this.newPath = newPath;
+        this.oldMode = oldMode;
+        this.newMode = newMode;
+        this.oldId = oldId;
+        this.newId = newId;
+        this.score = score;
+    }
+
+    static StoredDiffEntry copyOf(DiffEntry entry) {
+        return new StoredDiffEntry(entry.getChangeType(), entry.getOldPath(), entry.getNewPath(), entry.getOldMode(),
+                entry.getNewMode(), entry.getOldId(), entry.getNewId(), entry.getScore());
+    }
+}
@@ -0,0 +1,105 @@
+package com.ttl.internal.vn.tool.builder.git;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.NotIgnoredFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+// NOTE: Diff of a base tree against the working tree, without rename detection. Comparing a file of the working tree
+// with the base tree hash its whole content, so with a watcher the entries of the last scan are kept and only the
+// paths written since then are walked and hashed again. The kept entries are dropped (full scan) when the base tree
+// or the path filter change, when the watcher lost events or when a .gitignore changed since the ignore rules decide
+// which files are part of the diff. Like git, only the ignore rules leave files out of the diff: a maven output folder
+// that isn't ignored is part of it
+public class WorkingTreeDiff implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(WorkingTreeDiff.class);
+
+    private final Repository repository;
+    private WorkingTreeWatcher watcher;
+    // base tree id and path filter of the kept entries
+    private String scannedKey;
+    // path -> entry of the last scan, the old path for a deleted file and the new path otherwise
+    private final Map<String, DiffEntry> scannedEntries = new TreeMap<>();
+
+    public WorkingTreeDiff(Repository repository) {
+        this.repository = repository;
+    }
+
+    public synchronized void watch() throws IOException {
+        if (watcher == null) {
+            watcher = new WorkingTreeWatcher(repository);
+            scannedKey = null;
+        }
+    }
+
+    public synchronized List<DiffEntry> scan(ObjectId baseTreeId, TreeFilter pathFilter) throws IOException {
+        if (watcher == null) {
+            return scan(baseTreeId, pathFilter, null);
+        }
+        String key = baseTreeId.name() + " " + pathFilter;
+        Optional<Set<String>> dirtyPaths = watcher.pollDirtyPaths();
+        if (!key.equals(scannedKey) || !dirtyPaths.isPresent()
+                || dirtyPaths.get().stream().anyMatch(path -> path.equals(Constants.DOT_GIT_IGNORE) || path.endsWith("/" + Constants.DOT_GIT_IGNORE))) {
+            scannedKey = null;
+            scannedEntries.clear();
+            scan(baseTreeId, pathFilter, null).forEach(entry -> scannedEntries.put(getPath(entry), entry));
+            scannedKey = key;
+        } else if (!dirtyPaths.get().isEmpty()) {
+            logger.debug("Rescan {} dirty paths of {}", dirtyPaths.get().size(), repository.getWorkTree());
+            // A dirty folder (i.e. created or deleted) cover every path under it
+            scannedEntries.keySet().removeIf(path -> dirtyPaths.get().stream()
+                    .anyMatch(dirtyPath -> path.equals(dirtyPath) || path.startsWith(dirtyPath + "/")));
+            scan(baseTreeId, pathFilter, dirtyPaths.get()).forEach(entry -> scannedEntries.put(getPath(entry), entry));
+        }
+        // NOTE: The rename detection update the entries it pair, the kept ones must stay raw
+        return scannedEntries.values().stream().map(StoredDiffEntry::copyOf).collect(Collectors.toList());
+    }
+
+    // Same walk as DiffFormatter.scan against a working tree, restricted to dirtyPaths unless it's null
+    private List<DiffEntry> scan(ObjectId baseTreeId, TreeFilter pathFilter, Set<String> dirtyPaths) throws IOException {
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(baseTreeId);
+            treeWalk.addTree(new FileTreeIterator(repository));
+            treeWalk.setRecursive(true);
+            List<TreeFilter> filters = new ArrayList<>();
+            filters.add(pathFilter);
+            if (dirtyPaths != null) {
+                filters.add(PathFilterGroup.createFromStrings(dirtyPaths));
+            }
+            filters.add(new NotIgnoredFilter(1));
+            filters.add(TreeFilter.ANY_DIFF);
+            treeWalk.setFilter(AndTreeFilter.create(filters.toArray(new TreeFilter[0])));
+            return DiffEntry.scan(treeWalk);
+        }
+    }
+
+    private static String getPath(DiffEntry entry) {
+        return entry.getChangeType() == ChangeType.DELETE ? entry.getOldPath() : entry.getNewPath();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+}
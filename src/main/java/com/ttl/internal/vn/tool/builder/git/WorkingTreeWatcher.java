@@ -0,0 +1,148 @@
+package com.ttl.internal.vn.tool.builder.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+
+// NOTE: Keep the set of paths written since the last poll in a working tree. Every folder the working tree diff walk is
+// registered to a WatchService, .git and the folders ignored by the ignore rules of the repository are skipped since
+// their files are never part of the diff. The ignore rules are read again when a .gitignore
+// is written. A created folder is registered when its event is polled and reported as dirty itself so the files
+// created in it before that are still covered. The events are only drained when the dirty paths are polled, so nothing
+// run in the background. When the event queue overflowed (or a folder can't be registered) the dirty paths are unknown
+// and the next poll ask for a full scan
+public class WorkingTreeWatcher implements AutoCloseable {
+    private final Repository repository;
+    private final Path workTree;
+    private final WatchService watchService;
+    // watch key -> watched folder
+    private final Map<WatchKey, Path> folders = new HashMap<>();
+    // Repository relative paths with '/' separator
+    private final Set<String> dirtyPaths = new HashSet<>();
+    private boolean overflow;
+
+    public WorkingTreeWatcher(Repository repository) throws IOException {
+        this.repository = repository;
+        this.workTree = repository.getWorkTree().toPath().toAbsolutePath().normalize();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        try {
+            register("");
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+    }
+
+    // Paths written since the last poll, empty when they are unknown and the whole working tree must be scanned
+    public synchronized Optional<Set<String>> pollDirtyPaths() {
+        WatchKey watchKey;
+        while ((watchKey = watchService.poll()) != null) {
+            Path folder = folders.get(watchKey);
+            for (WatchEvent<?> event : watchKey.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || folder == null) {
+                    overflow = true;
+                    continue;
+                }
+                Path path = folder.resolve((Path) event.context());
+                String relativePath = toRelativePath(path);
+                if (relativePath.equals(Constants.DOT_GIT)) {
+                    continue;
+                }
+                dirtyPaths.add(relativePath);
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        register(relativePath);
+                    } catch (IOException e) {
+                        overflow = true;
+                    }
+                }
+            }
+            if (!watchKey.reset()) {
+                folders.remove(watchKey);
+            }
+        }
+        // NOTE: The folders to watch depend on the ignore rules, the caller do a full scan for a written .gitignore
+        if (dirtyPaths.stream().anyMatch(WorkingTreeWatcher::isGitIgnore)) {
+            try {
+                reregister();
+            } catch (IOException e) {
+                overflow = true;
+            }
+        }
+        Optional<Set<String>> polledPaths = overflow ? Optional.empty() : Optional.of(new HashSet<>(dirtyPaths));
+        dirtyPaths.clear();
+        overflow = false;
+        return polledPaths;
+    }
+
+    // Register relativeFolder and every folder under it that isn't skipped, the folders above it are only walked to
+    // read their ignore rules. The working tree iterator never return .git
+    private void register(String relativeFolder) throws IOException {
+        if (relativeFolder.isEmpty()) {
+            registerFolder(workTree);
+        }
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(new FileTreeIterator(repository));
+            if (!relativeFolder.isEmpty()) {
+                treeWalk.setFilter(PathFilter.create(relativeFolder));
+            }
+            while (treeWalk.next()) {
+                if (!treeWalk.isSubtree()) {
+                    continue;
+                }
+                if (treeWalk.getTree(0, WorkingTreeIterator.class).isEntryIgnored()) {
+                    continue;
+                }
+                if (treeWalk.getPathLength() >= relativeFolder.length()) {
+                    registerFolder(workTree.resolve(treeWalk.getPathString()));
+                }
+                treeWalk.enterSubtree();
+            }
+        }
+    }
+
+    private void registerFolder(Path folder) throws IOException {
+        folders.put(folder.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY), folder);
+    }
+
+    private void reregister() throws IOException {
+        folders.keySet().forEach(WatchKey::cancel);
+        folders.clear();
+        register("");
+    }
+
+    private static boolean isGitIgnore(String path) {
+        return path.equals(Constants.DOT_GIT_IGNORE) || path.endsWith("/" + Constants.DOT_GIT_IGNORE);
+    }
+
+    private String toRelativePath(Path path) {
+        return workTree.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
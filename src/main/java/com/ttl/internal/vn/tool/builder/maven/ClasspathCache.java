@@ -0,0 +1,274 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.settings.Settings;
+import org.apache.maven.settings.io.xpp3.SettingsXpp3Reader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+// NOTE: On-disk cache of the classpath of every leaf module, the cache key is the hash of every pom in the reactor,
+// the maven settings.xml and the parent poms resolved from the local repository, so any change that could
+// affect dependency resolution will produce a new key
+public class ClasspathCache {
+    private static final String CACHE_FILE_EXTENSION = ".properties";
+    private static final String GRAPH_FILE_EXTENSION = ".graph";
+    private static final String DEFAULT_PARENT_RELATIVE_PATH = "../pom.xml";
+    // NOTE: Hash of every other entry, a module path never start with a dot
+    private static final String CHECKSUM_PROPERTY = ".checksum";
+
+    private final File cacheFolder;
+
+    public ClasspathCache(File cacheFolder) {
+        this.cacheFolder = cacheFolder;
+    }
+
+    public String computeKey(File projectFolder, List<String> leafModuleRelativePaths, File m2SettingsXml)
+            throws IOException, XmlPullParserException {
+        MessageDigest digest = newDigest();
+        update(digest, projectFolder.getAbsolutePath());
+
+        // Hash all poms of the reactor in a stable order
+        Set<File> reactorPoms = collectReactorPoms(projectFolder, leafModuleRelativePaths);
+        for (File pom : reactorPoms) {
+            update(digest, relativize(pom, projectFolder).toString());
+            update(digest, Files.readAllBytes(pom.toPath()));
+        }
+
+        // Hash the settings.xml, it decide mirrors, profiles and the local repository location
+        if (m2SettingsXml != null && m2SettingsXml.isFile()) {
+            update(digest, Files.readAllBytes(m2SettingsXml.toPath()));
+        }
+
+        // Hash the parent poms which are not part of the reactor (i.e. resolved from local repository)
+        File localRepository = getLocalRepository(m2SettingsXml);
+        for (String parent : collectExternalParents(reactorPoms, localRepository)) {
+            update(digest, parent);
+        }
+        return toHex(digest.digest());
+    }
+
+    // An unreadable or corrupt cache file is a miss
+    public Optional<Map<String, List<String>>> load(String key) throws IOException {
+        File cacheFile = getCacheFile(key);
+        if (!cacheFile.isFile()) {
+            return Optional.empty();
+        }
+        Properties properties = new Properties();
+        try (InputStream is = new FileInputStream(cacheFile)) {
+            properties.load(is);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        String checksum = (String) properties.remove(CHECKSUM_PROPERTY);
+        if (checksum == null || !checksum.equals(computeChecksum(properties))) {
+            return Optional.empty();
+        }
+        Map<String, List<String>> classpathMap = new HashMap<>();
+        for (String module : properties.stringPropertyNames()) {
+            String classpath = properties.getProperty(module);
+            classpathMap.put(module, StringUtils.isEmpty(classpath)
+                    ? new ArrayList<>()
+                    : Arrays.asList(classpath.split(File.pathSeparator)));
+        }
+        return Optional.of(classpathMap);
+    }
+
+    public void store(String key, Map<String, List<String>> classpathMap) throws IOException {
+        Properties properties = new Properties();
+        classpathMap.forEach((module, classpaths) -> properties.setProperty(module, String.join(File.pathSeparator, classpaths)));
+        properties.setProperty(CHECKSUM_PROPERTY, computeChecksum(properties));
+        File cacheFile = getCacheFile(key);
+        cacheFile.getParentFile().mkdirs();
+        // Write to a temporary file first so a cancelled build never leaves a half written cache entry behind
+        File tmpFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+        try (OutputStream os = new FileOutputStream(tmpFile)) {
+            properties.store(os, null);
+        }
+        Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // NOTE: The module graph is derived from the classpaths of the same key, it's stored next to them so the next
+    // build doesn't need to parse the classpaths again
+    public Optional<ModuleGraph> loadModuleGraph(String key) throws IOException {
+        File graphFile = new File(cacheFolder, key + GRAPH_FILE_EXTENSION);
+        if (!graphFile.isFile()) {
+            return Optional.empty();
+        }
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(graphFile)))) {
+            return Optional.of(ModuleGraph.read(is));
+        }
+    }
+
+    public void storeModuleGraph(String key, ModuleGraph moduleGraph) throws IOException {
+        File graphFile = new File(cacheFolder, key + GRAPH_FILE_EXTENSION);
+        graphFile.getParentFile().mkdirs();
+        File tmpFile = new File(graphFile.getParentFile(), graphFile.getName() + ".tmp");
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            moduleGraph.write(os);
+        }
+        Files.move(tmpFile.toPath(), graphFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String computeChecksum(Properties properties) {
+        MessageDigest digest = newDigest();
+        for (String module : new TreeSet<>(properties.stringPropertyNames())) {
+            update(digest, module);
+            update(digest, properties.getProperty(module));
+        }
+        return toHex(digest.digest());
+    }
+
+    private File getCacheFile(String key) {
+        return new File(cacheFolder, key + CACHE_FILE_EXTENSION);
+    }
+
+    // Collect pom of every leaf module and every aggregator pom between the leaf module and the project folder
+    public static Set<File> collectReactorPoms(File projectFolder, List<String> leafModuleRelativePaths) {
+        Set<File> poms = new TreeSet<>();
+        File normalizedProjectFolder = projectFolder.toPath().toAbsolutePath().normalize().toFile();
+        for (String leafModuleRelativePath : leafModuleRelativePaths) {
+            File moduleFolder = Paths.get(normalizedProjectFolder.getAbsolutePath(), leafModuleRelativePath).normalize().toFile();
+            while (moduleFolder != null) {
+                File pom = new File(moduleFolder, "pom.xml");
+                if (pom.isFile()) {
+                    poms.add(pom);
+                }
+                if (moduleFolder.equals(normalizedProjectFolder)) {
+                    break;
+                }
+                moduleFolder = moduleFolder.getParentFile();
+            }
+        }
+        return poms;
+    }
+
+    private Set<String> collectExternalParents(Set<File> reactorPoms, File localRepository) throws IOException, XmlPullParserException {
+        Set<String> parents = new TreeSet<>();
+        Set<File> visited = new HashSet<>(reactorPoms);
+        Deque<File> pomStack = new ArrayDeque<>(reactorPoms);
+        while (!pomStack.isEmpty()) {
+            File pom = pomStack.pop();
+            Parent parent = readModel(pom).getParent();
+            if (parent == null) {
+                continue;
+            }
+            File parentPom = resolveRelativeParent(pom, parent);
+            if (parentPom == null) {
+                parentPom = Paths.get(localRepository.getAbsolutePath(), parent.getGroupId().replace('.', File.separatorChar),
+                        parent.getArtifactId(), parent.getVersion(), parent.getArtifactId() + "-" + parent.getVersion() + ".pom").toFile();
+            }
+            if (!parentPom.isFile()) {
+                // Not resolved yet, the coordinate is the best thing we can hash
+                parents.add(parent.getId());
+                continue;
+            }
+            if (visited.add(parentPom)) {
+                parents.add(parent.getId() + ":" + toHex(newDigest().digest(Files.readAllBytes(parentPom.toPath()))));
+                pomStack.add(parentPom);
+            }
+        }
+        return parents;
+    }
+
+    private File resolveRelativeParent(File pom, Parent parent) throws IOException, XmlPullParserException {
+        String relativePath = Optional.ofNullable(parent.getRelativePath()).orElse(DEFAULT_PARENT_RELATIVE_PATH);
+        if (StringUtils.isBlank(relativePath)) {
+            return null;
+        }
+        File parentPom = new File(pom.getParentFile(), relativePath);
+        if (parentPom.isDirectory()) {
+            parentPom = new File(parentPom, "pom.xml");
+        }
+        if (!parentPom.isFile()) {
+            return null;
+        }
+        Model parentModel = readModel(parentPom);
+        String groupId = Optional.ofNullable(parentModel.getGroupId())
+                .orElseGet(() -> Optional.ofNullable(parentModel.getParent()).map(Parent::getGroupId).orElse(null));
+        if (parent.getArtifactId().equals(parentModel.getArtifactId()) && parent.getGroupId().equals(groupId)) {
+            return parentPom;
+        }
+        return null;
+    }
+
+    public static File getLocalRepository(File m2SettingsXml) throws IOException, XmlPullParserException {
+        if (m2SettingsXml != null && m2SettingsXml.isFile()) {
+            try (InputStream is = new FileInputStream(m2SettingsXml)) {
+                Settings settings = new SettingsXpp3Reader().read(is);
+                if (StringUtils.isNotBlank(settings.getLocalRepository())) {
+                    return new File(settings.getLocalRepository().trim());
+                }
+            }
+        }
+        return Paths.get(System.getProperty("user.home"), ".m2", "repository").toFile();
+    }
+
+    private static Model readModel(File pom) throws IOException, XmlPullParserException {
+        try (InputStream is = new FileInputStream(pom)) {
+            return new MavenXpp3Reader().read(is);
+        }
+    }
+
+    private static Path relativize(File child, File parent) {
+        return parent.toPath().toAbsolutePath().normalize().relativize(child.toPath().toAbsolutePath().normalize());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        update(digest, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void update(MessageDigest digest, byte[] value) {
+        // Length prefix so that concatenated values can't collide with each other
+        digest.update(Integer.toString(value.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(value);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
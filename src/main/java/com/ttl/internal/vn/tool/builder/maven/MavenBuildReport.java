@@ -0,0 +1,312 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+
+// NOTE: Collect per module timing of a maven invocation from its output events. The start of a module is the time its
+// "Building" line is printed and its duration comes from the reactor summary, so it is correct for parallel builds too.
+// Given the dependencies between modules it could also tell the critical path, i.e. the chain of modules that decide
+// the total build time no matter how many threads are used. A build that didn't need maven (i.e. cached classpaths and
+// sources compiled in-process) still get a report, without any module
+public class MavenBuildReport implements Consumer<MavenOutputEvent> {
+    private static final int SLOWEST_MODULES = 10;
+    // NOTE: A version start with a digit (1.0, 2.3.1-RC1) or is a snapshot of anything (dev-SNAPSHOT)
+    private static final Pattern VERSION_PATTERN = Pattern.compile("\\d\\S*|\\S+-SNAPSHOT");
+
+    private final long startTimestamp = System.currentTimeMillis();
+    private static final String NOT_RUN = "NOT_RUN";
+
+    // module display name (name + version) -> timing
+    private final Map<String, ModuleTiming> modules = new LinkedHashMap<>();
+    private long endTimestamp;
+    private String status;
+    private int warnings;
+    private int errors;
+    private int downloads;
+    private long downloadBytes;
+    private long downloadMillis;
+
+    @Getter
+    public static class ModuleTiming {
+        private final String name;
+        // The display name without the version, the same as name when it has none
+        private final String shortName;
+        private final long startTimestamp;
+        private String status;
+        private Duration duration;
+        // Relative path of the module inside the project, if known
+        private String path;
+
+        ModuleTiming(String name, long startTimestamp) {
+            this.name = name;
+            int versionIndex = name.lastIndexOf(' ');
+            this.shortName = versionIndex > 0 && VERSION_PATTERN.matcher(name.substring(versionIndex + 1)).matches()
+                    ? name.substring(0, versionIndex)
+                    : name;
+            this.startTimestamp = startTimestamp;
+        }
+    }
+
+    @Getter
+    public static class CriticalPath {
+        private final List<ModuleTiming> modules;
+        private final Duration duration;
+
+        CriticalPath(List<ModuleTiming> modules, Duration duration) {
+            this.modules = modules;
+            this.duration = duration;
+        }
+    }
+
+    @Override
+    public synchronized void accept(MavenOutputEvent event) {
+        switch (event.getType()) {
+            case MODULE_STARTED:
+                modules.putIfAbsent(event.getModule(), new ModuleTiming(event.getModule(), event.getTimestamp()));
+                break;
+            case MODULE_FINISHED:
+                findModule(event.getModule()).ifPresent(module -> {
+                    module.status = event.getStatus();
+                    module.duration = event.getDuration();
+                });
+                break;
+            case BUILD_FINISHED:
+                endTimestamp = event.getTimestamp();
+                status = event.getStatus();
+                // A single module build has no reactor summary
+                modules.values().stream()
+                        .filter(module -> module.duration == null && module.status == null)
+                        .forEach(module -> {
+                            module.status = event.getStatus();
+                            module.duration = Duration.ofMillis(endTimestamp - module.startTimestamp);
+                        });
+                break;
+            case WARNING:
+                warnings++;
+                break;
+            case ERROR:
+                errors++;
+                break;
+            case DOWNLOAD:
+                downloads++;
+                downloadBytes += event.getBytes();
+                downloadMillis += Optional.ofNullable(event.getDuration()).map(Duration::toMillis).orElse(0L);
+                break;
+            default:
+                break;
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return modules.isEmpty();
+    }
+
+    // NOTE: The reactor summary print the version only when it differs from the previous module, so a module is
+    // matched either by its full display name or by its name without the version, never by a prefix of its name
+    // (i.e. "Core" is not "Core Server")
+    synchronized Optional<ModuleTiming> findModule(String name) {
+        ModuleTiming module = modules.get(name);
+        if (module != null) {
+            return Optional.of(module);
+        }
+        return modules.values().stream().filter(it -> it.shortName.equals(name)).findFirst();
+    }
+
+    private boolean isMavenRun() {
+        return status != null || !modules.isEmpty();
+    }
+
+    // Attach the relative path of every module, moduleNames is module name -> module relative path
+    public synchronized void setModulePaths(Map<String, String> moduleNames) {
+        moduleNames.forEach((name, path) -> findModule(name).ifPresent(module -> module.path = path));
+    }
+
+    public synchronized List<ModuleTiming> getSlowestModules(int limit) {
+        return modules.values().stream()
+                .filter(module -> module.duration != null)
+                .sorted(Comparator.comparing(ModuleTiming::getDuration).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    // dependencies: module relative path -> relative paths of the modules it depends on
+    public synchronized CriticalPath getCriticalPath(Map<String, List<String>> dependencies) {
+        Map<String, ModuleTiming> modulesByPath = modules.values().stream()
+                .filter(module -> module.path != null && module.duration != null)
+                .collect(Collectors.toMap(ModuleTiming::getPath, module -> module, (a, b) -> a));
+        Map<String, Long> finishTimes = new HashMap<>();
+        Map<String, String> predecessors = new HashMap<>();
+        String last = null;
+        for (String path : modulesByPath.keySet()) {
+            long finishTime = getFinishTime(path, modulesByPath, dependencies, finishTimes, predecessors, new ArrayList<>());
+            if (last == null || finishTime > finishTimes.get(last)) {
+                last = path;
+            }
+        }
+        if (last == null) {
+            return new CriticalPath(Collections.emptyList(), Duration.ZERO);
+        }
+        List<ModuleTiming> path = new ArrayList<>();
+        for (String current = last; current != null; current = predecessors.get(current)) {
+            path.add(modulesByPath.get(current));
+        }
+        Collections.reverse(path);
+        return new CriticalPath(path, Duration.ofMillis(finishTimes.get(last)));
+    }
+
+    // Longest chain of module durations ending with this module
+    private static long getFinishTime(String path, Map<String, ModuleTiming> modulesByPath, Map<String, List<String>> dependencies,
+                                      Map<String, Long> finishTimes, Map<String, String> predecessors, List<String> visiting) {
+        Long finishTime = finishTimes.get(path);
+        if (finishTime != null) {
+            return finishTime;
+        }
+        if (visiting.contains(path)) {
+            // NOTE: Maven would have refused a cyclic reactor, ignore the back edge
+            return 0;
+        }
+        visiting.add(path);
+        long dependencyFinishTime = 0;
+        for (String dependency : Optional.ofNullable(dependencies.get(path)).orElseGet(Collections::emptyList)) {
+            if (dependency.equals(path) || !modulesByPath.containsKey(dependency)) {
+                continue;
+            }
+            long time = getFinishTime(dependency, modulesByPath, dependencies, finishTimes, predecessors, visiting);
+            if (time > dependencyFinishTime) {
+                dependencyFinishTime = time;
+                predecessors.put(path, dependency);
+            }
+        }
+        visiting.remove(path);
+        finishTime = dependencyFinishTime + modulesByPath.get(path).duration.toMillis();
+        finishTimes.put(path, finishTime);
+        return finishTime;
+    }
+
+    public synchronized String toSummaryTable(CriticalPath criticalPath) {
+        String lineSeparator = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        if (!isMavenRun()) {
+            return sb.append("Maven build report: maven didn't run").toString();
+        }
+        sb.append(String.format(Locale.ROOT, "Maven build report: %d modules, %s, %d warnings, %d errors, %d downloads (%s in %s)",
+                modules.size(), formatMillis(getTotalMillis()), warnings, errors, downloads, formatBytes(downloadBytes), formatMillis(downloadMillis)));
+        sb.append(lineSeparator);
+        sb.append(String.format(Locale.ROOT, "%-50s %-8s %10s %10s", "Slowest modules", "Status", "Duration", "Started"));
+        for (ModuleTiming module : getSlowestModules(SLOWEST_MODULES)) {
+            sb.append(lineSeparator);
+            sb.append(String.format(Locale.ROOT, "%-50s %-8s %10s %10s", module.name, module.status,
+                    formatMillis(module.duration.toMillis()), "+" + formatMillis(module.startTimestamp - startTimestamp)));
+        }
+        sb.append(lineSeparator);
+        sb.append("Critical path (").append(formatMillis(criticalPath.getDuration().toMillis())).append("): ")
+                .append(criticalPath.getModules().stream().map(ModuleTiming::getName).collect(Collectors.joining(" -> ")));
+        return sb.toString();
+    }
+
+    public synchronized void writeJson(File file, CriticalPath criticalPath) throws IOException {
+        file.getParentFile().mkdirs();
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+            writer.write("{\n");
+            writer.write("  \"startTime\": " + quote(Instant.ofEpochMilli(startTimestamp).toString()) + ",\n");
+            writer.write("  \"endTime\": " + (endTimestamp == 0 ? "null" : quote(Instant.ofEpochMilli(endTimestamp).toString())) + ",\n");
+            writer.write("  \"status\": " + quote(isMavenRun() ? status : NOT_RUN) + ",\n");
+            writer.write("  \"totalMillis\": " + getTotalMillis() + ",\n");
+            writer.write("  \"warnings\": " + warnings + ",\n");
+            writer.write("  \"errors\": " + errors + ",\n");
+            writer.write("  \"downloads\": {\"count\": " + downloads + ", \"bytes\": " + downloadBytes + ", \"millis\": " + downloadMillis + "},\n");
+            writer.write("  \"modules\": [");
+            if (!modules.isEmpty()) {
+                writer.write(modules.values().stream().map(this::toJson).collect(Collectors.joining(",\n", "\n", "\n  ")));
+            }
+            writer.write("],\n");
+            writer.write("  \"criticalPath\": {\"millis\": " + criticalPath.getDuration().toMillis() + ", \"modules\": ["
+                    + criticalPath.getModules().stream().map(ModuleTiming::getName).map(MavenBuildReport::quote).collect(Collectors.joining(", "))
+                    + "]}\n");
+            writer.write("}\n");
+        }
+    }
+
+    private String toJson(ModuleTiming module) {
+        return "    {\"name\": " + quote(module.name)
+                + ", \"path\": " + quote(module.path)
+                + ", \"status\": " + quote(module.status)
+                + ", \"startOffsetMillis\": " + (module.startTimestamp - startTimestamp)
+                + ", \"durationMillis\": " + Optional.ofNullable(module.duration).map(Duration::toMillis).map(String::valueOf).orElse("null")
+                + "}";
+    }
+
+    private long getTotalMillis() {
+        if (!isMavenRun()) {
+            return 0;
+        }
+        return (endTimestamp == 0 ? System.currentTimeMillis() : endTimestamp) - startTimestamp;
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String formatMillis(long millis) {
+        return String.format(Locale.ROOT, "%.3f s", millis / 1000.);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1000) {
+            return bytes + " B";
+        }
+        if (bytes < 1000 * 1000) {
+            return String.format(Locale.ROOT, "%.1f kB", bytes / 1000.);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", bytes / 1000. / 1000.);
+    }
+}
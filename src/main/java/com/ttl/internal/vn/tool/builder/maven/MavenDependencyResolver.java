@@ -0,0 +1,345 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.RepositoryUtils;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Repository;
+import org.apache.maven.model.building.DefaultModelBuilderFactory;
+import org.apache.maven.model.building.DefaultModelBuildingRequest;
+import org.apache.maven.model.building.FileModelSource;
+import org.apache.maven.model.building.ModelBuilder;
+import org.apache.maven.model.building.ModelBuildingException;
+import org.apache.maven.model.building.ModelBuildingRequest;
+import org.apache.maven.model.building.ModelCache;
+import org.apache.maven.model.building.ModelSource2;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.model.resolution.ModelResolver;
+import org.apache.maven.model.resolution.UnresolvableModelException;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.apache.maven.settings.Settings;
+import org.apache.maven.settings.SettingsUtils;
+import org.apache.maven.settings.io.xpp3.SettingsXpp3Reader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.eclipse.aether.DefaultRepositoryCache;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.ArtifactTypeRegistry;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.WorkspaceReader;
+import org.eclipse.aether.repository.WorkspaceRepository;
+import org.eclipse.aether.resolution.DependencyRequest;
+import org.eclipse.aether.resolution.DependencyResolutionException;
+import org.eclipse.aether.resolution.DependencyResult;
+import org.eclipse.aether.util.graph.visitor.PreorderNodeListGenerator;
+
+// NOTE: Resolve the classpath of every leaf module in-process against the local repository, this mirrors what
+// dependency:build-classpath does after a reactor compile: reactor dependencies resolve to their output folder,
+// everything else resolves to the file inside the local repository. Nothing is downloaded, so any missing
+// artifact will make the resolution fail and the caller is expected to fall back to forking maven
+public class MavenDependencyResolver {
+    private static final String REACTOR_WORKSPACE = "reactor";
+
+    private final RepositorySystem repositorySystem;
+    private final DefaultRepositorySystemSession session;
+    private final ModelBuilder modelBuilder;
+    private final Settings settings;
+    private final Properties systemProperties;
+    // NOTE: Raw models of the parent and imported poms from the local repository are shared between resolutions, they
+    // are stamped with their pom file since a SNAPSHOT could be installed again. Models inside the reactor are only
+    // cached for one resolution as they could change between builds
+    private final PomModelCache externalModelCache = new PomModelCache(this::findLocalRepositoryPom);
+
+    public MavenDependencyResolver(File m2SettingsXml) throws IOException, XmlPullParserException {
+        this.settings = readSettings(m2SettingsXml);
+        this.systemProperties = new Properties();
+        systemProperties.putAll(System.getProperties());
+        this.modelBuilder = new DefaultModelBuilderFactory().newInstance();
+
+        this.repositorySystem = newRepositorySystem();
+        if (repositorySystem == null) {
+            throw new IllegalStateException("Can't create maven repository system");
+        }
+        this.session = MavenRepositorySystemUtils.newSession();
+        session.setOffline(true);
+        session.setCache(new DefaultRepositoryCache());
+        session.setSystemProperties(systemProperties);
+        session.setConfigProperties(systemProperties);
+        // NOTE: The simple layout treat every artifact present in the local repository as available, the enhanced
+        // layout would reject artifacts downloaded from a remote repository since no remote repository is given here
+        File localRepository = ClasspathCache.getLocalRepository(m2SettingsXml);
+        session.setLocalRepositoryManager(repositorySystem.newLocalRepositoryManager(session, new LocalRepository(localRepository, "simple")));
+    }
+
+    // NOTE: The service locator is deprecated in favor of RepositorySystemSupplier, but the supplier live in
+    // maven-resolver-supplier which isn't a dependency of maven-core 3.9 (it also pull the http transport this offline
+    // resolver never use), so the locator is kept until maven-core ship it
+    @SuppressWarnings("deprecation")
+    private static RepositorySystem newRepositorySystem() {
+        return MavenRepositorySystemUtils.newServiceLocator().getService(RepositorySystem.class);
+    }
+
+    // module relative path -> classpaths
+    public Map<String, List<String>> resolveClasspaths(File projectFolder, List<String> leafModuleRelativePaths, int threads)
+            throws IOException, XmlPullParserException, ModelBuildingException, DependencyResolutionException, InterruptedException {
+        Reactor reactor = new Reactor();
+        for (File pom : ClasspathCache.collectReactorPoms(projectFolder, leafModuleRelativePaths)) {
+            reactor.addRawModel(pom, readModel(pom));
+        }
+
+        // NOTE: One model cache for the whole reactor, the parents and imported poms shared by the leaf modules are
+        // only built once
+        ModelCache modelCache = new ReactorModelCache(reactor);
+        Map<String, Model> leafModels = new HashMap<>();
+        for (String leafModuleRelativePath : leafModuleRelativePaths) {
+            File pom = Paths.get(projectFolder.getAbsolutePath(), leafModuleRelativePath, "pom.xml").normalize().toFile();
+            Model effectiveModel = buildEffectiveModel(pom, reactor, modelCache);
+            reactor.setOutputDirectory(effectiveModel, new File(effectiveModel.getBuild().getOutputDirectory()));
+            leafModels.put(leafModuleRelativePath, effectiveModel);
+        }
+
+        DefaultRepositorySystemSession reactorSession = new DefaultRepositorySystemSession(session);
+        reactorSession.setWorkspaceReader(reactor);
+        // NOTE: The repository cache keeps the artifact descriptors of reactor modules too, use a fresh one for every
+        // resolution so a changed pom in the reactor is never served from a previous build
+        reactorSession.setCache(new DefaultRepositoryCache());
+
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            Map<String, Future<List<String>>> futures = new HashMap<>();
+            for (Map.Entry<String, Model> entry : leafModels.entrySet()) {
+                futures.put(entry.getKey(), executorService.submit(() -> resolveClasspath(reactorSession, entry.getValue())));
+            }
+            Map<String, List<String>> classpathMap = new HashMap<>();
+            for (Map.Entry<String, Future<List<String>>> entry : futures.entrySet()) {
+                classpathMap.put(entry.getKey(), entry.getValue().get());
+            }
+            return classpathMap;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DependencyResolutionException) {
+                throw (DependencyResolutionException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private List<String> resolveClasspath(DefaultRepositorySystemSession reactorSession, Model model) throws DependencyResolutionException {
+        ArtifactTypeRegistry artifactTypeRegistry = reactorSession.getArtifactTypeRegistry();
+        CollectRequest collectRequest = new CollectRequest();
+        collectRequest.setRootArtifact(new DefaultArtifact(model.getGroupId(), model.getArtifactId(), "", "pom", model.getVersion()));
+        for (Dependency dependency : model.getDependencies()) {
+            collectRequest.addDependency(RepositoryUtils.toDependency(dependency, artifactTypeRegistry));
+        }
+        Optional.ofNullable(model.getDependencyManagement()).ifPresent(dependencyManagement ->
+                dependencyManagement.getDependencies().forEach(dependency ->
+                        collectRequest.addManagedDependency(RepositoryUtils.toDependency(dependency, artifactTypeRegistry))));
+
+        DependencyResult result = repositorySystem.resolveDependencies(reactorSession, new DependencyRequest(collectRequest, null));
+        // NOTE: Pre-order is the same order as the one maven use for project artifacts, keep it as the classpath
+        // order matters for the priority between modules later on
+        PreorderNodeListGenerator nodeListGenerator = new PreorderNodeListGenerator();
+        result.getRoot().accept(nodeListGenerator);
+        return nodeListGenerator.getFiles().stream()
+                .map(File::getAbsolutePath)
+                .collect(Collectors.toList());
+    }
+
+    private Model buildEffectiveModel(File pom, Reactor reactor, ModelCache modelCache) throws ModelBuildingException {
+        ModelBuildingRequest buildingRequest = new DefaultModelBuildingRequest();
+        buildingRequest.setPomFile(pom);
+        buildingRequest.setModelResolver(new LocalRepositoryModelResolver(reactor));
+        buildingRequest.setModelCache(modelCache);
+        buildingRequest.setValidationLevel(ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL);
+        buildingRequest.setProcessPlugins(false);
+        buildingRequest.setSystemProperties(systemProperties);
+        buildingRequest.setProfiles(settings.getProfiles().stream()
+                .map(SettingsUtils::convertFromSettingsProfile)
+                .collect(Collectors.toList()));
+        buildingRequest.setActiveProfileIds(settings.getActiveProfiles());
+        return modelBuilder.build(buildingRequest).getEffectiveModel();
+    }
+
+    private File findLocalRepositoryPom(String groupId, String artifactId, String version) {
+        String path = session.getLocalRepositoryManager().getPathForLocalArtifact(new DefaultArtifact(groupId, artifactId, "", "pom", version));
+        return session.getLocalRepository().getBasedir().toPath().resolve(path).toFile();
+    }
+
+    private static Settings readSettings(File m2SettingsXml) throws IOException, XmlPullParserException {
+        if (m2SettingsXml == null || !m2SettingsXml.isFile()) {
+            return new Settings();
+        }
+        try (InputStream is = new FileInputStream(m2SettingsXml)) {
+            return new SettingsXpp3Reader().read(is);
+        }
+    }
+
+    private static Model readModel(File pom) throws IOException, XmlPullParserException {
+        try (InputStream is = new FileInputStream(pom)) {
+            Model model = new MavenXpp3Reader().read(is);
+            model.setPomFile(pom);
+            return model;
+        }
+    }
+
+    private static String getGroupId(Model model) {
+        return Optional.ofNullable(model.getGroupId()).orElseGet(() -> Optional.ofNullable(model.getParent()).map(Parent::getGroupId).orElse(null));
+    }
+
+    private static String getVersion(Model model) {
+        return Optional.ofNullable(model.getVersion()).orElseGet(() -> Optional.ofNullable(model.getParent()).map(Parent::getVersion).orElse(null));
+    }
+
+    // Resolve reactor artifacts to their pom file or their output folder, the same way the maven reactor does
+    private static class Reactor implements WorkspaceReader {
+        private final WorkspaceRepository repository = new WorkspaceRepository(REACTOR_WORKSPACE);
+        // groupId:artifactId:version -> pom file
+        private final Map<String, File> pomFiles = new ConcurrentHashMap<>();
+        // groupId:artifactId:version -> output directory
+        private final Map<String, File> outputDirectories = new ConcurrentHashMap<>();
+
+        void addRawModel(File pom, Model model) {
+            String key = key(getGroupId(model), model.getArtifactId(), getVersion(model));
+            pomFiles.put(key, pom);
+            // Until the effective model is known assume the default output directory
+            outputDirectories.put(key, Paths.get(pom.getParentFile().getAbsolutePath(), "target", "classes").toFile());
+        }
+
+        void setOutputDirectory(Model effectiveModel, File outputDirectory) {
+            outputDirectories.put(key(effectiveModel.getGroupId(), effectiveModel.getArtifactId(), effectiveModel.getVersion()), outputDirectory);
+        }
+
+        boolean contains(String groupId, String artifactId, String version) {
+            return pomFiles.containsKey(key(groupId, artifactId, version));
+        }
+
+        File findPom(String groupId, String artifactId, String version) {
+            return pomFiles.get(key(groupId, artifactId, version));
+        }
+
+        @Override
+        public WorkspaceRepository getRepository() {
+            return repository;
+        }
+
+        @Override
+        public File findArtifact(Artifact artifact) {
+            String key = key(artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion());
+            if ("pom".equals(artifact.getExtension())) {
+                return pomFiles.get(key);
+            }
+            if (StringUtils.isNotEmpty(artifact.getClassifier())) {
+                return null;
+            }
+            return outputDirectories.get(key);
+        }
+
+        @Override
+        public List<String> findVersions(Artifact artifact) {
+            String prefix = artifact.getGroupId() + ":" + artifact.getArtifactId() + ":";
+            return pomFiles.keySet().stream()
+                    .filter(it -> it.startsWith(prefix))
+                    .map(it -> it.substring(prefix.length()))
+                    .collect(Collectors.toList());
+        }
+
+        private static String key(String groupId, String artifactId, String version) {
+            return groupId + ":" + artifactId + ":" + version;
+        }
+    }
+
+    // Reactor models are cached for one resolution, the other ones are shared by every resolution
+    private class ReactorModelCache implements ModelCache {
+        private final Reactor reactor;
+        private final PomModelCache reactorModelCache;
+
+        ReactorModelCache(Reactor reactor) {
+            this.reactor = reactor;
+            this.reactorModelCache = new PomModelCache(reactor::findPom);
+        }
+
+        @Override
+        public void put(String groupId, String artifactId, String version, String tag, Object data) {
+            getModelCache(groupId, artifactId, version).put(groupId, artifactId, version, tag, data);
+        }
+
+        @Override
+        public Object get(String groupId, String artifactId, String version, String tag) {
+            return getModelCache(groupId, artifactId, version).get(groupId, artifactId, version, tag);
+        }
+
+        private ModelCache getModelCache(String groupId, String artifactId, String version) {
+            return reactor.contains(groupId, artifactId, version) ? reactorModelCache : externalModelCache;
+        }
+    }
+
+    // Resolve parent and imported poms from the reactor first, then from the local repository
+    private class LocalRepositoryModelResolver implements ModelResolver {
+        private final Reactor reactor;
+
+        LocalRepositoryModelResolver(Reactor reactor) {
+            this.reactor = reactor;
+        }
+
+        @Override
+        public ModelSource2 resolveModel(String groupId, String artifactId, String version) throws UnresolvableModelException {
+            File reactorPom = reactor.findPom(groupId, artifactId, version);
+            if (reactorPom != null) {
+                return new FileModelSource(reactorPom);
+            }
+            File pom = findLocalRepositoryPom(groupId, artifactId, version);
+            if (!pom.isFile()) {
+                throw new UnresolvableModelException("Pom is not available in local repository: " + pom, groupId, artifactId, version);
+            }
+            return new FileModelSource(pom);
+        }
+
+        @Override
+        public ModelSource2 resolveModel(Parent parent) throws UnresolvableModelException {
+            return resolveModel(parent.getGroupId(), parent.getArtifactId(), parent.getVersion());
+        }
+
+        @Override
+        public ModelSource2 resolveModel(Dependency dependency) throws UnresolvableModelException {
+            return resolveModel(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion());
+        }
+
+        @Override
+        public void addRepository(Repository repository) {
+            // NOTE: Only the local repository is used
+        }
+
+        @Override
+        public void addRepository(Repository repository, boolean replace) {
+            // NOTE: Only the local repository is used
+        }
+
+        @Override
+        public ModelResolver newCopy() {
+            return new LocalRepositoryModelResolver(reactor);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import java.time.Duration;
+
+import lombok.Builder;
+import lombok.Getter;
+
+// NOTE: A typed line of maven output, only the fields relevant to the type are filled
+@Getter
+@Builder
+public class MavenOutputEvent {
+    public enum Type {
+        // [INFO] Building <module> [n/m]
+        MODULE_STARTED,
+        // [INFO] <module> ....... SUCCESS [  0.512 s] of the reactor summary
+        MODULE_FINISHED,
+        WARNING,
+        ERROR,
+        // [INFO] Downloaded from <repository>: <url> (<size> at <speed>)
+        DOWNLOAD,
+        // [INFO] BUILD SUCCESS / BUILD FAILURE
+        BUILD_FINISHED
+    }
+
+    private final Type type;
+    private final String line;
+    // Time the line was received, in milliseconds since epoch
+    private final long timestamp;
+    private final String module;
+    private final int moduleNumber;
+    private final int totalModules;
+    // SUCCESS, FAILURE or SKIPPED for finished modules and builds
+    private final String status;
+    // Build duration of finished modules, transfer duration of downloads
+    private final Duration duration;
+    private final String url;
+    private final long bytes;
+}
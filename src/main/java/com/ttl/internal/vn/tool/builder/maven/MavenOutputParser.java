@@ -0,0 +1,164 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.ttl.internal.vn.tool.builder.maven.MavenOutputEvent.Type;
+
+// NOTE: Turn maven output lines into typed events. Most lines are plain plugin output, so every pattern is guarded by
+// a cheap prefix check and the patterns are compiled once. The parser keep track of whether it is inside the reactor
+// summary, so it is not thread-safe and one instance should be used per maven invocation
+public class MavenOutputParser {
+    private static final String INFO_PREFIX = "[INFO] ";
+    private static final String WARNING_PREFIX = "[WARNING]";
+    private static final String ERROR_PREFIX = "[ERROR]";
+    private static final String BUILDING_PREFIX = INFO_PREFIX + "Building ";
+    private static final String REACTOR_SUMMARY_PREFIX = INFO_PREFIX + "Reactor Summary";
+    private static final String BUILD_RESULT_PREFIX = INFO_PREFIX + "BUILD ";
+    private static final String DOWNLOADED_FROM = "Downloaded from ";
+
+    // [INFO] Building <module> [moduleNumber/totalModule]
+    private static final Pattern BUILDING_MODULE_PATTERN = Pattern.compile("^\\[INFO] Building (.+?)\\s+\\[(\\d+)/(\\d+)]\\s*$");
+    // [INFO] Single module build doesn't have the module number: [INFO] Building <module>
+    private static final Pattern BUILDING_SINGLE_MODULE_PATTERN = Pattern.compile("^\\[INFO] Building (\\S.*?)\\s*$");
+    // [INFO] <module> ........... SUCCESS [  0.512 s] | [01:02 min] | [01:02 h]
+    private static final Pattern MODULE_RESULT_PATTERN = Pattern.compile(
+            "^\\[INFO] (.+?) \\.+ ?(SUCCESS|FAILURE|SKIPPED)(?: \\[\\s*([\\d.,:]+) (s|min|h)])?");
+    // [INFO] BUILD SUCCESS | BUILD FAILURE
+    private static final Pattern BUILD_RESULT_PATTERN = Pattern.compile("^\\[INFO] BUILD (SUCCESS|FAILURE)");
+    // Downloaded from central: https://.../x.jar (12 kB at 34 kB/s)
+    private static final Pattern DOWNLOADED_PATTERN = Pattern.compile(
+            "Downloaded from [^:]+: (\\S+)(?: \\(([\\d.,]+) (B|kB|MB|GB)(?: at ([\\d.,]+) (B|kB|MB|GB)/s)?\\))?");
+
+    private boolean inReactorSummary;
+
+    // Return null when the line is not interesting
+    public MavenOutputEvent parse(String line) {
+        if (line == null || line.isEmpty()) {
+            return null;
+        }
+        long timestamp = System.currentTimeMillis();
+        if (line.charAt(0) != '[') {
+            return null;
+        }
+        if (line.startsWith(WARNING_PREFIX)) {
+            return newEvent(Type.WARNING, line, timestamp).build();
+        }
+        if (line.startsWith(ERROR_PREFIX)) {
+            return newEvent(Type.ERROR, line, timestamp).build();
+        }
+        if (!line.startsWith(INFO_PREFIX)) {
+            return null;
+        }
+        if (line.startsWith(BUILDING_PREFIX)) {
+            return parseBuildingModule(line, timestamp);
+        }
+        if (line.startsWith(REACTOR_SUMMARY_PREFIX)) {
+            inReactorSummary = true;
+            return null;
+        }
+        if (line.startsWith(BUILD_RESULT_PREFIX)) {
+            inReactorSummary = false;
+            Matcher matcher = BUILD_RESULT_PATTERN.matcher(line);
+            return matcher.find() ? newEvent(Type.BUILD_FINISHED, line, timestamp).status(matcher.group(1)).build() : null;
+        }
+        if (inReactorSummary) {
+            Matcher matcher = MODULE_RESULT_PATTERN.matcher(line);
+            if (matcher.find()) {
+                return newEvent(Type.MODULE_FINISHED, line, timestamp)
+                        .module(matcher.group(1).trim())
+                        .status(matcher.group(2))
+                        .duration(matcher.group(3) == null ? null : parseDuration(matcher.group(3), matcher.group(4)))
+                        .build();
+            }
+            return null;
+        }
+        if (line.indexOf(DOWNLOADED_FROM, INFO_PREFIX.length()) >= 0) {
+            return parseDownload(line, timestamp);
+        }
+        return null;
+    }
+
+    private MavenOutputEvent parseBuildingModule(String line, long timestamp) {
+        Matcher matcher = BUILDING_MODULE_PATTERN.matcher(line);
+        if (matcher.find()) {
+            return newEvent(Type.MODULE_STARTED, line, timestamp)
+                    .module(matcher.group(1).trim())
+                    .moduleNumber(Integer.parseInt(matcher.group(2)))
+                    .totalModules(Integer.parseInt(matcher.group(3)))
+                    .build();
+        }
+        // NOTE: "Building jar: ..." and "Building war: ..." lines of the packaging plugins are not modules
+        if (line.indexOf(':', BUILDING_PREFIX.length()) >= 0) {
+            return null;
+        }
+        matcher = BUILDING_SINGLE_MODULE_PATTERN.matcher(line);
+        if (matcher.find()) {
+            return newEvent(Type.MODULE_STARTED, line, timestamp)
+                    .module(matcher.group(1).trim())
+                    .moduleNumber(1)
+                    .totalModules(1)
+                    .build();
+        }
+        return null;
+    }
+
+    private MavenOutputEvent parseDownload(String line, long timestamp) {
+        Matcher matcher = DOWNLOADED_PATTERN.matcher(line);
+        if (!matcher.find()) {
+            return null;
+        }
+        MavenOutputEvent.MavenOutputEventBuilder builder = newEvent(Type.DOWNLOAD, line, timestamp).url(matcher.group(1));
+        if (matcher.group(2) != null) {
+            double bytes = toBytes(matcher.group(2), matcher.group(3));
+            builder.bytes((long) bytes);
+            if (matcher.group(4) != null) {
+                double bytesPerSecond = toBytes(matcher.group(4), matcher.group(5));
+                if (bytesPerSecond > 0) {
+                    builder.duration(Duration.ofMillis((long) (1000 * bytes / bytesPerSecond)));
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private static MavenOutputEvent.MavenOutputEventBuilder newEvent(Type type, String line, long timestamp) {
+        return MavenOutputEvent.builder().type(type).line(line).timestamp(timestamp);
+    }
+
+    // NOTE: Maven format the duration with the default locale, so the decimal separator could also be a comma
+    static Duration parseDuration(String value, String unit) {
+        String normalized = value.replace(',', '.');
+        switch (unit) {
+            case "s":
+                return Duration.ofMillis((long) (Double.parseDouble(normalized) * 1000));
+            case "min": {
+                String[] parts = normalized.split(":");
+                return Duration.ofMinutes(Long.parseLong(parts[0])).plusSeconds(Long.parseLong(parts[1]));
+            }
+            case "h": {
+                String[] parts = normalized.split(":");
+                return Duration.ofHours(Long.parseLong(parts[0])).plusMinutes(Long.parseLong(parts[1]));
+            }
+            default:
+                throw new UnsupportedOperationException("Unknown duration unit " + unit);
+        }
+    }
+
+    private static double toBytes(String value, String unit) {
+        double number = Double.parseDouble(value.replace(',', '.'));
+        switch (unit) {
+            case "B":
+                return number;
+            case "kB":
+                return number * 1000;
+            case "MB":
+                return number * 1000 * 1000;
+            case "GB":
+                return number * 1000 * 1000 * 1000;
+            default:
+                throw new UnsupportedOperationException("Unknown size unit " + unit);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.maven.shared.invoker.DefaultInvoker;
+import org.apache.maven.shared.invoker.InvocationRequest;
+import org.apache.maven.shared.invoker.Invoker;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+// NOTE: Everything that is expensive to bootstrap and doesn't depend on a single build: the in-process resolver
+// (parsed settings, repository system, cached external models), the module discovery and the invoker. A runtime is
+// kept alive for the whole UI session so consecutive builds start warm. When the maven daemon (mvnd) is installed,
+// forked builds go through it so the plugin realms and the JIT-ed maven core also stay loaded between builds
+public class MavenRuntime implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(MavenRuntime.class);
+    private static final String MVND_HOME = "MVND_HOME";
+
+    private final Invoker invoker;
+    private final File mavenDaemonExecutable;
+    private final ModuleDiscovery moduleDiscovery = new ModuleDiscovery();
+    // settings.xml absolute path -> resolver
+    private final Map<String, CachedResolver> resolvers = new HashMap<>();
+
+    public MavenRuntime(boolean useMavenDaemon) {
+        this.invoker = new DefaultInvoker();
+        this.mavenDaemonExecutable = useMavenDaemon ? findMavenDaemonExecutable() : null;
+        if (mavenDaemonExecutable != null) {
+            logger.info("Use maven daemon {}", mavenDaemonExecutable);
+            invoker.setMavenExecutable(mavenDaemonExecutable);
+        }
+    }
+
+    public Invoker getInvoker() {
+        return invoker;
+    }
+
+    public ModuleDiscovery getModuleDiscovery() {
+        return moduleDiscovery;
+    }
+
+    public boolean isMavenDaemon() {
+        return mavenDaemonExecutable != null;
+    }
+
+    // NOTE: The daemon render its own rich output by default, ask for the plain maven output so the progress of the
+    // build could still be parsed
+    public void configure(InvocationRequest request) {
+        if (isMavenDaemon()) {
+            request.addArg("-Dmvnd.rawStreams=true");
+        }
+    }
+
+    // The resolver is reused as long as the settings.xml is unchanged
+    public synchronized MavenDependencyResolver getDependencyResolver(File m2SettingsXml) throws IOException, XmlPullParserException {
+        String key = Optional.ofNullable(m2SettingsXml).map(File::getAbsolutePath).orElse("");
+        long lastModified = Optional.ofNullable(m2SettingsXml).map(File::lastModified).orElse(0L);
+        CachedResolver cachedResolver = resolvers.get(key);
+        if (cachedResolver == null || cachedResolver.lastModified != lastModified) {
+            cachedResolver = new CachedResolver(new MavenDependencyResolver(m2SettingsXml), lastModified);
+            resolvers.put(key, cachedResolver);
+        }
+        return cachedResolver.resolver;
+    }
+
+    @Override
+    public synchronized void close() {
+        // NOTE: The daemon stop itself after being idle for a while, it could also be shared with other maven builds
+        // on this machine so it's not stopped here
+        resolvers.clear();
+    }
+
+    private static File findMavenDaemonExecutable() {
+        boolean windows = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+        String executableName = windows ? "mvnd.cmd" : "mvnd";
+        String mvndHome = System.getenv(MVND_HOME);
+        if (StringUtils.isNotBlank(mvndHome)) {
+            File executable = new File(new File(mvndHome, "bin"), executableName);
+            if (executable.isFile()) {
+                return executable;
+            }
+        }
+        return Arrays.stream(Optional.ofNullable(System.getenv("PATH")).orElse("").split(File.pathSeparator))
+                .filter(StringUtils::isNotBlank)
+                .map(path -> new File(path, executableName))
+                .filter(File::isFile)
+                .filter(File::canExecute)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static class CachedResolver {
+        private final MavenDependencyResolver resolver;
+        private final long lastModified;
+
+        CachedResolver(MavenDependencyResolver resolver, long lastModified) {
+            this.resolver = Objects.requireNonNull(resolver);
+            this.lastModified = lastModified;
+        }
+    }
+}
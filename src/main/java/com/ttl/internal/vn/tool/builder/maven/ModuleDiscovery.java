@@ -0,0 +1,350 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.model.Activation;
+import org.apache.maven.model.ActivationFile;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.building.DefaultModelBuilderFactory;
+import org.apache.maven.model.building.DefaultModelBuildingRequest;
+import org.apache.maven.model.building.ModelBuilder;
+import org.apache.maven.model.building.ModelBuildingException;
+import org.apache.maven.model.building.ModelBuildingRequest;
+import org.apache.maven.model.building.ModelCache;
+import org.apache.maven.model.building.ModelProblemCollector;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.model.profile.DefaultProfileActivationContext;
+import org.apache.maven.model.profile.DefaultProfileSelector;
+import org.apache.maven.model.profile.ProfileActivationContext;
+import org.apache.maven.model.profile.activation.FileProfileActivator;
+import org.apache.maven.model.profile.activation.ProfileActivator;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.eclipse.jgit.lib.ObjectId;
+
+import com.ttl.internal.vn.tool.builder.util.GitUtil;
+
+// NOTE: Find every leaf module (module without submodules) of a project. The poms of one level of the module tree are
+// parsed in parallel, aggregator poms need an effective model to also see the modules declared by active profiles, so
+// one ModelBuilder and one model cache are shared by all of them. The submodules of every pom are memoized by the content of that pom and
+// its parent chain, so rediscovering an unchanged tree (i.e. the next build of the same session) only hash files
+public class ModuleDiscovery {
+    private static final String DEFAULT_PARENT_RELATIVE_PATH = "../pom.xml";
+
+    private static final List<ProfileActivator> PROFILE_ACTIVATORS = new ProfileActivatorFactory().getProfileActivators();
+
+    private final ModelBuilder modelBuilder = new DefaultModelBuilderFactory().newInstance();
+    // pom absolute path -> submodules of the last seen content of that pom
+    private final Map<String, MemoizedModules> memoizedModules = new ConcurrentHashMap<>();
+    // pom blob id -> submodules, a blob never change so it never need to be invalidated
+    private final Map<ObjectId, List<String>> blobModules = new ConcurrentHashMap<>();
+
+    private static class MemoizedModules {
+        private final String fingerprint;
+        private final List<String> modules;
+
+        MemoizedModules(String fingerprint, List<String> modules) {
+            this.fingerprint = fingerprint;
+            this.modules = modules;
+        }
+    }
+
+    // NOTE: Only to get the profile activators the model builder is created with
+    private static class ProfileActivatorFactory extends DefaultModelBuilderFactory {
+        private List<ProfileActivator> getProfileActivators() {
+            return Arrays.asList(newProfileActivators());
+        }
+    }
+
+    // NOTE: Same as the FileProfileActivator of maven but a relative path (or a path under ${basedir}) is looked up in
+    // the tree of ref from the folder of the pom, an absolute path is still looked up on the disk
+    private static class GitFileProfileActivator implements ProfileActivator {
+        private static final Pattern EXPRESSION = Pattern.compile("\\$\\{([^}]+)}");
+        private static final String BASEDIR = "${basedir}";
+
+        private final GitUtil gitUtil;
+        private final String ref;
+        private final String moduleFolder;
+
+        GitFileProfileActivator(GitUtil gitUtil, String ref, String moduleFolder) {
+            this.gitUtil = gitUtil;
+            this.ref = ref;
+            this.moduleFolder = moduleFolder;
+        }
+
+        @Override
+        public boolean isActive(Profile profile, ProfileActivationContext context, ModelProblemCollector problems) {
+            ActivationFile file = Optional.ofNullable(profile.getActivation()).map(Activation::getFile).orElse(null);
+            if (file == null) {
+                return false;
+            }
+            boolean missing = StringUtils.isEmpty(file.getExists());
+            String path = missing ? file.getMissing() : file.getExists();
+            if (StringUtils.isEmpty(path)) {
+                return false;
+            }
+            path = path.replace("${project.basedir}", BASEDIR);
+            boolean inModule = path.startsWith(BASEDIR);
+            path = interpolate(StringUtils.removeStart(path, BASEDIR), context);
+            // NOTE: Maven doesn't activate a profile whose path can't be interpolated
+            if (path == null) {
+                return false;
+            }
+            boolean exists;
+            try {
+                exists = !inModule && new File(path).isAbsolute() ? new File(path).exists() : existsInTree(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return missing != exists;
+        }
+
+        @Override
+        public boolean presentInConfig(Profile profile, ProfileActivationContext context, ModelProblemCollector problems) {
+            return profile.getActivation() != null && profile.getActivation().getFile() != null;
+        }
+
+        private boolean existsInTree(String path) throws IOException {
+            Path treePath = Paths.get(moduleFolder, StringUtils.stripStart(path, "/\\")).normalize();
+            // NOTE: A path outside of the repository isn't in the tree
+            if (treePath.startsWith("..")) {
+                return false;
+            }
+            return gitUtil.exists(ref, treePath.toString().replace(File.separatorChar, '/'));
+        }
+
+        private static String interpolate(String path, ProfileActivationContext context) {
+            Matcher matcher = EXPRESSION.matcher(path);
+            StringBuffer interpolated = new StringBuffer();
+            while (matcher.find()) {
+                String name = matcher.group(1);
+                String value = Stream.of(context.getProjectProperties(), context.getUserProperties(), context.getSystemProperties())
+                        .map(properties -> properties.get(name))
+                        .filter(Objects::nonNull)
+                        .findFirst()
+                        .orElse(null);
+                if (value == null) {
+                    return null;
+                }
+                matcher.appendReplacement(interpolated, Matcher.quoteReplacement(value));
+            }
+            matcher.appendTail(interpolated);
+            return interpolated.toString();
+        }
+    }
+
+    // Leaf module relative paths in breadth-first order of the module declarations
+    public List<String> discoverLeafModules(File projectFolder, int threads)
+            throws IOException, XmlPullParserException, ModelBuildingException, InterruptedException {
+        Path normalizedProjectFolder = projectFolder.toPath().toAbsolutePath().normalize();
+        List<String> leafModuleRelativePaths = new ArrayList<>();
+        List<Path> level = new ArrayList<>();
+        level.add(normalizedProjectFolder);
+        // NOTE: The model cache only live for this discovery, the parents shared by the aggregators are built once.
+        // Its models are stamped with the poms read by this discovery, a parent outside of the module tree isn't cached
+        Map<String, File> reactorPoms = new ConcurrentHashMap<>();
+        PomModelCache modelCache = new PomModelCache((groupId, artifactId, version) -> reactorPoms.get(key(groupId, artifactId, version)));
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            while (!level.isEmpty()) {
+                List<Future<List<String>>> futures = new ArrayList<>();
+                for (Path moduleFolder : level) {
+                    futures.add(executorService.submit(() -> getModules(moduleFolder.resolve("pom.xml").toFile(), reactorPoms, modelCache)));
+                }
+                List<Path> nextLevel = new ArrayList<>();
+                for (int i = 0; i < level.size(); i++) {
+                    Path moduleFolder = level.get(i);
+                    List<String> modules = getResult(futures.get(i));
+                    if (modules.isEmpty()) {
+                        leafModuleRelativePaths.add(normalizedProjectFolder.relativize(moduleFolder).toString());
+                    } else {
+                        modules.forEach(module -> nextLevel.add(moduleFolder.resolve(module).normalize()));
+                    }
+                }
+                level = nextLevel;
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        return leafModuleRelativePaths;
+    }
+
+    // NOTE: Same as discoverLeafModules but the poms are read from the tree of ref in the git object database, so
+    // nothing need to be checked out. No effective model is built since parents outside of the tree can't be resolved,
+    // the profiles of the raw model are activated instead with the same activators and activation context as the model
+    // builder, only a file activation look for its file in the tree of ref
+    public List<String> discoverLeafModules(GitUtil gitUtil, String ref) throws IOException, XmlPullParserException {
+        Map<String, ObjectId> pomBlobs = gitUtil.findFiles(ref, "pom.xml");
+        List<String> leafModuleRelativePaths = new ArrayList<>();
+        Deque<String> moduleFolders = new ArrayDeque<>();
+        moduleFolders.add("");
+        while (!moduleFolders.isEmpty()) {
+            String moduleFolder = moduleFolders.poll();
+            String pomPath = moduleFolder.isEmpty() ? "pom.xml" : moduleFolder + "/pom.xml";
+            ObjectId blobId = pomBlobs.get(pomPath);
+            if (blobId == null) {
+                throw new IllegalStateException("Can't find " + pomPath + " in " + ref);
+            }
+            List<String> modules = blobModules.get(blobId);
+            if (modules == null) {
+                Model rawModel = new MavenXpp3Reader().read(new ByteArrayInputStream(gitUtil.readBlob(blobId)));
+                modules = getModules(rawModel, new GitFileProfileActivator(gitUtil, ref, moduleFolder));
+                // NOTE: A file activation depend on the rest of the tree, not only on the pom
+                if (!hasFileActivation(rawModel)) {
+                    blobModules.put(blobId, modules);
+                }
+            }
+            if (modules.isEmpty()) {
+                leafModuleRelativePaths.add(Paths.get(moduleFolder).toString());
+            } else {
+                for (String module : modules) {
+                    moduleFolders.add(Paths.get(moduleFolder, module).normalize().toString().replace(File.separatorChar, '/'));
+                }
+            }
+        }
+        return leafModuleRelativePaths;
+    }
+
+    private static List<String> getModules(Model rawModel, ProfileActivator fileProfileActivator) {
+        if (rawModel.getModules().isEmpty()) {
+            return rawModel.getModules();
+        }
+        DefaultProfileSelector profileSelector = new DefaultProfileSelector();
+        for (ProfileActivator profileActivator : PROFILE_ACTIVATORS) {
+            profileSelector.addProfileActivator(profileActivator instanceof FileProfileActivator ? fileProfileActivator : profileActivator);
+        }
+        // NOTE: Same context as the one the model builder create from a request without profile ids and user properties
+        DefaultProfileActivationContext context = new DefaultProfileActivationContext();
+        context.setSystemProperties(System.getProperties());
+        Properties userProperties = new Properties();
+        userProperties.setProperty("packaging", rawModel.getPackaging());
+        context.setUserProperties(userProperties);
+        context.setProjectProperties(rawModel.getProperties());
+        List<String> modules = new ArrayList<>(rawModel.getModules());
+        profileSelector.getActiveProfiles(rawModel.getProfiles(), context, problem -> { }).stream()
+                .flatMap(profile -> profile.getModules().stream())
+                .filter(module -> !modules.contains(module))
+                .forEach(modules::add);
+        return modules;
+    }
+
+    private List<String> getModules(File pomFile, Map<String, File> reactorPoms, ModelCache modelCache)
+            throws IOException, XmlPullParserException, ModelBuildingException {
+        byte[] content = Files.readAllBytes(pomFile.toPath());
+        Model rawModel = new MavenXpp3Reader().read(new ByteArrayInputStream(content));
+        reactorPoms.put(key(Optional.ofNullable(rawModel.getGroupId()).orElseGet(() -> Optional.ofNullable(rawModel.getParent()).map(Parent::getGroupId).orElse(null)),
+                rawModel.getArtifactId(),
+                Optional.ofNullable(rawModel.getVersion()).orElseGet(() -> Optional.ofNullable(rawModel.getParent()).map(Parent::getVersion).orElse(null))), pomFile);
+        // NOTE: Same as before, a pom without modules of its own is a leaf even if one of its profiles declare modules
+        if (rawModel.getModules().isEmpty()) {
+            return rawModel.getModules();
+        }
+        String fingerprint = getFingerprint(pomFile, content, rawModel);
+        MemoizedModules memoized = memoizedModules.get(pomFile.getAbsolutePath());
+        if (memoized != null && memoized.fingerprint.equals(fingerprint)) {
+            return memoized.modules;
+        }
+        ModelBuildingRequest buildingRequest = new DefaultModelBuildingRequest();
+        buildingRequest.setPomFile(pomFile);
+        buildingRequest.setModelCache(modelCache);
+        // NOTE: The request has no system properties by default, the jdk and os activations need the ones of this JVM
+        buildingRequest.setSystemProperties(System.getProperties());
+        List<String> modules = modelBuilder.build(buildingRequest).getEffectiveModel().getModules();
+        if (!hasFileActivation(rawModel)) {
+            memoizedModules.put(pomFile.getAbsolutePath(), new MemoizedModules(fingerprint, modules));
+        }
+        return modules;
+    }
+
+    // Hash of the pom and every parent pom reachable through relativePath, they all take part in the effective model
+    private static String getFingerprint(File pomFile, byte[] content, Model rawModel) throws IOException, XmlPullParserException {
+        MessageDigest digest = newDigest();
+        digest.update(content);
+        File pom = pomFile;
+        Model model = rawModel;
+        List<File> visited = new ArrayList<>();
+        while (model.getParent() != null && !visited.contains(pom)) {
+            visited.add(pom);
+            String relativePath = Optional.ofNullable(model.getParent().getRelativePath()).orElse(DEFAULT_PARENT_RELATIVE_PATH);
+            if (StringUtils.isBlank(relativePath)) {
+                break;
+            }
+            File parentPom = Paths.get(pom.getParentFile().getAbsolutePath(), relativePath).normalize().toFile();
+            if (parentPom.isDirectory()) {
+                parentPom = new File(parentPom, "pom.xml");
+            }
+            if (!parentPom.isFile()) {
+                break;
+            }
+            byte[] parentContent = Files.readAllBytes(parentPom.toPath());
+            digest.update(parentContent);
+            pom = parentPom;
+            model = new MavenXpp3Reader().read(new ByteArrayInputStream(parentContent));
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static boolean hasFileActivation(Model rawModel) {
+        return rawModel.getProfiles().stream()
+                .anyMatch(profile -> profile.getActivation() != null && profile.getActivation().getFile() != null);
+    }
+
+    private static String key(String groupId, String artifactId, String version) {
+        return groupId + ":" + artifactId + ":" + version;
+    }
+
+    private static <T> T getResult(Future<T> future)
+            throws IOException, XmlPullParserException, ModelBuildingException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof XmlPullParserException) {
+                throw (XmlPullParserException) cause;
+            }
+            if (cause instanceof ModelBuildingException) {
+                throw (ModelBuildingException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+// NOTE: Dependency graph of the leaf modules. Every module get a dense id (its index in the leaf module list), the
+// direct dependencies and dependents are kept as int arrays and the transitive closures in both directions as bitsets,
+// so the impact of a change is a few bitset operations. Roots are the modules no other module depend on, they are
+// the deliverables of the build (free modules). The direct dependencies keep the order they were given in (the
+// classpath order), the artifacts rely on it to decide which module override a file changed by several of them. The
+// graph only depends on the classpaths so it's cached with them
+public class ModuleGraph {
+    private static final int FORMAT_VERSION = 2;
+
+    private final List<String> modules;
+    private final Map<String, Integer> ids = new HashMap<>();
+    // id -> ids of the direct dependencies, in the given order
+    private final int[][] dependencies;
+    // id -> ids of the direct dependents
+    private final int[][] dependents;
+    // id -> ids of every transitive dependency (not including itself)
+    private final BitSet[] dependencyClosures;
+    // id -> ids of every transitive dependent (not including itself)
+    private final BitSet[] dependentClosures;
+    private final BitSet roots = new BitSet();
+    // Ids in dependency order, null when the graph has a cycle
+    private final int[] topologicalOrder;
+    private final BitSet cyclicModules = new BitSet();
+
+    // dependencies: module -> modules it depends on, unknown modules (i.e. null) and repeated ones are ignored
+    public static ModuleGraph of(List<String> modules, Map<String, List<String>> dependencies) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < modules.size(); i++) {
+            ids.put(modules.get(i), i);
+        }
+        int[][] dependencyIds = new int[modules.size()][];
+        for (int i = 0; i < modules.size(); i++) {
+            int id = i;
+            dependencyIds[i] = dependencies.getOrDefault(modules.get(i), Collections.emptyList()).stream()
+                    .filter(Objects::nonNull)
+                    .map(ids::get)
+                    .filter(Objects::nonNull)
+                    .mapToInt(Integer::intValue)
+                    .filter(dependencyId -> dependencyId != id)
+                    .distinct()
+                    .toArray();
+        }
+        return new ModuleGraph(modules, dependencyIds);
+    }
+
+    private ModuleGraph(List<String> modules, int[][] dependencies) {
+        this.modules = Collections.unmodifiableList(new ArrayList<>(modules));
+        for (int i = 0; i < modules.size(); i++) {
+            ids.put(modules.get(i), i);
+        }
+        this.dependencies = dependencies;
+        this.dependents = reverse(dependencies);
+        this.dependencyClosures = closures(dependencies);
+        this.dependentClosures = closures(dependents);
+        for (int i = 0; i < modules.size(); i++) {
+            if (dependents[i].length == 0) {
+                roots.set(i);
+            }
+        }
+        this.topologicalOrder = sort();
+    }
+
+    public List<String> getModules() {
+        return modules;
+    }
+
+    public boolean contains(String module) {
+        return ids.containsKey(module);
+    }
+
+    public List<String> getDependencies(String module) {
+        return toModules(dependencyClosures[getId(module)]);
+    }
+
+    // Every module the given one depends on: its direct dependencies in the given order, then the other transitive ones
+    // in module order
+    public List<String> getOrderedDependencies(String module) {
+        int id = getId(module);
+        BitSet others = (BitSet) dependencyClosures[id].clone();
+        List<String> result = new ArrayList<>(others.cardinality());
+        for (int dependencyId : dependencies[id]) {
+            result.add(modules.get(dependencyId));
+            others.clear(dependencyId);
+        }
+        result.addAll(toModules(others));
+        return result;
+    }
+
+    public List<String> getDependents(String module) {
+        return toModules(dependentClosures[getId(module)]);
+    }
+
+    public List<String> getRoots() {
+        return toModules(roots);
+    }
+
+    // Roots that are one of the given modules or depend on one of them, in module order
+    public List<String> getAffectedRoots(Collection<String> changedModules) {
+        BitSet affected = new BitSet();
+        for (String changedModule : changedModules) {
+            Integer id = ids.get(changedModule);
+            if (id != null) {
+                affected.set(id);
+                affected.or(dependentClosures[id]);
+            }
+        }
+        affected.and(roots);
+        return toModules(affected);
+    }
+
+    // Roots affected by the given modules and every module they depend on, in module order. It's the part of the
+    // reactor a build of those changes need
+    public List<String> getAffectedModules(Collection<String> changedModules) {
+        BitSet affectedRoots = new BitSet();
+        for (String changedModule : changedModules) {
+            Integer id = ids.get(changedModule);
+            if (id != null) {
+                affectedRoots.set(id);
+                affectedRoots.or(dependentClosures[id]);
+            }
+        }
+        affectedRoots.and(roots);
+        BitSet affected = (BitSet) affectedRoots.clone();
+        affectedRoots.stream().forEach(id -> affected.or(dependencyClosures[id]));
+        return toModules(affected);
+    }
+
+    // Every module after all of its dependencies
+    public List<String> getTopologicalOrder() {
+        if (topologicalOrder == null) {
+            throw new IllegalStateException("Modules " + getCyclicModules() + " depend on each other");
+        }
+        List<String> sortedModules = new ArrayList<>(topologicalOrder.length);
+        for (int id : topologicalOrder) {
+            sortedModules.add(modules.get(id));
+        }
+        return sortedModules;
+    }
+
+    public boolean hasCycle() {
+        return topologicalOrder == null;
+    }
+
+    // Modules that are part of a cycle
+    public List<String> getCyclicModules() {
+        return toModules(cyclicModules);
+    }
+
+    public void write(DataOutput os) throws IOException {
+        os.writeInt(FORMAT_VERSION);
+        os.writeInt(modules.size());
+        for (String module : modules) {
+            os.writeUTF(module);
+        }
+        for (int[] dependencyIds : dependencies) {
+            os.writeInt(dependencyIds.length);
+            for (int dependencyId : dependencyIds) {
+                os.writeInt(dependencyId);
+            }
+        }
+    }
+
+    public static ModuleGraph read(DataInput is) throws IOException {
+        if (is.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported module graph format");
+        }
+        int size = is.readInt();
+        List<String> modules = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            modules.add(is.readUTF());
+        }
+        int[][] dependencies = new int[size][];
+        for (int i = 0; i < size; i++) {
+            dependencies[i] = new int[is.readInt()];
+            for (int j = 0; j < dependencies[i].length; j++) {
+                dependencies[i][j] = is.readInt();
+                if (dependencies[i][j] < 0 || dependencies[i][j] >= size) {
+                    throw new IOException("Invalid module id " + dependencies[i][j]);
+                }
+            }
+        }
+        return new ModuleGraph(modules, dependencies);
+    }
+
+    private int getId(String module) {
+        Integer id = ids.get(module);
+        if (id == null) {
+            throw new IllegalArgumentException("Unknown module " + module);
+        }
+        return id;
+    }
+
+    private List<String> toModules(BitSet moduleIds) {
+        List<String> result = new ArrayList<>(moduleIds.cardinality());
+        moduleIds.stream().forEach(id -> result.add(modules.get(id)));
+        return result;
+    }
+
+    private static int[][] reverse(int[][] edges) {
+        int[] counts = new int[edges.length];
+        for (int[] targets : edges) {
+            for (int target : targets) {
+                counts[target]++;
+            }
+        }
+        int[][] reversed = new int[edges.length][];
+        for (int i = 0; i < edges.length; i++) {
+            reversed[i] = new int[counts[i]];
+        }
+        Arrays.fill(counts, 0);
+        for (int source = 0; source < edges.length; source++) {
+            for (int target : edges[source]) {
+                reversed[target][counts[target]++] = source;
+            }
+        }
+        return reversed;
+    }
+
+    // Iterative depth-first search from every node, cycles are fine since visited nodes are never pushed again
+    private static BitSet[] closures(int[][] edges) {
+        BitSet[] closures = new BitSet[edges.length];
+        int[] stack = new int[edges.length];
+        for (int start = 0; start < edges.length; start++) {
+            BitSet closure = new BitSet(edges.length);
+            int size = 0;
+            stack[size++] = start;
+            while (size > 0) {
+                int node = stack[--size];
+                for (int next : edges[node]) {
+                    if (!closure.get(next)) {
+                        closure.set(next);
+                        stack[size++] = next;
+                    }
+                }
+            }
+            closure.clear(start);
+            closures[start] = closure;
+        }
+        return closures;
+    }
+
+    // Kahn's algorithm, the lowest id first among the ready modules so the order is stable. A module in its own
+    // dependency closure is part of a cycle
+    private int[] sort() {
+        int[] remainingDependencies = new int[modules.size()];
+        PriorityQueue<Integer> ready = new PriorityQueue<>();
+        for (int i = 0; i < modules.size(); i++) {
+            remainingDependencies[i] = dependencies[i].length;
+            if (remainingDependencies[i] == 0) {
+                ready.add(i);
+            }
+        }
+        int[] order = new int[modules.size()];
+        int size = 0;
+        while (!ready.isEmpty()) {
+            int id = ready.poll();
+            order[size++] = id;
+            for (int dependent : dependents[id]) {
+                if (--remainingDependencies[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (size == modules.size()) {
+            return order;
+        }
+        for (int i = 0; i < modules.size(); i++) {
+            int id = i;
+            if (Arrays.stream(dependencies[i]).anyMatch(dependency -> dependency == id || dependentClosures[id].get(dependency))) {
+                cyclicModules.set(i);
+            }
+        }
+        return null;
+    }
+}
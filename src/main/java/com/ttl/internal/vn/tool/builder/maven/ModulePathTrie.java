@@ -0,0 +1,97 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+// NOTE: Map a project relative path to the leaf module containing it. The leaf module paths are split into path segments
+// once, a lookup walk the segments of the path in place (no normalization, no substring) and return the deepest
+// module on the way, so CoreServer2/pom.xml never match CoreServer. Paths are expected to be relative to the project
+// folder and already normalized (git paths, relativized classpaths), both '/' and the platform separator are accepted
+public class ModulePathTrie {
+    private final Node root = new Node("");
+
+    public ModulePathTrie(List<String> leafModuleRelativePaths) {
+        for (String leafModuleRelativePath : leafModuleRelativePaths) {
+            Node node = root;
+            int start = 0;
+            while (start <= leafModuleRelativePath.length()) {
+                int end = nextSeparator(leafModuleRelativePath, start);
+                if (!isSkipped(leafModuleRelativePath, start, end)) {
+                    node = node.getOrAddChild(leafModuleRelativePath.substring(start, end));
+                }
+                start = end + 1;
+            }
+            node.module = leafModuleRelativePath;
+        }
+    }
+
+    // Leaf module relative path (as given to the constructor) containing relativePath, null when there is none
+    public String findModule(String relativePath) {
+        Node node = root;
+        String module = root.module;
+        int start = 0;
+        while (start <= relativePath.length()) {
+            int end = nextSeparator(relativePath, start);
+            if (!isSkipped(relativePath, start, end)) {
+                node = node.findChild(relativePath, start, end);
+                if (node == null) {
+                    break;
+                }
+                if (node.module != null) {
+                    module = node.module;
+                }
+            }
+            start = end + 1;
+        }
+        return module;
+    }
+
+    private static int nextSeparator(String path, int start) {
+        for (int i = start; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '/' || c == File.separatorChar) {
+                return i;
+            }
+        }
+        return path.length();
+    }
+
+    // Empty and "." segments don't change the folder
+    private static boolean isSkipped(String path, int start, int end) {
+        return end == start || (end == start + 1 && path.charAt(start) == '.');
+    }
+
+    private static class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final String segment;
+        private Node[] children = NO_CHILDREN;
+        private String module;
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+
+        // A folder rarely has more than a few modules, a linear scan with regionMatches doesn't allocate
+        Node findChild(String path, int start, int end) {
+            int length = end - start;
+            for (Node child : children) {
+                if (child.segment.length() == length && path.regionMatches(start, child.segment, 0, length)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        Node getOrAddChild(String childSegment) {
+            Node child = findChild(childSegment, 0, childSegment.length());
+            if (child == null) {
+                child = new Node(childSegment);
+                children = Arrays.copyOf(children, children.length + 1);
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
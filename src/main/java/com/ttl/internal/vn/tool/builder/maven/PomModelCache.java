@@ -0,0 +1,71 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.model.building.ModelCache;
+
+// NOTE: Model cache of the maven model builder. The model builder only give the coordinates of a model, so every entry
+// is stamped with the pom file those coordinates resolve to (its path, size and last modified time) and is dropped once
+// that pom changed. A SNAPSHOT parent or imported BOM is overwritten in place in the local repository under the same
+// coordinates, so the coordinates alone can't tell a stale model. Coordinates without a pom file are never cached
+public class PomModelCache implements ModelCache {
+    private final PomLocator pomLocator;
+    // groupId:artifactId:version:tag -> model
+    private final Map<String, StampedModel> models = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    public interface PomLocator {
+        // The pom file of the coordinates, null when unknown
+        File findPom(String groupId, String artifactId, String version);
+    }
+
+    private static class StampedModel {
+        private final String stamp;
+        private final Object data;
+
+        StampedModel(String stamp, Object data) {
+            this.stamp = stamp;
+            this.data = data;
+        }
+    }
+
+    public PomModelCache(PomLocator pomLocator) {
+        this.pomLocator = pomLocator;
+    }
+
+    @Override
+    public void put(String groupId, String artifactId, String version, String tag, Object data) {
+        String stamp = getStamp(groupId, artifactId, version);
+        if (stamp != null) {
+            models.put(key(groupId, artifactId, version, tag), new StampedModel(stamp, data));
+        }
+    }
+
+    @Override
+    public Object get(String groupId, String artifactId, String version, String tag) {
+        String key = key(groupId, artifactId, version, tag);
+        StampedModel model = models.get(key);
+        if (model == null) {
+            return null;
+        }
+        if (!model.stamp.equals(getStamp(groupId, artifactId, version))) {
+            models.remove(key, model);
+            return null;
+        }
+        return model.data;
+    }
+
+    private String getStamp(String groupId, String artifactId, String version) {
+        File pom = pomLocator.findPom(groupId, artifactId, version);
+        if (pom == null || !pom.isFile()) {
+            return null;
+        }
+        return pom.getAbsolutePath() + ":" + pom.length() + ":" + pom.lastModified();
+    }
+
+    private static String key(String groupId, String artifactId, String version, String tag) {
+        return groupId + ":" + artifactId + ":" + version + ":" + tag;
+    }
+}
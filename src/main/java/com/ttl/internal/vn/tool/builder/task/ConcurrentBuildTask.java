@@ -0,0 +1,182 @@
+package com.ttl.internal.vn.tool.builder.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import com.ttl.internal.vn.tool.builder.component.Flow;
+
+// NOTE: Run several builds at the same time, one thread per build. The preparation task (i.e. fetching) run first and
+// alone. A failing build doesn't stop the others, the task fail at the end with every failed build. The progress of
+// each build is kept apart: explainTask has one line per build and getBuilds give access to every build
+public class ConcurrentBuildTask extends BuildTask {
+    // build name -> build
+    private final Map<String, BuildTask> builds = new LinkedHashMap<>();
+    // build name -> failure
+    private final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+    private DiscreteTask preparationTask;
+
+    public void setPreparationTask(DiscreteTask preparationTask) {
+        this.preparationTask = preparationTask;
+    }
+
+    public void addBuild(String name, BuildTask build) {
+        build.subscribe(new DefaultSubscriber<Task>() {
+            @Override
+            public void onNext(Task item) {
+                Optional.ofNullable(subscriber).ifPresent(it -> it.onNext(ConcurrentBuildTask.this));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                failures.put(name, throwable);
+                Optional.ofNullable(subscriber).ifPresent(it -> it.onNext(ConcurrentBuildTask.this));
+            }
+        });
+        builds.put(name, build);
+    }
+
+    public Map<String, BuildTask> getBuilds() {
+        return Collections.unmodifiableMap(builds);
+    }
+
+    @Override
+    public List<DiscreteTask> getSubtasks() {
+        List<DiscreteTask> subtasks = new ArrayList<>();
+        Optional.ofNullable(preparationTask).ifPresent(subtasks::add);
+        builds.values().forEach(build -> subtasks.addAll(build.getSubtasks()));
+        return subtasks;
+    }
+
+    // NOTE: Every build clean itself up, this one run once all of them are done
+    @Override
+    public void cleanup() throws Exception {
+        /** noop */
+    }
+
+    @Override
+    public boolean start() {
+        try {
+            return startBuilds();
+        } finally {
+            try {
+                cleanup();
+            } catch (Throwable e) {
+                stopExceptionally(e);
+            }
+        }
+    }
+
+    private boolean startBuilds() {
+        inProgress = true;
+        if (preparationTask != null) {
+            try {
+                Optional.ofNullable(subscriber).ifPresent(it -> it.onNext(this));
+                preparationTask.start();
+                preparationTask.done();
+            } catch (Throwable e) {
+                stopExceptionally(e);
+                return false;
+            }
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, builds.size()));
+        try {
+            List<Future<Boolean>> futures = builds.values().stream()
+                    .map(build -> executorService.submit(build::start))
+                    .collect(Collectors.toList());
+            for (Future<Boolean> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+        } catch (ExecutionException e) {
+            stopExceptionally(e.getCause());
+            return false;
+        } finally {
+            executorService.shutdownNow();
+        }
+        if (!failures.isEmpty()) {
+            stopExceptionally(getFailure());
+            return false;
+        }
+        if (isCancelled() || builds.values().stream().anyMatch(Task::isCancelled)) {
+            cancel();
+            Optional.ofNullable(subscriber).ifPresent(Flow.Subscriber::onComplete);
+            return false;
+        }
+        done();
+        return true;
+    }
+
+    private Throwable getFailure() {
+        List<String> failedBuilds = new ArrayList<>(failures.keySet());
+        Throwable firstFailure = failures.get(failedBuilds.get(0));
+        IllegalStateException failure = new IllegalStateException("Build of " + String.join(", ", failedBuilds)
+                + " failed: " + firstFailure.getMessage(), firstFailure);
+        failedBuilds.stream().skip(1).map(failures::get).forEach(failure::addSuppressed);
+        return failure;
+    }
+
+    // NOTE: Builds already stopped keep their status, a build done before another one failed is still done
+    @Override
+    public boolean cancel() {
+        builds.values().stream().filter(build -> !build.isStop()).forEach(BuildTask::cancel);
+        inProgress = false;
+        cancel = true;
+        return true;
+    }
+
+    @Override
+    public String explainTask() {
+        if (preparationTask != null && !preparationTask.isStop()) {
+            return preparationTask.explainTask();
+        }
+        return builds.entrySet().stream()
+                .map(entry -> entry.getKey() + ": " + explainBuild(entry.getValue()) + " - " + (int) (100. * entry.getValue().percentage()) + "%")
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static String explainBuild(BuildTask build) {
+        if (build.isDone()) {
+            return "Done";
+        }
+        if (build.isError()) {
+            return "Failed";
+        }
+        if (build.isCancelled()) {
+            return "Cancelled";
+        }
+        if (build.getSubtasks().stream().noneMatch(task -> task.isInProgress() || task.isStop())) {
+            return "Waiting";
+        }
+        return build.explainTask();
+    }
+
+    @Override
+    public double percentage() {
+        if (builds.isEmpty()) {
+            return 0;
+        }
+        return builds.values().stream().mapToDouble(Task::percentage).sum() / builds.size();
+    }
+
+    @Override
+    public int totalWork() {
+        return builds.values().stream().mapToInt(DiscreteTask::totalWork).sum();
+    }
+
+    @Override
+    public int doneWork() {
+        return builds.values().stream().mapToInt(DiscreteTask::doneWork).sum();
+    }
+}
@@ -1,45 +1,120 @@
 package com.ttl.internal.vn.tool.builder.task;
 
+import com.ttl.internal.vn.tool.builder.maven.MavenOutputEvent;
+import com.ttl.internal.vn.tool.builder.maven.MavenOutputParser;
+import com.ttl.internal.vn.tool.builder.util.RingBuffer;
 import org.apache.maven.shared.invoker.InvocationOutputHandler;
 import org.apache.maven.shared.invoker.SystemOutHandler;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 // NOTE: It's kind of hard to figure out how much work percentage maven had done, so the percentage
 // of this task will parse the output of maven in the format of to provide some percentage
+// When maven build the reactor with multiple threads the "Building" lines of concurrent modules are interleaved and
+// their module numbers are not in order anymore, so the progress is the number of distinct modules that have started
 public abstract class MavenTask extends DiscreteTask {
+    // NOTE: Verbose builds print tens of thousands of lines, the subscriber (i.e. the ui) is notified at most once per
+    // this interval except for module events
+    private static final long NOTIFY_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final int RAW_LINE_BUFFER_SIZE = 500;
+    private static final int ERROR_LINE_BUFFER_SIZE = 50;
+
     private final SystemOutHandler systemOutHandler = new SystemOutHandler();
+    private final MavenOutputParser outputParser = new MavenOutputParser();
+    private final RingBuffer<String> rawLines = new RingBuffer<>(RAW_LINE_BUFFER_SIZE);
+    private final RingBuffer<String> errorLines = new RingBuffer<>(ERROR_LINE_BUFFER_SIZE);
+    private final List<Consumer<MavenOutputEvent>> eventListeners = new CopyOnWriteArrayList<>();
     protected Object result;
 
-    private int doneWork;
+    private final Set<String> startedModules = new LinkedHashSet<>();
+    private int threads = 1;
     private int totalWork;
+    private long lastNotifyNanos;
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void addEventListener(Consumer<MavenOutputEvent> eventListener) {
+        eventListeners.add(eventListener);
+    }
 
     public InvocationOutputHandler getOutputHandler() {
         return s -> {
             systemOutHandler.consumeLine(s);
-            explainTask = s;
-
-            // NOTE: Filter this format [INFO] Building <moduleName> [moduleNumber/totalModule]
-            Pattern pattern = Pattern.compile("\\[INFO] (Building .+)\\[(\\d+)/(\\d+)]");
-            Matcher matcher = pattern.matcher(s);
-            if (matcher.find()) {
-                explainTask = "Calculate classpath of project (" + matcher.group(1).trim() + ")";
-                doneWork = Integer.parseInt(matcher.group(2));
-                totalWork = Integer.parseInt(matcher.group(3));
-                Optional.ofNullable(subscriber).ifPresent(it -> it.onNext(this));
+            rawLines.add(s);
+            MavenOutputEvent event = outputParser.parse(s);
+            if (event != null) {
+                handleEvent(event);
             }
         };
     }
 
+    private void handleEvent(MavenOutputEvent event) {
+        boolean force = false;
+        switch (event.getType()) {
+            case MODULE_STARTED:
+                synchronized (startedModules) {
+                    startedModules.add(event.getModule());
+                    totalWork = event.getTotalModules();
+                    explainTask = "Calculate classpath of project (Building " + String.join(", ", getInFlightModules()) + ")";
+                }
+                force = true;
+                break;
+            case ERROR:
+                errorLines.add(event.getLine());
+                break;
+            case DOWNLOAD:
+                explainTask = "Downloaded " + event.getUrl();
+                break;
+            default:
+                break;
+        }
+        eventListeners.forEach(it -> it.accept(event));
+        notifySubscriber(force);
+    }
+
+    private void notifySubscriber(boolean force) {
+        long now = System.nanoTime();
+        if (!force && now - lastNotifyNanos < NOTIFY_INTERVAL_NANOS) {
+            return;
+        }
+        lastNotifyNanos = now;
+        Optional.ofNullable(subscriber).ifPresent(it -> it.onNext(this));
+    }
+
+    // The most recently started modules, at most one per maven thread
+    private List<String> getInFlightModules() {
+        List<String> modules = new ArrayList<>(startedModules);
+        return modules.subList(Math.max(0, modules.size() - threads), modules.size());
+    }
+
+    // Last lines of the maven output, oldest first
+    public List<String> getRawLines() {
+        return rawLines.toList();
+    }
+
+    // Last [ERROR] lines of the maven output, oldest first
+    public List<String> getErrorLines() {
+        return errorLines.toList();
+    }
+
     public Object getResult() {
         return result;
     }
 
     @Override
     public int doneWork() {
-        return doneWork;
+        synchronized (startedModules) {
+            return startedModules.size();
+        }
     }
 
     @Override
@@ -49,6 +124,6 @@ public abstract class MavenTask extends DiscreteTask {
 
     @Override
     public double percentage() {
-        return 1. * doneWork / totalWork;
+        return totalWork == 0 ? 0 : 1. * doneWork() / totalWork;
     }
 }
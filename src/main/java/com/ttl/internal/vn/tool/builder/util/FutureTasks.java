@@ -0,0 +1,37 @@
+package com.ttl.internal.vn.tool.builder.util;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// NOTE: Results of tasks submitted to the shared executor of a build. The executor could be busy with tasks waiting
+// like the caller (i.e. the build steps), so a task not started yet is run by the waiting thread instead of waiting
+// for a free thread. The exceptions of the task are thrown as is, an interrupted wait is an IOException
+public final class FutureTasks {
+    private FutureTasks() {
+    }
+
+    public static <T> T getResult(FutureTask<T> future) throws IOException {
+        return getResult(future, IOException.class);
+    }
+
+    // Same as getResult, exceptionType is also thrown as is
+    public static <T, E extends Exception> T getResult(FutureTask<T> future, Class<E> exceptionType) throws IOException, E {
+        future.run();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (exceptionType.isInstance(cause)) {
+                throw exceptionType.cast(cause);
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -12,26 +12,38 @@ import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand.ListMode;
 import org.eclipse.jgit.api.TransportConfigCallback;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.ContentSource;
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.RenameDetector;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.NotSupportedException;
 import org.eclipse.jgit.errors.RevisionSyntaxException;
 import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
@@ -46,25 +58,40 @@ import org.eclipse.jgit.transport.Transport;
 import org.eclipse.jgit.transport.TransportHttp;
 import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
-import org.eclipse.jgit.treewalk.AbstractTreeIterator;
-import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.jgit.util.io.DisabledOutputStream;
 
+import com.ttl.internal.vn.tool.builder.git.DiffCache;
 import com.ttl.internal.vn.tool.builder.git.GitCommit;
 import com.ttl.internal.vn.tool.builder.git.GitRef;
 import com.ttl.internal.vn.tool.builder.git.GitWalk;
+import com.ttl.internal.vn.tool.builder.git.RenameSettings;
+import com.ttl.internal.vn.tool.builder.git.RenameStats;
+import com.ttl.internal.vn.tool.builder.git.WorkingTreeDiff;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
 
 public class GitUtil implements AutoCloseable {
+    public static final int DEFAULT_DIFF_CACHE_SIZE = 64;
+    private static final Logger logger = LogManager.getLogger(GitUtil.class);
     private final Git git;
     private static final String ENCODING_FORMAT = "UTF-8";
+    private DiffCache diffCache = new DiffCache(DEFAULT_DIFF_CACHE_SIZE, null);
+    private final WorkingTreeDiff workingTreeDiff;
 
     public GitUtil(Git git) {
         this.git = git;
+        this.workingTreeDiff = new WorkingTreeDiff(git.getRepository());
+    }
+
+    // NOTE: In memory only by default, give it a cache folder to also keep the diffs between runs
+    public void setDiffCache(DiffCache diffCache) {
+        this.diffCache = diffCache;
     }
 
     public Git getGit() {
@@ -157,29 +184,168 @@ public class GitUtil implements AutoCloseable {
     }
 
     public List<DiffEntry> getDiff(String baseRef, String targetRef) throws IOException {
+        return getDiff(baseRef, targetRef, TreeFilter.ALL);
+    }
+
+    public List<DiffEntry> getDiff(String baseRef, String targetRef, TreeFilter pathFilter) throws IOException {
+        return getDiff(baseRef, targetRef, pathFilter, RenameSettings.DEFAULT, this::logRenameStats);
+    }
+
+    // NOTE: The path filter is applied by the tree walk itself, subtrees it rejects are never read and their files
+    // never take part in the rename detection. renameStatsConsumer is not called when the diff come from the cache
+    public List<DiffEntry> getDiff(String baseRef, String targetRef, TreeFilter pathFilter, RenameSettings renameSettings,
+                                   Consumer<RenameStats> renameStatsConsumer) throws IOException {
         try (
                 DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE);
                 RevWalk revWalk = new RevWalk(git.getRepository());) {
-            diffFormatter.setRepository(git.getRepository());
-            diffFormatter.setDetectRenames(true);
             RevCommit baseCommit = revWalk.parseCommit(resolve(baseRef));
             RevCommit targetCommit = revWalk.parseCommit(resolve(targetRef));
-            return diffFormatter.scan(baseCommit, targetCommit);
+            String cacheKey = DiffCache.computeKey(baseCommit.getTree(), targetCommit.getTree(), renameSettings.toString(), pathFilter);
+            Optional<List<DiffEntry>> cachedDiffEntries = diffCache.get(cacheKey);
+            if (cachedDiffEntries.isPresent()) {
+                return cachedDiffEntries.get();
+            }
+            RenameProgressMonitor renameProgressMonitor = configure(diffFormatter, pathFilter, renameSettings);
+            List<DiffEntry> diffEntries = diffFormatter.scan(baseCommit.getTree(), targetCommit.getTree());
+            renameStatsConsumer.accept(renameProgressMonitor.getStats(diffFormatter.getRenameDetector(), diffEntries, renameSettings));
+            diffCache.put(cacheKey, diffEntries);
+            return diffEntries;
         }
     }
-    
+
     public List<DiffEntry> getDiffWd(String baseRef) throws IOException {
+        return getDiffWd(baseRef, TreeFilter.ALL);
+    }
+
+    public List<DiffEntry> getDiffWd(String baseRef, TreeFilter pathFilter) throws IOException {
+        return getDiffWd(baseRef, pathFilter, RenameSettings.DEFAULT, this::logRenameStats);
+    }
+
+    // NOTE: The working tree is walked by workingTreeDiff (incrementally once watchWorkingTree is called), the rename
+    // detection run on its entries and read the added files from the working tree
+    public List<DiffEntry> getDiffWd(String baseRef, TreeFilter pathFilter, RenameSettings renameSettings,
+                                     Consumer<RenameStats> renameStatsConsumer) throws IOException {
         try (
-                DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE);
                 RevWalk revWalk = new RevWalk(git.getRepository());
                 ObjectReader reader = git.getRepository().newObjectReader()) {
-            AbstractTreeIterator newTree = new FileTreeIterator(git.getRepository());
-            diffFormatter.setRepository(git.getRepository());
-            diffFormatter.setDetectRenames(true);
             RevCommit baseCommit = revWalk.parseCommit(resolve(baseRef));
-            CanonicalTreeParser oldTree = new CanonicalTreeParser();
-            oldTree.reset(reader, baseCommit.getTree());
-            return diffFormatter.scan(oldTree, newTree);
+            List<DiffEntry> rawEntries = workingTreeDiff.scan(baseCommit.getTree(), pathFilter);
+            RenameDetector renameDetector = new RenameDetector(git.getRepository());
+            renameSettings.configure(renameDetector);
+            renameDetector.addAll(rawEntries);
+            RenameProgressMonitor renameProgressMonitor = new RenameProgressMonitor();
+            List<DiffEntry> diffEntries = renameDetector.compute(
+                    new ContentSource.Pair(ContentSource.create(reader), ContentSource.create(new FileTreeIterator(git.getRepository()))),
+                    renameProgressMonitor);
+            renameStatsConsumer.accept(renameProgressMonitor.getStats(renameDetector, diffEntries, renameSettings));
+            return diffEntries;
+        }
+    }
+
+    // NOTE: Keep track of the files written in the working tree so the next diffs against it only hash those files,
+    // for long lived instances (i.e. the ui session) that diff the working tree again and again
+    public void watchWorkingTree() throws IOException {
+        workingTreeDiff.watch();
+    }
+
+    private RenameProgressMonitor configure(DiffFormatter diffFormatter, TreeFilter pathFilter, RenameSettings renameSettings) {
+        diffFormatter.setRepository(git.getRepository());
+        diffFormatter.setPathFilter(pathFilter);
+        diffFormatter.setDetectRenames(true);
+        renameSettings.configure(diffFormatter.getRenameDetector());
+        // NOTE: The formatter only report the progress of the rename detection, so the monitor also time it
+        RenameProgressMonitor renameProgressMonitor = new RenameProgressMonitor();
+        diffFormatter.setProgressMonitor(renameProgressMonitor);
+        return renameProgressMonitor;
+    }
+
+    private void logRenameStats(RenameStats renameStats) {
+        logger.info("Diff of {}: {}", git.getRepository().getDirectory(), renameStats);
+    }
+
+    // NOTE: Time the rename detection from its first task. The pairs are the work of the content rename task, the
+    // detector counts 2 units of work per (deleted file, added file) pair it goes through (i.e. none when it is over
+    // the rename limit or only detect exact renames)
+    private static class RenameProgressMonitor implements ProgressMonitor {
+        private long startNanos;
+        private long maxScoredPairs;
+
+        @Override
+        public void start(int totalTasks) {
+            /** noop */
+        }
+
+        @Override
+        public void beginTask(String title, int totalWork) {
+            if (startNanos == 0) {
+                startNanos = System.nanoTime();
+            }
+            if (JGitText.get().renamesFindingByContent.equals(title) && totalWork > 0) {
+                maxScoredPairs += totalWork / 2;
+            }
+        }
+
+        @Override
+        public void update(int completed) {
+            /** noop */
+        }
+
+        @Override
+        public void endTask() {
+            /** noop */
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        RenameStats getStats(RenameDetector renameDetector, List<DiffEntry> diffEntries, RenameSettings renameSettings) {
+            long durationMillis = startNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            List<DiffEntry> renames = diffEntries.stream()
+                    .filter(entry -> entry.getChangeType() == ChangeType.RENAME || entry.getChangeType() == ChangeType.COPY)
+                    .collect(Collectors.toList());
+            boolean overRenameLimit = !renameSettings.isExactOnly() && renameDetector.isOverRenameLimit();
+            return new RenameStats(durationMillis, (int) Math.min(Integer.MAX_VALUE, maxScoredPairs), renames.size(),
+                    overRenameLimit);
+        }
+    }
+
+    // Repository relative path -> blob id of every file with this name in the tree of ref, nothing is checked out
+    public Map<String, ObjectId> findFiles(String ref, String fileName) throws IOException {
+        try (
+                RevWalk revWalk = new RevWalk(git.getRepository());
+                TreeWalk treeWalk = new TreeWalk(git.getRepository())) {
+            RevCommit commit = revWalk.parseCommit(resolve(ref));
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathSuffixFilter.create(fileName));
+            Map<String, ObjectId> files = new LinkedHashMap<>();
+            while (treeWalk.next()) {
+                if (fileName.equals(treeWalk.getNameString()) && treeWalk.getFileMode(0).getObjectType() == Constants.OBJ_BLOB) {
+                    files.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+                }
+            }
+            return files;
+        }
+    }
+
+    // Whether path (a file or a folder, relative to the root of the repository) is in the tree of ref
+    public boolean exists(String ref, String path) throws IOException {
+        if (path.isEmpty()) {
+            return true;
+        }
+        try (RevWalk revWalk = new RevWalk(git.getRepository())) {
+            RevCommit commit = revWalk.parseCommit(resolve(ref));
+            try (TreeWalk treeWalk = TreeWalk.forPath(git.getRepository(), path, commit.getTree())) {
+                return treeWalk != null;
+            }
+        }
+    }
+
+    public byte[] readBlob(ObjectId blobId) throws IOException {
+        try (ObjectReader reader = git.getRepository().newObjectReader()) {
+            return reader.open(blobId, Constants.OBJ_BLOB).getBytes();
         }
     }
 
@@ -304,6 +470,7 @@ public class GitUtil implements AutoCloseable {
 
     @Override
     public void close() throws IOException {
+        workingTreeDiff.close();
         git.close();
     }
 
@@ -0,0 +1,48 @@
+package com.ttl.internal.vn.tool.builder.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// NOTE: Fixed size buffer that keep only the last added elements, the oldest element is overwritten once it's full
+public class RingBuffer<T> {
+    private final Object[] elements;
+    private int head;
+    private int size;
+
+    public RingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.elements = new Object[capacity];
+    }
+
+    public synchronized void add(T element) {
+        elements[(head + size) % elements.length] = element;
+        if (size < elements.length) {
+            size++;
+        } else {
+            head = (head + 1) % elements.length;
+        }
+    }
+
+    // Oldest element first
+    @SuppressWarnings("unchecked")
+    public synchronized List<T> toList() {
+        List<T> ret = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ret.add((T) elements[(head + i) % elements.length]);
+        }
+        return ret;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+        Arrays.fill(elements, null);
+    }
+}
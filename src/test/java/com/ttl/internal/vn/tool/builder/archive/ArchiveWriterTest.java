@@ -0,0 +1,510 @@
+package com.ttl.internal.vn.tool.builder.archive;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// NOTE: Every archive is read back twice, by ZipFile through the central directory and by ZipInputStream through the
+// local headers (which also check the CRC and the sizes), so both sets of records are checked. The zip64 records are
+// checked on small archives by lowering the zip64 limit of the writer, the tests writing over 4GB are tagged slow and
+// only run on demand (-Dgroups=slow -DexcludedTestGroups=none)
+class ArchiveWriterTest {
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_ENTRY_COUNT_LIMIT = 0xFFFF;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int ZIP64_VERSION = 45;
+
+    @TempDir
+    File tempFolder;
+
+    private final List<ExecutorService> executorServices = new ArrayList<>();
+
+    @AfterEach
+    void shutdownExecutors() {
+        executorServices.forEach(ExecutorService::shutdownNow);
+    }
+
+    @Test
+    void roundTripsDeflatedEntryOfSeveralChunks() throws Exception {
+        byte[] content = text(3 * CHUNK_SIZE + 12345, 1);
+        File file = write("big.txt", content);
+        File archiveFile = new File(tempFolder, "archive.zip");
+
+        writer(4).write(archiveFile, Arrays.asList(ArchiveWriter.Entry.ofFile("big.txt", file),
+                ArchiveWriter.Entry.ofContent("small.txt", text(100, 2))));
+
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        expected.put("big.txt", content);
+        expected.put("small.txt", text(100, 2));
+        assertArchive(expected, archiveFile);
+        try (ZipFile zipFile = new ZipFile(archiveFile)) {
+            ZipEntry entry = zipFile.getEntry("big.txt");
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            assertTrue(entry.getCompressedSize() < content.length);
+        }
+    }
+
+    @Test
+    void storesNestedJars() throws Exception {
+        byte[] smallJar = random(1000, 1);
+        // NOTE: Stored entries are also cut in chunks
+        byte[] bigJar = random(2 * CHUNK_SIZE + 7, 2);
+        File archiveFile = new File(tempFolder, "archive.zip");
+
+        writer(4).write(archiveFile, Arrays.asList(ArchiveWriter.Entry.ofFile("Lib/small.jar", write("small.jar", smallJar)),
+                ArchiveWriter.Entry.ofFile("Lib/big.JAR", write("big.jar", bigJar))));
+
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        expected.put("Lib/big.JAR", bigJar);
+        expected.put("Lib/small.jar", smallJar);
+        assertArchive(expected, archiveFile);
+        try (ZipFile zipFile = new ZipFile(archiveFile)) {
+            for (String name : expected.keySet()) {
+                ZipEntry entry = zipFile.getEntry(name);
+                assertEquals(ZipEntry.STORED, entry.getMethod());
+                assertEquals(entry.getSize(), entry.getCompressedSize());
+            }
+        }
+    }
+
+    @Test
+    void storesEntryThatDoesNotShrink() throws Exception {
+        byte[] content = random(1000, 3);
+        File archiveFile = new File(tempFolder, "archive.zip");
+
+        writer(1).write(archiveFile, Collections.singletonList(ArchiveWriter.Entry.ofContent("random.bin", content)));
+
+        assertArchive(Collections.singletonMap("random.bin", content), archiveFile);
+        try (ZipFile zipFile = new ZipFile(archiveFile)) {
+            assertEquals(ZipEntry.STORED, zipFile.getEntry("random.bin").getMethod());
+        }
+    }
+
+    @Test
+    void roundTripsEmptyEntries() throws Exception {
+        File archiveFile = new File(tempFolder, "archive.zip");
+
+        writer(2).write(archiveFile, Arrays.asList(ArchiveWriter.Entry.ofFile("empty-file.txt", write("empty", new byte[0])),
+                ArchiveWriter.Entry.ofContent("empty-content.txt", new byte[0]),
+                ArchiveWriter.Entry.ofFile("empty.jar", write("empty.jar", new byte[0]))));
+
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        expected.put("empty-content.txt", new byte[0]);
+        expected.put("empty-file.txt", new byte[0]);
+        expected.put("empty.jar", new byte[0]);
+        assertArchive(expected, archiveFile);
+    }
+
+    @Test
+    void writesManifestFirst() throws Exception {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        File archiveFile = new File(tempFolder, "archive.jar");
+
+        writer(2).write(archiveFile, manifest, Collections.singletonList(ArchiveWriter.Entry.ofContent("A.class", text(10, 4))));
+
+        try (ZipInputStream is = new ZipInputStream(new FileInputStream(archiveFile))) {
+            assertEquals(JarFile.MANIFEST_NAME, is.getNextEntry().getName());
+        }
+        try (JarFile jarFile = new JarFile(archiveFile)) {
+            assertEquals(manifest, jarFile.getManifest());
+        }
+    }
+
+    @Test
+    void skipsArchiveWithSameContent() throws Exception {
+        File archiveFile = new File(tempFolder, "archive.zip");
+        List<ArchiveWriter.Entry> entries = Collections.singletonList(ArchiveWriter.Entry.ofContent("a.txt", text(10, 5)));
+
+        assertTrue(writer(2).write(archiveFile, entries));
+        assertFalse(writer(2).write(archiveFile, entries));
+        assertTrue(writer(2).write(archiveFile, Collections.singletonList(ArchiveWriter.Entry.ofContent("a.txt", text(11, 5)))));
+    }
+
+    @Test
+    void writesSameBytesForAnyThreadCount() throws Exception {
+        List<ArchiveWriter.Entry> entries = new ArrayList<>();
+        entries.add(ArchiveWriter.Entry.ofFile("big.txt", write("big.txt", text(5 * CHUNK_SIZE + 3, 6))));
+        entries.add(ArchiveWriter.Entry.ofFile("Lib/nested.jar", write("nested.jar", random(CHUNK_SIZE + 1, 7))));
+        entries.add(ArchiveWriter.Entry.ofContent("empty.txt", new byte[0]));
+        for (int i = 0; i < 200; i++) {
+            entries.add(ArchiveWriter.Entry.ofContent("p/C" + i + ".class", text(100 + i * 37, i)));
+        }
+
+        byte[] expected = null;
+        for (int threads : new int[] { 1, 2, 3, 8 }) {
+            File archiveFile = new File(tempFolder, "archive-" + threads + ".zip");
+            writer(threads).write(archiveFile, entries);
+            byte[] bytes = Files.readAllBytes(archiveFile.toPath());
+            if (expected == null) {
+                expected = bytes;
+            } else {
+                assertArrayEquals(expected, bytes, threads + " threads");
+            }
+        }
+    }
+
+    // NOTE: The writer thread run the chunks itself when the executor never run anything
+    @Test
+    void writesWithBusyExecutor() throws Exception {
+        byte[] content = text(2 * CHUNK_SIZE + 1, 8);
+        File archiveFile = new File(tempFolder, "archive.zip");
+
+        new ArchiveWriter(command -> {
+        }, 4).write(archiveFile, Collections.singletonList(ArchiveWriter.Entry.ofContent("a.txt", content)));
+
+        assertArchive(Collections.singletonMap("a.txt", content), archiveFile);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { ZIP64_ENTRY_COUNT_LIMIT - 1, ZIP64_ENTRY_COUNT_LIMIT, ZIP64_ENTRY_COUNT_LIMIT + 1 })
+    void writesEntryCountAcrossZip64Limit(int entryCount) throws Exception {
+        List<ArchiveWriter.Entry> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            entries.add(ArchiveWriter.Entry.ofContent(String.format("e/%06d", i), new byte[] { (byte) i }));
+        }
+        File archiveFile = new File(tempFolder, "archive.zip");
+
+        writer(2).write(archiveFile, entries);
+
+        try (ZipFile zipFile = new ZipFile(archiveFile)) {
+            assertEquals(entryCount, zipFile.size());
+            assertArrayEquals(new byte[] { (byte) (entryCount - 1) },
+                    readAll(zipFile.getInputStream(zipFile.getEntry(String.format("e/%06d", entryCount - 1)))));
+        }
+        assertEquals(entryCount >= ZIP64_ENTRY_COUNT_LIMIT, hasZip64EndOfCentralDirectory(archiveFile));
+    }
+
+    // NOTE: With the limit at one chunk, the entry of several chunks has a zip64 local header, every entry after the
+    // first one has a zip64 offset and the central directory start over the limit
+    @Test
+    void writesZip64RecordsOverLimit() throws Exception {
+        byte[] jar = random(CHUNK_SIZE + 10, 11);
+        byte[] text = text(3 * CHUNK_SIZE + 5, 12);
+        File archiveFile = new File(tempFolder, "archive.zip");
+
+        new ArchiveWriter(executor(2), 2, CHUNK_SIZE).write(archiveFile, Arrays.asList(
+                ArchiveWriter.Entry.ofFile("a.jar", write("a.jar", jar)),
+                ArchiveWriter.Entry.ofFile("b.txt", write("b.txt", text)),
+                ArchiveWriter.Entry.ofContent("c.txt", text(10, 13))));
+
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        expected.put("a.jar", jar);
+        expected.put("b.txt", text);
+        expected.put("c.txt", text(10, 13));
+        assertArchive(expected, archiveFile);
+        assertTrue(hasZip64EndOfCentralDirectory(archiveFile));
+        Map<String, CentralHeader> centralHeaders = readCentralDirectory(archiveFile);
+        assertEquals(Arrays.asList("a.jar", "b.txt", "c.txt"), new ArrayList<>(centralHeaders.keySet()));
+        // a.jar is over the limit but starts at 0, only its sizes are in the extra field
+        CentralHeader jarHeader = centralHeaders.get("a.jar");
+        assertEquals(ZIP64_VERSION, jarHeader.versionNeeded);
+        assertEquals(0, jarHeader.offset);
+        assertEquals(jar.length, jarHeader.size);
+        assertEquals(jar.length, jarHeader.compressedSize);
+        for (String name : Arrays.asList("b.txt", "c.txt")) {
+            CentralHeader centralHeader = centralHeaders.get(name);
+            assertEquals(ZIP64_VERSION, centralHeader.versionNeeded, name);
+            assertTrue(centralHeader.zip64Offset, name);
+            assertTrue(centralHeader.offset > CHUNK_SIZE, name);
+        }
+        // The offset of a central header is the one of the local header of the same entry
+        for (Map.Entry<String, CentralHeader> entry : centralHeaders.entrySet()) {
+            assertEquals(entry.getKey(), readLocalHeader(archiveFile, entry.getValue().offset).name);
+        }
+        // The local header of b.txt is written before its compressed size is known, so it always has the zip64 sizes
+        try (ZipFile zipFile = new ZipFile(archiveFile)) {
+            LocalHeader localHeader = readLocalHeader(archiveFile, centralHeaders.get("b.txt").offset);
+            assertEquals(ZIP64_VERSION, localHeader.versionNeeded);
+            assertEquals(ZIP64_LIMIT, localHeader.size32);
+            assertEquals(text.length, localHeader.zip64Size);
+            assertEquals(zipFile.getEntry("b.txt").getCompressedSize(), localHeader.zip64CompressedSize);
+        }
+    }
+
+    @Test
+    void writesNoZip64RecordUnderLimit() throws Exception {
+        File archiveFile = new File(tempFolder, "archive.zip");
+
+        writer(2).write(archiveFile, Arrays.asList(ArchiveWriter.Entry.ofFile("a.jar", write("a.jar", random(CHUNK_SIZE + 10, 14))),
+                ArchiveWriter.Entry.ofFile("b.txt", write("b.txt", text(3 * CHUNK_SIZE + 5, 15)))));
+
+        assertFalse(hasZip64EndOfCentralDirectory(archiveFile));
+        for (CentralHeader centralHeader : readCentralDirectory(archiveFile).values()) {
+            assertFalse(centralHeader.zip64Offset);
+            assertFalse(centralHeader.versionNeeded == ZIP64_VERSION);
+            assertEquals(-1, readLocalHeader(archiveFile, centralHeader.offset).zip64Size);
+        }
+    }
+
+    // NOTE: An entry of zeros deflate to a few MB, so only the entry size cross the limit, not the archive size
+    @Tag("slow")
+    @ParameterizedTest
+    @ValueSource(longs = { ZIP64_LIMIT - 1, ZIP64_LIMIT })
+    void writesEntrySizeAcrossZip64Limit(long size) throws Exception {
+        File file = sparse("zeros.txt", size);
+        File archiveFile = new File(tempFolder, "archive.zip");
+
+        writer(2).write(archiveFile, Arrays.asList(ArchiveWriter.Entry.ofFile("zeros.txt", file),
+                ArchiveWriter.Entry.ofContent("zz.txt", text(10, 9))));
+
+        try (ZipFile zipFile = new ZipFile(archiveFile)) {
+            assertEquals(size, zipFile.getEntry("zeros.txt").getSize());
+            assertArrayEquals(text(10, 9), readAll(zipFile.getInputStream(zipFile.getEntry("zz.txt"))));
+        }
+        try (ZipInputStream is = new ZipInputStream(new FileInputStream(archiveFile))) {
+            assertEquals("zeros.txt", is.getNextEntry().getName());
+            assertEquals(size, countZeros(is));
+            assertEquals("zz.txt", is.getNextEntry().getName());
+            assertArrayEquals(text(10, 9), readAll(is));
+        }
+    }
+
+    // NOTE: A stored entry keep its size, so the entries after it have a header offset over the limit and the central
+    // directory start over it
+    @Tag("slow")
+    @Test
+    void writesArchiveOverZip64Limit() throws Exception {
+        File file = sparse("zeros.jar", ZIP64_LIMIT + 1);
+        File archiveFile = new File(tempFolder, "archive.zip");
+
+        writer(2).write(archiveFile, Arrays.asList(ArchiveWriter.Entry.ofFile("a/zeros.jar", file),
+                ArchiveWriter.Entry.ofContent("b.txt", text(10, 10))));
+
+        assertTrue(archiveFile.length() > ZIP64_LIMIT);
+        assertTrue(hasZip64EndOfCentralDirectory(archiveFile));
+        try (ZipFile zipFile = new ZipFile(archiveFile)) {
+            ZipEntry entry = zipFile.getEntry("a/zeros.jar");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertEquals(ZIP64_LIMIT + 1, entry.getSize());
+            assertArrayEquals(text(10, 10), readAll(zipFile.getInputStream(zipFile.getEntry("b.txt"))));
+        }
+    }
+
+    private ArchiveWriter writer(int threads) {
+        return new ArchiveWriter(executor(threads), threads);
+    }
+
+    private ExecutorService executor(int threads) {
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        executorServices.add(executorService);
+        return executorService;
+    }
+
+    private File write(String name, byte[] content) throws IOException {
+        File file = new File(tempFolder, name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    // A file of zeros taking no disk space
+    private File sparse(String name, long size) throws IOException {
+        File file = new File(tempFolder, name);
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(size);
+        }
+        return file;
+    }
+
+    // Compressible content
+    private static byte[] text(int size, long seed) {
+        String[] words = { "class ", "public ", "void ", "return ", "int ", "String ", "{\n", "}\n", ";\n", "x", "y" };
+        Random random = new Random(seed);
+        ByteArrayOutputStream os = new ByteArrayOutputStream(size + 16);
+        while (os.size() < size) {
+            byte[] word = words[random.nextInt(words.length)].getBytes(StandardCharsets.UTF_8);
+            os.write(word, 0, word.length);
+        }
+        return Arrays.copyOf(os.toByteArray(), size);
+    }
+
+    // Incompressible content
+    private static byte[] random(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void assertArchive(Map<String, byte[]> expected, File archiveFile) throws IOException {
+        try (ZipFile zipFile = new ZipFile(archiveFile)) {
+            assertEquals(expected.size(), zipFile.size());
+            for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+                ZipEntry zipEntry = zipFile.getEntry(entry.getKey());
+                assertNotNull(zipEntry, entry.getKey());
+                assertEquals(entry.getValue().length, zipEntry.getSize());
+                assertArrayEquals(entry.getValue(), readAll(zipFile.getInputStream(zipEntry)), entry.getKey());
+            }
+        }
+        // NOTE: The entries are sorted by name, so the local headers come in the order of the expected entries
+        try (ZipInputStream is = new ZipInputStream(new FileInputStream(archiveFile))) {
+            for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+                ZipEntry zipEntry = is.getNextEntry();
+                assertEquals(entry.getKey(), zipEntry.getName());
+                assertArrayEquals(entry.getValue(), readAll(is), entry.getKey());
+            }
+            assertEquals(null, is.getNextEntry());
+        }
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = is.read(buffer)) >= 0) {
+            os.write(buffer, 0, length);
+        }
+        return os.toByteArray();
+    }
+
+    private static long countZeros(InputStream is) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        long count = 0;
+        int length;
+        while ((length = is.read(buffer)) >= 0) {
+            for (int i = 0; i < length; i++) {
+                assertEquals(0, buffer[i]);
+            }
+            count += length;
+        }
+        return count;
+    }
+
+    // name -> central header in the order of the central directory, the sizes and the offset are read from the zip64
+    // extra field when they are in it
+    private static Map<String, CentralHeader> readCentralDirectory(File archiveFile) throws IOException {
+        ByteBuffer archive = ByteBuffer.wrap(Files.readAllBytes(archiveFile.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        int end = archive.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+        int entryCount = archive.getShort(end + 10) & 0xFFFF;
+        long offset = archive.getInt(end + 16) & 0xFFFFFFFFL;
+        if (offset == ZIP64_LIMIT) {
+            int zip64End = (int) archive.getLong(end - 20 + 8);
+            entryCount = (int) archive.getLong(zip64End + 32);
+            offset = archive.getLong(zip64End + 48);
+        }
+        Map<String, CentralHeader> centralHeaders = new LinkedHashMap<>();
+        int position = (int) offset;
+        for (int i = 0; i < entryCount; i++) {
+            assertEquals(CENTRAL_HEADER_SIGNATURE, archive.getInt(position));
+            CentralHeader centralHeader = new CentralHeader();
+            centralHeader.versionNeeded = archive.getShort(position + 6);
+            centralHeader.compressedSize = archive.getInt(position + 20) & 0xFFFFFFFFL;
+            centralHeader.size = archive.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = archive.getShort(position + 28) & 0xFFFF;
+            int extraLength = archive.getShort(position + 30) & 0xFFFF;
+            centralHeader.offset = archive.getInt(position + 42) & 0xFFFFFFFFL;
+            byte[] name = new byte[nameLength];
+            ((ByteBuffer) archive.duplicate().position(position + 46)).get(name);
+            int extra = position + 46 + nameLength;
+            if (extraLength > 0) {
+                assertEquals(ZIP64_EXTRA_ID, archive.getShort(extra));
+                int field = extra + 4;
+                if (centralHeader.size == ZIP64_LIMIT) {
+                    centralHeader.size = archive.getLong(field);
+                    centralHeader.compressedSize = archive.getLong(field + 8);
+                    field += 16;
+                }
+                if (centralHeader.offset == ZIP64_LIMIT) {
+                    centralHeader.offset = archive.getLong(field);
+                    centralHeader.zip64Offset = true;
+                }
+            }
+            centralHeaders.put(new String(name, StandardCharsets.UTF_8), centralHeader);
+            position = extra + extraLength;
+        }
+        return centralHeaders;
+    }
+
+    private static LocalHeader readLocalHeader(File archiveFile, long offset) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(archiveFile, "r")) {
+            byte[] bytes = new byte[LOCAL_HEADER_SIZE + 0xFFFF];
+            randomAccessFile.seek(offset);
+            randomAccessFile.readFully(bytes, 0, (int) Math.min(bytes.length, randomAccessFile.length() - offset));
+            ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(LOCAL_HEADER_SIGNATURE, header.getInt(0));
+            LocalHeader localHeader = new LocalHeader();
+            localHeader.versionNeeded = header.getShort(4);
+            localHeader.size32 = header.getInt(22) & 0xFFFFFFFFL;
+            int nameLength = header.getShort(26) & 0xFFFF;
+            int extraLength = header.getShort(28) & 0xFFFF;
+            localHeader.name = new String(bytes, LOCAL_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+            if (extraLength > 0) {
+                int extra = LOCAL_HEADER_SIZE + nameLength;
+                assertEquals(ZIP64_EXTRA_ID, header.getShort(extra));
+                localHeader.zip64Size = header.getLong(extra + 4);
+                localHeader.zip64CompressedSize = header.getLong(extra + 12);
+            }
+            return localHeader;
+        }
+    }
+
+    private static class CentralHeader {
+        private int versionNeeded;
+        private long size;
+        private long compressedSize;
+        private long offset;
+        private boolean zip64Offset;
+    }
+
+    private static class LocalHeader {
+        private String name;
+        private int versionNeeded;
+        private long size32;
+        private long zip64Size = -1;
+        private long zip64CompressedSize = -1;
+    }
+
+    // The zip64 locator is right before the end of central directory record, the archives have no comment
+    private static boolean hasZip64EndOfCentralDirectory(File archiveFile) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(archiveFile, "r")) {
+            long locatorOffset = randomAccessFile.length() - END_OF_CENTRAL_DIRECTORY_SIZE - 20;
+            if (locatorOffset < 0) {
+                return false;
+            }
+            byte[] signature = new byte[4];
+            randomAccessFile.seek(locatorOffset);
+            randomAccessFile.readFully(signature);
+            return ByteBuffer.wrap(signature).order(ByteOrder.LITTLE_ENDIAN).getInt() == ZIP64_LOCATOR_SIGNATURE;
+        }
+    }
+}
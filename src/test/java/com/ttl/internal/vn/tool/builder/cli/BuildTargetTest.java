@@ -0,0 +1,30 @@
+package com.ttl.internal.vn.tool.builder.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.ttl.internal.vn.tool.builder.cli.CliBuildTool.BuildTarget;
+
+class BuildTargetTest {
+    @ParameterizedTest
+    @ValueSource(strings = { "v1.0..release/1.0", " v1.0 .. release/1.0 " })
+    void parsesBaseRefAndTargetRef(String target) {
+        BuildTarget buildTarget = BuildTarget.parse(target);
+
+        assertEquals("v1.0", buildTarget.getBaseRef());
+        assertEquals("release/1.0", buildTarget.getTargetRef());
+        assertEquals("v1.0..release/1.0", buildTarget.toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "release/1.0", "v1.0..", "..release/1.0", "a..b..c", " .. " })
+    void rejectsInvalidTarget(String target) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> BuildTarget.parse(target));
+
+        assertTrue(e.getMessage().contains(target), e.getMessage());
+    }
+}
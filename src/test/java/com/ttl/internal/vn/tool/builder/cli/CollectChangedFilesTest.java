@@ -0,0 +1,93 @@
+package com.ttl.internal.vn.tool.builder.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ttl.internal.vn.tool.builder.archive.ArchiveWriter;
+import com.ttl.internal.vn.tool.builder.maven.ModuleGraph;
+
+class CollectChangedFilesTest {
+    private static final List<String> CONFIG_PREFIXES = Collections.singletonList("config");
+
+    @TempDir
+    File workspaceFolder;
+
+    @Test
+    void higherPriorityModuleOverridesSameConfigFile() throws Exception {
+        // NOTE: The classpath of app list lib-b before lib-a, unlike the module order, so lib-a has the highest
+        // priority and its copy of app.properties is the one archived
+        Map<String, List<String>> dependencies = new HashMap<>();
+        dependencies.put("app", Arrays.asList("lib-b", "lib-a"));
+        ModuleGraph moduleGraph = ModuleGraph.of(Arrays.asList("app", "lib-a", "lib-b"), dependencies);
+        Map<String, List<DiffEntry>> changedModuleToEntriesMap = new HashMap<>();
+        change(changedModuleToEntriesMap, "lib-a", "config/app.properties", "a=lib-a");
+        change(changedModuleToEntriesMap, "lib-b", "config/app.properties", "a=lib-b");
+        change(changedModuleToEntriesMap, "lib-b", "config/lib-b.properties", "b=lib-b");
+        change(changedModuleToEntriesMap, "app", "src/App.java", "class App {}");
+
+        Map<String, ArchiveWriter.Entry> entries = CliBuildTool.collectChangedFiles(workspaceFolder,
+                dependOnModules(moduleGraph, "app"), changedModuleToEntriesMap, CONFIG_PREFIXES, "");
+
+        assertEquals(Arrays.asList("app.properties", "lib-b.properties"), new ArrayList<>(entries.keySet()));
+        assertEquals(new File(workspaceFolder, "lib-a/config/app.properties"), entries.get("app.properties").getFile());
+        assertEquals(new File(workspaceFolder, "lib-b/config/lib-b.properties"), entries.get("lib-b.properties").getFile());
+    }
+
+    @Test
+    void dependencyOverridesModuleItself() throws Exception {
+        Map<String, List<String>> dependencies = new HashMap<>();
+        dependencies.put("app", Collections.singletonList("lib"));
+        ModuleGraph moduleGraph = ModuleGraph.of(Arrays.asList("app", "lib"), dependencies);
+        Map<String, List<DiffEntry>> changedModuleToEntriesMap = new HashMap<>();
+        change(changedModuleToEntriesMap, "app", "config/app.properties", "a=app");
+        change(changedModuleToEntriesMap, "lib", "config/app.properties", "a=lib");
+
+        Map<String, ArchiveWriter.Entry> entries = CliBuildTool.collectChangedFiles(workspaceFolder,
+                dependOnModules(moduleGraph, "app"), changedModuleToEntriesMap, CONFIG_PREFIXES, "");
+
+        assertEquals(Collections.singleton("app.properties"), entries.keySet());
+        assertEquals(new File(workspaceFolder, "lib/config/app.properties"), entries.get("app.properties").getFile());
+    }
+
+    // Same as the dependOnModuleMap of a build: the module itself then the modules it depends on
+    private static List<String> dependOnModules(ModuleGraph moduleGraph, String module) {
+        List<String> dependOnModules = new ArrayList<>();
+        dependOnModules.add(module);
+        dependOnModules.addAll(moduleGraph.getOrderedDependencies(module));
+        return dependOnModules;
+    }
+
+    private void change(Map<String, List<DiffEntry>> changedModuleToEntriesMap, String module, String path, String content)
+            throws IOException {
+        String newPath = module + "/" + path;
+        File file = new File(workspaceFolder, newPath);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        changedModuleToEntriesMap.computeIfAbsent(module, it -> new ArrayList<>()).add(added(newPath));
+    }
+
+    // NOTE: DiffEntry has no public constructor, only the change type and the new path are read
+    private static DiffEntry added(String path) {
+        return new DiffEntry() {
+            {
+                changeType = ChangeType.ADD;
+                oldPath = DEV_NULL;
+                newPath = path;
+            }
+        };
+    }
+}
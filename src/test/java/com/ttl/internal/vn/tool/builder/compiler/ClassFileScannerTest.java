@@ -0,0 +1,135 @@
+package com.ttl.internal.vn.tool.builder.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// NOTE: Java 8 class files find the enclosing class through InnerClasses and EnclosingMethod, java 11+ ones through
+// NestHost, so every case is compiled for both
+class ClassFileScannerTest {
+    private static final String OUTER = "package p;\n"
+            + "public class Outer {\n"
+            + "    public class Inner {\n"
+            + "        class Deep {}\n"
+            + "        Runnable deepAnonymous = new Runnable() { public void run() {} };\n"
+            + "    }\n"
+            + "    static class StaticNested {}\n"
+            + "    Object anonymous = new Object() {};\n"
+            + "    void method() {\n"
+            + "        class Local {}\n"
+            + "        new Local();\n"
+            + "        Runnable lambda = () -> {};\n"
+            + "    }\n"
+            + "}\n"
+            + "class Helper {\n"
+            + "    Object anonymous = new Object() {};\n"
+            + "}\n";
+    // NOTE: A top level class whose name look like a nested class of Outer
+    private static final String FAKE_NESTED = "package p;\n"
+            + "public class Outer$Fake {\n"
+            + "    class Member {}\n"
+            + "}\n";
+
+    @TempDir
+    File tempFolder;
+
+    @ParameterizedTest
+    @ValueSource(strings = { "8", "17" })
+    void findsNestedClassFilesOfTopLevelClass(String release) throws Exception {
+        File classFolder = compile(release, true);
+        ClassFileScanner scanner = new ClassFileScanner(Collections.singletonList(classFolder));
+
+        assertEquals(Arrays.asList("Outer.class", "Outer$1.class", "Outer$1Local.class", "Outer$Inner.class",
+                "Outer$Inner$1.class", "Outer$Inner$Deep.class", "Outer$StaticNested.class"), names(scanner.findClassFiles("p.Outer")));
+        assertEquals(Arrays.asList("Outer$Fake.class", "Outer$Fake$Member.class"), names(scanner.findClassFiles("p.Outer$Fake")));
+        assertEquals(Arrays.asList("Helper.class", "Helper$1.class"), names(scanner.findClassFiles("p.Helper")));
+        assertThrows(ClassNotFoundException.class, () -> scanner.findClassFiles("p.Missing"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "8", "17" })
+    void indexesEveryClassOfSource(String release) throws Exception {
+        File classFolder = compile(release, true);
+        ClassFileScanner scanner = new ClassFileScanner(Collections.singletonList(classFolder));
+
+        SourceIndex.Entry entry = scanner.indexSource("p/Outer.java");
+
+        assertEquals("p", entry.getPackageName());
+        assertEquals(Arrays.asList("p.Helper", "p.Outer"), entry.getTopLevelTypes());
+        assertEquals(Arrays.asList("p/Helper.class", "p/Helper$1.class", "p/Outer.class", "p/Outer$1.class",
+                "p/Outer$1Local.class", "p/Outer$Inner.class", "p/Outer$Inner$1.class", "p/Outer$Inner$Deep.class",
+                "p/Outer$StaticNested.class"), entry.getClassFiles());
+        assertTrue(scanner.findClassFiles(entry).isPresent());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "8", "17" })
+    void indexesSourceWithoutSourceFileAttribute(String release) throws Exception {
+        File classFolder = compile(release, false);
+        ClassFileScanner scanner = new ClassFileScanner(Collections.singletonList(classFolder));
+
+        SourceIndex.Entry entry = scanner.indexSource("p/Outer.java");
+
+        // NOTE: Without the SourceFile attribute the secondary top level classes can't be found
+        assertEquals(Collections.singletonList("p.Outer"), entry.getTopLevelTypes());
+        assertEquals(Arrays.asList("p/Outer.class", "p/Outer$1.class", "p/Outer$1Local.class", "p/Outer$Inner.class",
+                "p/Outer$Inner$1.class", "p/Outer$Inner$Deep.class", "p/Outer$StaticNested.class"), entry.getClassFiles());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "8", "17" })
+    void firstClassFolderShadowsTheNextOnes(String release) throws Exception {
+        File classFolder = compile(release, true);
+        File emptyFolder = new File(tempFolder, "empty");
+        emptyFolder.mkdirs();
+        ClassFileScanner scanner = new ClassFileScanner(Arrays.asList(emptyFolder, classFolder));
+
+        SourceIndex.Entry entry = scanner.indexSource("p/Outer.java");
+
+        assertEquals(classFolder, scanner.findClassFiles(entry).get().get(0).getParentFile().getParentFile());
+        assertFalse(new ClassFileScanner(Collections.singletonList(emptyFolder)).findClassFiles(entry).isPresent());
+    }
+
+    private File compile(String release, boolean debugInfo) throws IOException {
+        File sourceFolder = new File(tempFolder, "src/p");
+        sourceFolder.mkdirs();
+        Files.write(new File(sourceFolder, "Outer.java").toPath(), OUTER.getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(sourceFolder, "Outer$Fake.java").toPath(), FAKE_NESTED.getBytes(StandardCharsets.UTF_8));
+        File classFolder = new File(tempFolder, "classes");
+        classFolder.mkdirs();
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> arguments = new ArrayList<>(Arrays.asList("-proc:none", "-nowarn", "-d", classFolder.getAbsolutePath()));
+        arguments.addAll(isJava8() ? Collections.emptyList() : Arrays.asList("--release", release));
+        arguments.add(debugInfo ? "-g" : "-g:none");
+        arguments.add(new File(sourceFolder, "Outer.java").getAbsolutePath());
+        arguments.add(new File(sourceFolder, "Outer$Fake.java").getAbsolutePath());
+        assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+        return classFolder;
+    }
+
+    private static boolean isJava8() {
+        return System.getProperty("java.specification.version").startsWith("1.");
+    }
+
+    private static List<String> names(List<File> files) {
+        return files.stream().map(File::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,108 @@
+package com.ttl.internal.vn.tool.builder.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.tools.ToolProvider;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// NOTE: target/classes is compiled by the test as maven would have done, an empty Optional is what make the caller
+// fall back to maven
+class FastCompilerTest {
+    @TempDir
+    File tempFolder;
+
+    private File projectFolder;
+    private File moduleFolder;
+    private FastCompiler fastCompiler;
+
+    @BeforeEach
+    void compileModule() throws IOException {
+        projectFolder = new File(tempFolder, "project");
+        moduleFolder = new File(projectFolder, "m");
+        write(new File(projectFolder, "pom.xml"), "<project><modelVersion>4.0.0</modelVersion><groupId>g</groupId>"
+                + "<artifactId>root</artifactId><version>1</version><packaging>pom</packaging>"
+                + "<properties><project.build.sourceEncoding>UTF-8</project.build.sourceEncoding></properties></project>");
+        write(new File(moduleFolder, "pom.xml"), "<project><modelVersion>4.0.0</modelVersion><groupId>g</groupId>"
+                + "<artifactId>m</artifactId><version>1</version></project>");
+        File a = write(source("A"), "package p;\npublic class A {\n    public static int value() { return 1; }\n}\n");
+        File targetClasses = new File(moduleFolder, "target/classes");
+        targetClasses.mkdirs();
+        assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, "--release", "8", "-proc:none",
+                "-d", targetClasses.getAbsolutePath(), a.getAbsolutePath()));
+        // NOTE: The class files must be newer than the sources, like after a maven build
+        File classFile = new File(targetClasses, "p/A.class");
+        assertTrue(classFile.setLastModified(a.lastModified() + 10_000));
+        fastCompiler = new FastCompiler(projectFolder, module -> new File(tempFolder, "fast/" + module));
+    }
+
+    @Test
+    void compilesChangedSourceIntoFastCompileFolder() throws Exception {
+        File b = write(source("B"), "package p;\npublic class B {\n    int value = A.value();\n    Runnable r = new Runnable() { public void run() {} };\n}\n");
+
+        Optional<Map<String, File>> outputFolderMap = compile(Collections.singletonList(b));
+
+        assertTrue(outputFolderMap.isPresent());
+        File outputFolder = new File(tempFolder, "fast/m");
+        assertEquals(Collections.singletonMap("m", outputFolder), outputFolderMap.get());
+        assertTrue(new File(outputFolder, "p/B.class").isFile());
+        assertTrue(new File(outputFolder, "p/B$1.class").isFile());
+        // A is only on the classpath, target/classes is never written
+        assertFalse(new File(outputFolder, "p/A.class").exists());
+        assertFalse(new File(moduleFolder, "target/classes/p/B.class").exists());
+    }
+
+    @Test
+    void fallsBackOnCompileError() throws Exception {
+        File b = write(source("B"), "package p;\npublic class B {\n    int value = A.missing();\n}\n");
+
+        assertFalse(compile(Collections.singletonList(b)).isPresent());
+    }
+
+    @Test
+    void fallsBackOnStaleTargetClasses() throws Exception {
+        File c = write(source("C"), "package p;\npublic class C {}\n");
+        assertTrue(c.setLastModified(System.currentTimeMillis() + 60_000));
+        File b = write(source("B"), "package p;\npublic class B {}\n");
+
+        assertFalse(compile(Collections.singletonList(b)).isPresent());
+    }
+
+    @Test
+    void fallsBackWhenModuleWasNeverCompiled() throws Exception {
+        File b = write(source("B"), "package p;\npublic class B {}\n");
+        FileUtils.deleteDirectory(new File(moduleFolder, "target"));
+
+        assertFalse(compile(Collections.singletonList(b)).isPresent());
+    }
+
+    private Optional<Map<String, File>> compile(List<File> javaFiles) {
+        return fastCompiler.compile(Collections.singletonMap("m", javaFiles),
+                Collections.singletonMap("m", Arrays.asList(new File(moduleFolder, "target/classes").getAbsolutePath())));
+    }
+
+    private File source(String name) {
+        return new File(moduleFolder, "src/main/java/p/" + name + ".java");
+    }
+
+    private static File write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,89 @@
+package com.ttl.internal.vn.tool.builder.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SourceIndexTest {
+    @TempDir
+    File folder;
+
+    @Test
+    void reloadsStoredEntries() throws Exception {
+        File indexFile = new File(folder, "source-index");
+        SourceIndex sourceIndex = SourceIndex.load(indexFile);
+        sourceIndex.put(id(1), entry("A"));
+        sourceIndex.store();
+
+        Optional<SourceIndex.Entry> entry = SourceIndex.load(indexFile).get(id(1));
+
+        assertTrue(entry.isPresent());
+        assertEquals("p", entry.get().getPackageName());
+        assertEquals(Collections.singletonList("p.A"), entry.get().getTopLevelTypes());
+        assertEquals(Collections.singletonList("p/A.class"), entry.get().getClassFiles());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntry() {
+        SourceIndex sourceIndex = SourceIndex.load(new File(folder, "source-index"), 2);
+        sourceIndex.put(id(1), entry("A"));
+        sourceIndex.put(id(2), entry("B"));
+        // NOTE: 1 become the most recently used, so 2 is evicted
+        assertTrue(sourceIndex.get(id(1)).isPresent());
+        sourceIndex.put(id(3), entry("C"));
+
+        assertEquals(2, sourceIndex.size());
+        assertTrue(sourceIndex.get(id(1)).isPresent());
+        assertFalse(sourceIndex.get(id(2)).isPresent());
+        assertTrue(sourceIndex.get(id(3)).isPresent());
+    }
+
+    @Test
+    void keepsRecentlyUsedEntriesOfAnotherRun() throws Exception {
+        File indexFile = new File(folder, "source-index");
+        SourceIndex sourceIndex = SourceIndex.load(indexFile, 2);
+        sourceIndex.put(id(1), entry("A"));
+        sourceIndex.put(id(2), entry("B"));
+        sourceIndex.get(id(1));
+        sourceIndex.store();
+
+        sourceIndex = SourceIndex.load(indexFile, 2);
+        sourceIndex.put(id(3), entry("C"));
+
+        assertTrue(sourceIndex.get(id(1)).isPresent());
+        assertFalse(sourceIndex.get(id(2)).isPresent());
+    }
+
+    @Test
+    void prunesIndexFileOverCapacity() throws Exception {
+        File indexFile = new File(folder, "source-index");
+        SourceIndex sourceIndex = SourceIndex.load(indexFile);
+        for (int i = 1; i <= 3; i++) {
+            sourceIndex.put(id(i), entry("A" + i));
+        }
+        sourceIndex.store();
+
+        SourceIndex.load(indexFile, 2).store();
+
+        sourceIndex = SourceIndex.load(indexFile);
+        assertEquals(2, sourceIndex.size());
+        assertFalse(sourceIndex.get(id(1)).isPresent());
+    }
+
+    private static SourceIndex.Entry entry(String name) {
+        return new SourceIndex.Entry("p", Collections.singletonList("p." + name), Collections.singletonList("p/" + name + ".class"));
+    }
+
+    private static ObjectId id(int i) {
+        return ObjectId.fromString(StringUtils.leftPad(Integer.toHexString(i), 40, '0'));
+    }
+}
@@ -0,0 +1,110 @@
+package com.ttl.internal.vn.tool.builder.git;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiffCacheTest {
+    @TempDir
+    File cacheFolder;
+
+    @Test
+    void evictsLeastRecentlyUsedEntry() {
+        DiffCache diffCache = new DiffCache(2, null);
+        diffCache.put("a", diff("a.txt"));
+        diffCache.put("b", diff("b.txt"));
+        // NOTE: a become the most recently used, so b is evicted
+        assertTrue(diffCache.get("a").isPresent());
+        diffCache.put("c", diff("c.txt"));
+
+        assertTrue(diffCache.get("a").isPresent());
+        assertFalse(diffCache.get("b").isPresent());
+        assertTrue(diffCache.get("c").isPresent());
+    }
+
+    @Test
+    void reloadsEvictedEntryFromDisk() {
+        DiffCache diffCache = new DiffCache(1, cacheFolder);
+        diffCache.put("a", diff("a.txt"));
+        diffCache.put("b", diff("b.txt"));
+
+        assertDiff(diff("a.txt"), diffCache.get("a"));
+    }
+
+    @Test
+    void reloadsEntriesOfAnotherRun() {
+        List<DiffEntry> diffEntries = Arrays.asList(
+                new StoredDiffEntry(ChangeType.ADD, DiffEntry.DEV_NULL, "added.txt", FileMode.MISSING, FileMode.REGULAR_FILE,
+                        id(0), id(1), 0),
+                new StoredDiffEntry(ChangeType.RENAME, "old/name.txt", "new/name.txt", FileMode.REGULAR_FILE,
+                        FileMode.EXECUTABLE_FILE, id(2), id(3), 87),
+                new StoredDiffEntry(ChangeType.DELETE, "deleted.txt", DiffEntry.DEV_NULL, FileMode.REGULAR_FILE, FileMode.MISSING,
+                        id(4), id(0), 0));
+        new DiffCache(8, cacheFolder).put("a..b", diffEntries);
+
+        DiffCache diffCache = new DiffCache(8, cacheFolder);
+
+        assertDiff(diffEntries, diffCache.get("a..b"));
+        assertFalse(diffCache.get("b..c").isPresent());
+    }
+
+    @Test
+    void storesKeyOver64KB() {
+        String key = StringUtils.repeat("path/to/a/module/", 10_000);
+        new DiffCache(8, cacheFolder).put(key, diff("a.txt"));
+
+        assertDiff(diff("a.txt"), new DiffCache(8, cacheFolder).get(key));
+    }
+
+    @Test
+    void ignoresUnreadableEntry() throws Exception {
+        new DiffCache(8, cacheFolder).put("a", diff("a.txt"));
+        File[] cacheFiles = cacheFolder.listFiles();
+        assertEquals(1, cacheFiles.length);
+        Files.write(cacheFiles[0].toPath(), new byte[] { 0, 0, 0, 2, 0 });
+
+        assertFalse(new DiffCache(8, cacheFolder).get("a").isPresent());
+    }
+
+    private static List<DiffEntry> diff(String path) {
+        return Collections.singletonList(new StoredDiffEntry(ChangeType.MODIFY, path, path, FileMode.REGULAR_FILE,
+                FileMode.REGULAR_FILE, id(1), id(2), 0));
+    }
+
+    private static AbbreviatedObjectId id(int i) {
+        return AbbreviatedObjectId.fromObjectId(ObjectId.fromString(StringUtils.leftPad(Integer.toHexString(i), 40, '0')));
+    }
+
+    private static void assertDiff(List<DiffEntry> expected, Optional<List<DiffEntry>> actual) {
+        assertTrue(actual.isPresent());
+        assertEquals(expected.size(), actual.get().size());
+        for (int i = 0; i < expected.size(); i++) {
+            DiffEntry expectedEntry = expected.get(i);
+            DiffEntry actualEntry = actual.get().get(i);
+            assertEquals(expectedEntry.getChangeType(), actualEntry.getChangeType());
+            assertEquals(expectedEntry.getOldPath(), actualEntry.getOldPath());
+            assertEquals(expectedEntry.getNewPath(), actualEntry.getNewPath());
+            assertEquals(expectedEntry.getOldMode(), actualEntry.getOldMode());
+            assertEquals(expectedEntry.getNewMode(), actualEntry.getNewMode());
+            assertEquals(expectedEntry.getOldId(), actualEntry.getOldId());
+            assertEquals(expectedEntry.getNewId(), actualEntry.getNewId());
+            assertEquals(expectedEntry.getScore(), actualEntry.getScore());
+        }
+    }
+}
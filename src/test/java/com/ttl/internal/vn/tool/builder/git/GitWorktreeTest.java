@@ -0,0 +1,155 @@
+package com.ttl.internal.vn.tool.builder.git;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GitWorktreeTest {
+    @TempDir
+    File workTree;
+    @TempDir
+    File worktreesFolder;
+    private Git git;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        git = Git.init().setDirectory(workTree).call();
+        write(workTree, "pom.xml", "<project/>\n");
+        write(workTree, "src/A.java", "class A {}\n");
+        write(workTree, "src/B.java", "class B {}\n");
+        commit("v1");
+        git.tag().setName("v1").call();
+        write(workTree, "src/A.java", "class A { int a; }\n");
+        Files.delete(new File(workTree, "src/B.java").toPath());
+        write(workTree, "src/C.java", "class C {}\n");
+        commit("v2");
+        git.tag().setName("v2").call();
+    }
+
+    @AfterEach
+    void tearDown() {
+        git.close();
+    }
+
+    @Test
+    void checksOutWithoutTouchingUserWorkingTree() throws Exception {
+        write(workTree, "src/A.java", "class A { int dirty; }\n");
+        ObjectId head = git.getRepository().resolve("HEAD");
+
+        try (GitWorktree worktree = GitWorktree.open(git.getRepository(), worktreesFolder, "v1")) {
+            worktree.checkout("v1");
+
+            assertEquals(GitWorktree.getFolder(worktreesFolder, "v1"), worktree.getFolder());
+            assertEquals("class A {}\n", read(worktree.getFolder(), "src/A.java"));
+            assertEquals("class B {}\n", read(worktree.getFolder(), "src/B.java"));
+            assertFalse(new File(worktree.getFolder(), "src/C.java").exists());
+        }
+
+        assertEquals(head, git.getRepository().resolve("HEAD"));
+        assertEquals("class A { int dirty; }\n", read(workTree, "src/A.java"));
+        Status status = git.status().call();
+        assertTrue(status.getChanged().isEmpty());
+        assertEquals(1, status.getModified().size());
+    }
+
+    @Test
+    void reusesWorktreeAndKeepsBuildOutputs() throws Exception {
+        try (GitWorktree worktree = GitWorktree.open(git.getRepository(), worktreesFolder, "release")) {
+            worktree.checkout("v1");
+            write(worktree.getFolder(), "target/classes/A.class", "A");
+        }
+
+        // NOTE: A new run open the same folder and only rewrite what differ from the index it left
+        try (GitWorktree worktree = GitWorktree.open(git.getRepository(), worktreesFolder, "release")) {
+            worktree.checkout("v2");
+
+            assertEquals("class A { int a; }\n", read(worktree.getFolder(), "src/A.java"));
+            assertFalse(new File(worktree.getFolder(), "src/B.java").exists());
+            assertEquals("class C {}\n", read(worktree.getFolder(), "src/C.java"));
+            assertEquals("A", read(worktree.getFolder(), "target/classes/A.class"));
+        }
+        assertEquals(1, worktreesFolder.list((dir, name) -> !name.endsWith(".index")).length);
+    }
+
+    @Test
+    void overwritesLeftoverOfInterruptedBuild() throws Exception {
+        try (GitWorktree worktree = GitWorktree.open(git.getRepository(), worktreesFolder, "v1")) {
+            worktree.checkout("v1");
+            write(worktree.getFolder(), "src/A.java", "class A { int leftover; }\n");
+
+            worktree.checkout("v1");
+
+            assertEquals("class A {}\n", read(worktree.getFolder(), "src/A.java"));
+        }
+    }
+
+    @Test
+    void restoresPatchedFilesBeforeNextCheckout() throws Exception {
+        File patchFile = write(worktreesFolder, "changes.patch", String.join("\n",
+                "diff --git a/src/A.java b/src/A.java",
+                "--- a/src/A.java",
+                "+++ b/src/A.java",
+                "@@ -1 +1 @@",
+                "-class A {}",
+                "+class A { int patched; }",
+                "diff --git a/src/D.java b/src/D.java",
+                "new file mode 100644",
+                "--- /dev/null",
+                "+++ b/src/D.java",
+                "@@ -0,0 +1 @@",
+                "+class D {}",
+                ""));
+        try (GitWorktree worktree = GitWorktree.open(git.getRepository(), worktreesFolder, "v1")) {
+            worktree.checkout("v1");
+            worktree.applyPatch(patchFile);
+            assertEquals("class A { int patched; }\n", read(worktree.getFolder(), "src/A.java"));
+            assertEquals("class D {}\n", read(worktree.getFolder(), "src/D.java"));
+        }
+
+        try (GitWorktree worktree = GitWorktree.open(git.getRepository(), worktreesFolder, "v1")) {
+            worktree.checkout("v1");
+
+            assertEquals("class A {}\n", read(worktree.getFolder(), "src/A.java"));
+            assertFalse(new File(worktree.getFolder(), "src/D.java").exists());
+            assertFalse(new File(worktreesFolder, worktree.getFolder().getName() + ".patched").exists());
+        }
+    }
+
+    @Test
+    void neverSharesFolderBetweenRefs() {
+        assertEquals("release_2f_1.0", GitWorktree.toFolderName("release/1.0"));
+        assertNotEquals(GitWorktree.toFolderName("a/b"), GitWorktree.toFolderName("a_b"));
+        assertNotEquals(GitWorktree.getFolder(worktreesFolder, "a/b"), GitWorktree.getFolder(worktreesFolder, "a_b"));
+    }
+
+    private void commit(String message) throws Exception {
+        git.add().addFilepattern(".").call();
+        git.add().setUpdate(true).addFilepattern(".").call();
+        git.commit().setMessage(message).setAuthor("test", "test@test").setCommitter("test", "test@test").call();
+    }
+
+    private static File write(File folder, String path, String content) throws IOException {
+        File file = new File(folder, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String read(File folder, String path) throws IOException {
+        return new String(Files.readAllBytes(new File(folder, path).toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,180 @@
+package com.ttl.internal.vn.tool.builder.git;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WorkingTreeDiffTest {
+    // NOTE: The watch service report the events asynchronously
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @TempDir
+    File workTree;
+    private Git git;
+    private ObjectId baseTreeId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        git = Git.init().setDirectory(workTree).call();
+        write(".gitignore", "ignored/\n");
+        write("pom.xml", "<project/>");
+        write("src/A.java", "class A {}");
+        write("src/B.java", "class B {}");
+        git.add().addFilepattern(".").call();
+        baseTreeId = git.commit().setMessage("base").setAuthor("test", "test@test").setCommitter("test", "test@test").call()
+                .getTree().getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        git.close();
+    }
+
+    @Test
+    void scansWorkingTreeWithoutWatcher() throws Exception {
+        write("src/A.java", "class A { int a; }");
+        Files.delete(new File(workTree, "src/B.java").toPath());
+        write("src/C.java", "class C {}");
+        write("ignored/D.java", "class D {}");
+        write("target/classes/A.class", "A");
+
+        try (WorkingTreeDiff workingTreeDiff = new WorkingTreeDiff(git.getRepository())) {
+            Map<String, ChangeType> changes = toChanges(workingTreeDiff.scan(baseTreeId, TreeFilter.ALL));
+
+            Map<String, ChangeType> expected = new TreeMap<>();
+            expected.put("src/A.java", ChangeType.MODIFY);
+            expected.put("src/B.java", ChangeType.DELETE);
+            expected.put("src/C.java", ChangeType.ADD);
+            // NOTE: Like git, a maven output folder is only left out of the diff when it is ignored
+            expected.put("target/classes/A.class", ChangeType.ADD);
+            assertEquals(expected, changes);
+        }
+    }
+
+    @Test
+    void skipsIgnoredMavenOutputFolder() throws Exception {
+        write(".gitignore", "ignored/\ntarget/\n");
+        write("target/classes/A.class", "A");
+        write("module/target/classes/B.class", "B");
+        write("module/pom.xml", "<project/>");
+
+        try (WorkingTreeDiff workingTreeDiff = new WorkingTreeDiff(git.getRepository())) {
+            Map<String, ChangeType> changes = toChanges(workingTreeDiff.scan(baseTreeId, TreeFilter.ALL));
+
+            Map<String, ChangeType> expected = new TreeMap<>();
+            expected.put(".gitignore", ChangeType.MODIFY);
+            expected.put("module/pom.xml", ChangeType.ADD);
+            assertEquals(expected, changes);
+        }
+    }
+
+    @Test
+    void rescansWrittenPathsWithWatcher() throws Exception {
+        try (WorkingTreeDiff workingTreeDiff = new WorkingTreeDiff(git.getRepository())) {
+            workingTreeDiff.watch();
+            assertTrue(workingTreeDiff.scan(baseTreeId, TreeFilter.ALL).isEmpty());
+
+            write("src/A.java", "class A { int a; }");
+            awaitChanges(workingTreeDiff, changes -> changes.containsKey("src/A.java"));
+
+            write("src/sub/C.java", "class C {}");
+            Map<String, ChangeType> changes = awaitChanges(workingTreeDiff, it -> it.containsKey("src/sub/C.java"));
+            assertEquals(ChangeType.MODIFY, changes.get("src/A.java"));
+            assertEquals(ChangeType.ADD, changes.get("src/sub/C.java"));
+
+            write("src/A.java", "class A {}");
+            awaitChanges(workingTreeDiff, it -> !it.containsKey("src/A.java"));
+
+            Files.delete(new File(workTree, "src/sub/C.java").toPath());
+            awaitChanges(workingTreeDiff, Map::isEmpty);
+        }
+    }
+
+    @Test
+    void rescansWhenGitIgnoreChanged() throws Exception {
+        write("logs/app.log", "log");
+        try (WorkingTreeDiff workingTreeDiff = new WorkingTreeDiff(git.getRepository())) {
+            workingTreeDiff.watch();
+            assertTrue(toChanges(workingTreeDiff.scan(baseTreeId, TreeFilter.ALL)).containsKey("logs/app.log"));
+
+            write(".gitignore", "ignored/\nlogs/\n");
+            Map<String, ChangeType> changes = awaitChanges(workingTreeDiff, it -> !it.containsKey("logs/app.log"));
+            assertEquals(ChangeType.MODIFY, changes.get(".gitignore"));
+        }
+    }
+
+    @Test
+    void watcherSkipsIgnoredFolders() throws Exception {
+        write("ignored/D.java", "class D {}");
+        write("target/classes/A.class", "A");
+        try (WorkingTreeWatcher watcher = new WorkingTreeWatcher(git.getRepository())) {
+            write("ignored/E.java", "class E {}");
+            write("target/classes/B.class", "B");
+            write("src/A.java", "class A { int a; }");
+
+            Set<String> dirtyPaths = new HashSet<>();
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (!(dirtyPaths.contains("src/A.java") && dirtyPaths.contains("target/classes/B.class"))
+                    && System.currentTimeMillis() < deadline) {
+                Optional<Set<String>> polledPaths = watcher.pollDirtyPaths();
+                assertTrue(polledPaths.isPresent());
+                dirtyPaths.addAll(polledPaths.get());
+                Thread.sleep(50);
+            }
+
+            assertTrue(dirtyPaths.contains("src/A.java"));
+            assertFalse(dirtyPaths.contains("ignored/E.java"));
+            // NOTE: The target folder isn't ignored, so its files are part of the diff and it is watched
+            assertTrue(dirtyPaths.contains("target/classes/B.class"));
+        }
+    }
+
+    private Map<String, ChangeType> awaitChanges(WorkingTreeDiff workingTreeDiff, Predicate<Map<String, ChangeType>> condition)
+            throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        Map<String, ChangeType> changes = toChanges(workingTreeDiff.scan(baseTreeId, TreeFilter.ALL));
+        while (!condition.test(changes) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            changes = toChanges(workingTreeDiff.scan(baseTreeId, TreeFilter.ALL));
+        }
+        assertTrue(condition.test(changes), "Unexpected changes " + changes);
+        return changes;
+    }
+
+    private static Map<String, ChangeType> toChanges(List<DiffEntry> diffEntries) {
+        Map<String, ChangeType> changes = new TreeMap<>();
+        for (DiffEntry diffEntry : diffEntries) {
+            changes.put(diffEntry.getChangeType() == ChangeType.DELETE ? diffEntry.getOldPath() : diffEntry.getNewPath(),
+                    diffEntry.getChangeType());
+        }
+        return changes;
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(workTree, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,128 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ClasspathCacheTest {
+    private static final List<String> LEAF_MODULES = Arrays.asList("a", "b");
+
+    @TempDir
+    File tempFolder;
+
+    private File projectFolder;
+    private File localRepository;
+    private File settingsXml;
+    private ClasspathCache classpathCache;
+
+    @BeforeEach
+    void createProject() throws IOException {
+        projectFolder = new File(tempFolder, "project");
+        localRepository = new File(tempFolder, "repository");
+        settingsXml = new File(tempFolder, "settings.xml");
+        write(settingsXml, settings("<!-- one -->"));
+        write(new File(projectFolder, "pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+                + "<parent><groupId>ext</groupId><artifactId>parent</artifactId><version>1</version><relativePath/></parent>"
+                + "<groupId>g</groupId><artifactId>root</artifactId><version>1</version><packaging>pom</packaging>"
+                + "<modules><module>a</module><module>b</module></modules></project>");
+        write(new File(projectFolder, "a/pom.xml"), module("a", ""));
+        write(new File(projectFolder, "b/pom.xml"), module("b", ""));
+        write(new File(localRepository, "ext/parent/1/parent-1.pom"), "<project><modelVersion>4.0.0</modelVersion>"
+                + "<groupId>ext</groupId><artifactId>parent</artifactId><version>1</version><packaging>pom</packaging></project>");
+        classpathCache = new ClasspathCache(new File(tempFolder, "cache"));
+    }
+
+    @Test
+    void keepsKeyOfUnchangedProject() throws Exception {
+        assertEquals(computeKey(), computeKey());
+    }
+
+    @Test
+    void changesKeyWhenReactorPomChange() throws Exception {
+        String key = computeKey();
+        write(new File(projectFolder, "b/pom.xml"), module("b", "<description>changed</description>"));
+
+        assertNotEquals(key, computeKey());
+    }
+
+    @Test
+    void changesKeyWhenSettingsChange() throws Exception {
+        String key = computeKey();
+        write(settingsXml, settings("<!-- two -->"));
+
+        assertNotEquals(key, computeKey());
+    }
+
+    @Test
+    void changesKeyWhenExternalParentPomChange() throws Exception {
+        String key = computeKey();
+        write(new File(localRepository, "ext/parent/1/parent-1.pom"), "<project><modelVersion>4.0.0</modelVersion>"
+                + "<groupId>ext</groupId><artifactId>parent</artifactId><version>1</version><packaging>pom</packaging>"
+                + "<properties><changed>true</changed></properties></project>");
+
+        assertNotEquals(key, computeKey());
+    }
+
+    @Test
+    void reloadsClasspathsInOrder() throws Exception {
+        Map<String, List<String>> classpathMap = new HashMap<>();
+        classpathMap.put("a", Arrays.asList("/z.jar", "/a.jar", "/m.jar"));
+        classpathMap.put("b", Collections.emptyList());
+        classpathCache.store("key", classpathMap);
+
+        assertEquals(Optional.of(classpathMap), classpathCache.load("key"));
+        assertFalse(classpathCache.load("other").isPresent());
+    }
+
+    @Test
+    void missesCorruptCacheFile() throws Exception {
+        classpathCache.store("key", Collections.singletonMap("a", Arrays.asList("/a.jar", "/b.jar")));
+        File cacheFile = new File(tempFolder, "cache/key.properties");
+        assertTrue(cacheFile.isFile());
+
+        String content = new String(Files.readAllBytes(cacheFile.toPath()), StandardCharsets.ISO_8859_1);
+        write(cacheFile, content.replace("b.jar", "c.jar"));
+        assertFalse(classpathCache.load("key").isPresent());
+
+        write(cacheFile, "a=\\u12");
+        assertFalse(classpathCache.load("key").isPresent());
+
+        Files.write(cacheFile.toPath(), new byte[] { 0, (byte) 0xFF, 10, 61, 13 });
+        assertFalse(classpathCache.load("key").isPresent());
+    }
+
+    private String computeKey() throws Exception {
+        return classpathCache.computeKey(projectFolder, LEAF_MODULES, settingsXml);
+    }
+
+    private String settings(String comment) {
+        return "<settings>" + comment + "<localRepository>" + localRepository.getAbsolutePath() + "</localRepository></settings>";
+    }
+
+    private static String module(String artifactId, String extra) {
+        return "<project><modelVersion>4.0.0</modelVersion>"
+                + "<parent><groupId>g</groupId><artifactId>root</artifactId><version>1</version></parent>"
+                + "<artifactId>" + artifactId + "</artifactId>" + extra + "</project>";
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,180 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ttl.internal.vn.tool.builder.maven.MavenOutputEvent.Type;
+
+class MavenBuildReportTest {
+    @TempDir
+    File tempFolder;
+
+    @Test
+    void findsModuleByNameWithOrWithoutVersion() {
+        MavenBuildReport report = new MavenBuildReport();
+        start(report, "Core Server 1.0-SNAPSHOT");
+        start(report, "Core Web 2.3.1");
+
+        assertEquals("Core Server 1.0-SNAPSHOT", report.findModule("Core Server 1.0-SNAPSHOT").get().getName());
+        assertEquals("Core Server 1.0-SNAPSHOT", report.findModule("Core Server").get().getName());
+        assertEquals("Core Web 2.3.1", report.findModule("Core Web").get().getName());
+    }
+
+    @Test
+    void neverMatchesModuleByPrefix() {
+        MavenBuildReport report = new MavenBuildReport();
+        start(report, "Core Server 1.0-SNAPSHOT");
+        // NOTE: A name without version keep its last word
+        start(report, "Core Client");
+
+        assertFalse(report.findModule("Core").isPresent());
+        assertEquals("Core Client", report.findModule("Core Client").get().getShortName());
+    }
+
+    @Test
+    void stripsOnlyVersionFromShortName() {
+        MavenBuildReport report = new MavenBuildReport();
+        start(report, "Core Server");
+        start(report, "Core Api 1");
+        start(report, "Core Model dev-SNAPSHOT");
+
+        assertEquals("Core Server", report.findModule("Core Server").get().getShortName());
+        assertEquals("Core Api", report.findModule("Core Api 1").get().getShortName());
+        assertEquals("Core Model", report.findModule("Core Model dev-SNAPSHOT").get().getShortName());
+    }
+
+    @Test
+    void takesDurationFromReactorSummaryWithoutVersion() {
+        MavenBuildReport report = new MavenBuildReport();
+        start(report, "Core 1.0");
+        start(report, "Core Server 1.0");
+        report.accept(MavenOutputEvent.builder().type(Type.MODULE_FINISHED).module("Core").status("SUCCESS")
+                .duration(Duration.ofSeconds(3)).build());
+
+        assertEquals(Duration.ofSeconds(3), report.findModule("Core 1.0").get().getDuration());
+        assertEquals(null, report.findModule("Core Server 1.0").get().getDuration());
+    }
+
+    // a -> b, a -> c, b -> d, c -> d: the slower branch decide the path
+    @Test
+    void findsCriticalPathOfDiamond() {
+        MavenBuildReport report = report(durations("a", 1, "b", 5, "c", 2, "d", 3));
+        Map<String, List<String>> dependencies = new HashMap<>();
+        dependencies.put("d", Arrays.asList("b", "c"));
+        dependencies.put("b", Collections.singletonList("a"));
+        dependencies.put("c", Collections.singletonList("a"));
+
+        MavenBuildReport.CriticalPath criticalPath = report.getCriticalPath(dependencies);
+
+        assertEquals(Arrays.asList("a 1.0", "b 1.0", "d 1.0"), names(criticalPath));
+        assertEquals(Duration.ofSeconds(9), criticalPath.getDuration());
+    }
+
+    @Test
+    void ignoresBackEdge() {
+        MavenBuildReport report = report(durations("a", 1, "b", 2, "c", 4));
+        Map<String, List<String>> dependencies = new HashMap<>();
+        dependencies.put("b", Collections.singletonList("a"));
+        dependencies.put("c", Collections.singletonList("b"));
+        dependencies.put("a", Arrays.asList("c", "a"));
+
+        MavenBuildReport.CriticalPath criticalPath = report.getCriticalPath(dependencies);
+
+        assertEquals(7, criticalPath.getDuration().getSeconds());
+        assertEquals(3, criticalPath.getModules().size());
+    }
+
+    @Test
+    void skipsModulesWithoutPathOrDuration() {
+        MavenBuildReport report = report(durations("a", 1, "b", 2));
+        start(report, "c 1.0");
+        start(report, "orphan 1.0");
+        report.setModulePaths(Collections.singletonMap("c", "c"));
+        Map<String, List<String>> dependencies = new HashMap<>();
+        dependencies.put("b", Arrays.asList("a", "c", "unknown"));
+
+        MavenBuildReport.CriticalPath criticalPath = report.getCriticalPath(dependencies);
+
+        assertEquals(Arrays.asList("a 1.0", "b 1.0"), names(criticalPath));
+        assertEquals(Duration.ofSeconds(3), criticalPath.getDuration());
+    }
+
+    @Test
+    void hasEmptyCriticalPathWithoutModules() {
+        MavenBuildReport.CriticalPath criticalPath = new MavenBuildReport().getCriticalPath(Collections.emptyMap());
+
+        assertTrue(criticalPath.getModules().isEmpty());
+        assertEquals(Duration.ZERO, criticalPath.getDuration());
+    }
+
+    @Test
+    void escapesJson() throws Exception {
+        MavenBuildReport report = new MavenBuildReport();
+        start(report, "Core \"Quoted\" \\ Server\t\u0001 1.0");
+        report.setModulePaths(Collections.singletonMap("Core \"Quoted\" \\ Server\t\u0001", "core\nserver"));
+        File jsonFile = new File(tempFolder, "report/build.json");
+
+        report.writeJson(jsonFile, report.getCriticalPath(Collections.emptyMap()));
+
+        String json = new String(Files.readAllBytes(jsonFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"name\": \"Core \\\"Quoted\\\" \\\\ Server\\t\\u0001 1.0\""), json);
+        assertTrue(json.contains("\"path\": \"core\\nserver\""), json);
+        assertTrue(json.contains("\"status\": null"), json);
+    }
+
+    @Test
+    void writesJsonOfBuildWithoutMaven() throws Exception {
+        File jsonFile = new File(tempFolder, "build.json");
+
+        new MavenBuildReport().writeJson(jsonFile, new MavenBuildReport().getCriticalPath(Collections.emptyMap()));
+
+        String json = new String(Files.readAllBytes(jsonFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"status\": \"NOT_RUN\""), json);
+        assertTrue(json.contains("\"modules\": []"), json);
+    }
+
+    // module path -> duration in seconds, the module name is the path with a version
+    private static Map<String, Integer> durations(Object... pathsAndSeconds) {
+        Map<String, Integer> durations = new HashMap<>();
+        for (int i = 0; i < pathsAndSeconds.length; i += 2) {
+            durations.put((String) pathsAndSeconds[i], (Integer) pathsAndSeconds[i + 1]);
+        }
+        return durations;
+    }
+
+    private static MavenBuildReport report(Map<String, Integer> durations) {
+        MavenBuildReport report = new MavenBuildReport();
+        Map<String, String> paths = new HashMap<>();
+        durations.forEach((path, seconds) -> {
+            start(report, path + " 1.0");
+            report.accept(MavenOutputEvent.builder().type(Type.MODULE_FINISHED).module(path).status("SUCCESS")
+                    .duration(Duration.ofSeconds(seconds)).build());
+            paths.put(path, path);
+        });
+        report.setModulePaths(paths);
+        return report;
+    }
+
+    private static void start(MavenBuildReport report, String module) {
+        report.accept(MavenOutputEvent.builder().type(Type.MODULE_STARTED).module(module).timestamp(System.currentTimeMillis()).build());
+    }
+
+    private static List<String> names(MavenBuildReport.CriticalPath criticalPath) {
+        return criticalPath.getModules().stream().map(MavenBuildReport.ModuleTiming::getName).collect(Collectors.toList());
+    }
+}
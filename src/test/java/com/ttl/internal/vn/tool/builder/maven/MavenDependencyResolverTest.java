@@ -0,0 +1,99 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.aether.resolution.DependencyResolutionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// NOTE: The local repository is a temporary folder and the resolver is offline, so nothing is ever downloaded
+class MavenDependencyResolverTest {
+    @TempDir
+    File tempFolder;
+
+    private File projectFolder;
+    private File localRepository;
+    private File settingsXml;
+
+    @BeforeEach
+    void createProject() throws IOException {
+        projectFolder = new File(tempFolder, "project");
+        localRepository = new File(tempFolder, "repository");
+        settingsXml = new File(tempFolder, "settings.xml");
+        write(settingsXml, "<settings><localRepository>" + localRepository.getAbsolutePath() + "</localRepository></settings>");
+        write(new File(projectFolder, "pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+                + "<groupId>g</groupId><artifactId>root</artifactId><version>1</version><packaging>pom</packaging>"
+                + "<modules><module>a</module><module>b</module><module>c</module></modules></project>");
+        write(new File(projectFolder, "a/pom.xml"), module("a", dependency("ext", "lib-two", "1")));
+        write(new File(projectFolder, "b/pom.xml"), module("b", ""));
+        // NOTE: Declared in an order that is neither the module order nor the alphabetical one
+        write(new File(projectFolder, "c/pom.xml"), module("c", dependency("ext", "lib-one", "1")
+                + dependency("g", "b", "1") + dependency("g", "a", "1")));
+        installJar("lib-one", dependency("ext", "lib-three", "1"));
+        installJar("lib-two", "");
+        installJar("lib-three", "");
+    }
+
+    @Test
+    void keepsClasspathOrderOffline() throws Exception {
+        Map<String, List<String>> classpathMap = new MavenDependencyResolver(settingsXml)
+                .resolveClasspaths(projectFolder, Arrays.asList("a", "b", "c"), 2);
+
+        assertEquals(Arrays.asList(jar("lib-two")), classpathMap.get("a"));
+        assertEquals(Collections.emptyList(), classpathMap.get("b"));
+        // Pre-order: every dependency right before its own dependencies
+        assertEquals(Arrays.asList(jar("lib-one"), jar("lib-three"), classes("b"), classes("a"), jar("lib-two")),
+                classpathMap.get("c"));
+    }
+
+    @Test
+    void failsOnArtifactMissingFromLocalRepository() throws Exception {
+        write(new File(projectFolder, "b/pom.xml"), module("b", dependency("ext", "missing", "1")));
+
+        assertThrows(DependencyResolutionException.class, () -> new MavenDependencyResolver(settingsXml)
+                .resolveClasspaths(projectFolder, Arrays.asList("a", "b", "c"), 1));
+    }
+
+    private void installJar(String artifactId, String dependencies) throws IOException {
+        File folder = new File(localRepository, "ext/" + artifactId + "/1");
+        write(new File(folder, artifactId + "-1.pom"), "<project><modelVersion>4.0.0</modelVersion>"
+                + "<groupId>ext</groupId><artifactId>" + artifactId + "</artifactId><version>1</version>"
+                + "<dependencies>" + dependencies + "</dependencies></project>");
+        write(new File(folder, artifactId + "-1.jar"), "");
+    }
+
+    private String jar(String artifactId) {
+        return new File(localRepository, "ext/" + artifactId + "/1/" + artifactId + "-1.jar").getAbsolutePath();
+    }
+
+    private String classes(String module) {
+        return new File(projectFolder, module + "/target/classes").getAbsolutePath();
+    }
+
+    private static String module(String artifactId, String dependencies) {
+        return "<project><modelVersion>4.0.0</modelVersion>"
+                + "<parent><groupId>g</groupId><artifactId>root</artifactId><version>1</version></parent>"
+                + "<artifactId>" + artifactId + "</artifactId><dependencies>" + dependencies + "</dependencies></project>";
+    }
+
+    private static String dependency(String groupId, String artifactId, String version) {
+        return "<dependency><groupId>" + groupId + "</groupId><artifactId>" + artifactId + "</artifactId><version>" + version
+                + "</version></dependency>";
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,128 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.ttl.internal.vn.tool.builder.maven.MavenOutputEvent.Type;
+
+// NOTE: The lines are copied from the output of maven 3.9 in batch mode. Every case feed its lines in order to a new
+// parser and check the event of the last one, the lines before only set up the reactor summary state
+class MavenOutputParserTest {
+    private static final String SUMMARY = "[INFO] Reactor Summary for Core Parent 1.0-SNAPSHOT:";
+
+    static Stream<Arguments> events() {
+        return Stream.of(
+                Arguments.of(lines("[INFO] Building Core Server 1.0-SNAPSHOT                                       [2/5]"),
+                        event(Type.MODULE_STARTED).module("Core Server 1.0-SNAPSHOT").moduleNumber(2).totalModules(5)),
+                Arguments.of(lines("[INFO] Building demo 1.0-SNAPSHOT"),
+                        event(Type.MODULE_STARTED).module("demo 1.0-SNAPSHOT").moduleNumber(1).totalModules(1)),
+                Arguments.of(lines(SUMMARY, "[INFO] ",
+                                "[INFO] Core Parent ........................................ SUCCESS [  0.512 s]"),
+                        event(Type.MODULE_FINISHED).module("Core Parent").status("SUCCESS").duration(Duration.ofMillis(512))),
+                Arguments.of(lines(SUMMARY,
+                                "[INFO] Core Server 2.0 .................................... FAILURE [01:02 min]"),
+                        event(Type.MODULE_FINISHED).module("Core Server 2.0").status("FAILURE").duration(Duration.ofSeconds(62))),
+                Arguments.of(lines(SUMMARY,
+                                "[INFO] Core Web ........................................... SUCCESS [01:02 h]"),
+                        event(Type.MODULE_FINISHED).module("Core Web").status("SUCCESS").duration(Duration.ofMinutes(62))),
+                // NOTE: Durations are formatted with the default locale
+                Arguments.of(lines(SUMMARY,
+                                "[INFO] Core Api ........................................... SUCCESS [  1,250 s]"),
+                        event(Type.MODULE_FINISHED).module("Core Api").status("SUCCESS").duration(Duration.ofMillis(1250))),
+                Arguments.of(lines(SUMMARY,
+                                "[INFO] Core Client ........................................ SKIPPED"),
+                        event(Type.MODULE_FINISHED).module("Core Client").status("SKIPPED")),
+                Arguments.of(lines("[WARNING] The requested profile \"dev\" could not be activated because it does not exist."),
+                        event(Type.WARNING)),
+                Arguments.of(lines("[ERROR] Failed to execute goal org.apache.maven.plugins:maven-compiler-plugin:3.11.0:compile"
+                                + " (default-compile) on project core-server: Compilation failure"),
+                        event(Type.ERROR)),
+                Arguments.of(lines("[ERROR] "), event(Type.ERROR)),
+                Arguments.of(lines("[INFO] Downloaded from central: https://repo.maven.apache.org/maven2/org/a/a/1.0/a-1.0.pom"
+                                + " (12 kB at 3 kB/s)"),
+                        event(Type.DOWNLOAD).url("https://repo.maven.apache.org/maven2/org/a/a/1.0/a-1.0.pom").bytes(12_000)
+                                .duration(Duration.ofSeconds(4))),
+                Arguments.of(lines("[INFO] Downloaded from nexus: http://nexus/repository/public/org/a/b/1.0/b-1.0.jar (1.5 MB)"),
+                        event(Type.DOWNLOAD).url("http://nexus/repository/public/org/a/b/1.0/b-1.0.jar").bytes(1_500_000)),
+                Arguments.of(lines(SUMMARY, "[INFO] Core Parent ..... SUCCESS [  0.512 s]", "[INFO] BUILD SUCCESS"),
+                        event(Type.BUILD_FINISHED).status("SUCCESS")),
+                Arguments.of(lines("[INFO] BUILD FAILURE"), event(Type.BUILD_FINISHED).status("FAILURE")));
+    }
+
+    @ParameterizedTest
+    @MethodSource("events")
+    void parsesEvent(List<String> lines, MavenOutputEvent.MavenOutputEventBuilder expectedBuilder) {
+        MavenOutputParser parser = new MavenOutputParser();
+        for (String line : lines.subList(0, lines.size() - 1)) {
+            parser.parse(line);
+        }
+        String line = lines.get(lines.size() - 1);
+        MavenOutputEvent expected = expectedBuilder.line(line).build();
+
+        MavenOutputEvent actual = parser.parse(line);
+
+        assertNotNull(actual, line);
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getLine(), actual.getLine());
+        assertEquals(expected.getModule(), actual.getModule());
+        assertEquals(expected.getModuleNumber(), actual.getModuleNumber());
+        assertEquals(expected.getTotalModules(), actual.getTotalModules());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getDuration(), actual.getDuration());
+        assertEquals(expected.getUrl(), actual.getUrl());
+        assertEquals(expected.getBytes(), actual.getBytes());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "[INFO] ",
+            "[INFO] Scanning for projects...",
+            "[INFO] --------------------------------[ jar ]---------------------------------",
+            "[INFO] Building jar: /work/core-server/target/core-server-1.0-SNAPSHOT.jar",
+            "[INFO] Building war: /work/core-web/target/core-web-1.0-SNAPSHOT.war",
+            "[INFO] Downloading from central: https://repo.maven.apache.org/maven2/org/a/a/1.0/a-1.0.pom",
+            "[INFO] --- maven-compiler-plugin:3.11.0:compile (default-compile) @ core-server ---",
+            "[DEBUG] Configuring mojo",
+            "Progress (1): 12 kB",
+            // NOTE: Looks like a summary line, but it is outside the reactor summary
+            "[INFO] Core Parent ........................................ SUCCESS [  0.512 s]" })
+    void ignoresOtherLines(String line) {
+        assertNull(new MavenOutputParser().parse(line));
+    }
+
+    @Test
+    void stopsReactorSummaryAtBuildResult() {
+        MavenOutputParser parser = new MavenOutputParser();
+        parser.parse(SUMMARY);
+        parser.parse("[INFO] BUILD SUCCESS");
+
+        assertNull(parser.parse("[INFO] Core Parent ........................................ SUCCESS [  0.512 s]"));
+    }
+
+    @Test
+    void ignoresNullLine() {
+        assertNull(new MavenOutputParser().parse(null));
+    }
+
+    private static List<String> lines(String... lines) {
+        return Collections.unmodifiableList(Arrays.asList(lines));
+    }
+
+    private static MavenOutputEvent.MavenOutputEventBuilder event(Type type) {
+        return MavenOutputEvent.builder().type(type);
+    }
+}
@@ -0,0 +1,118 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.ttl.internal.vn.tool.builder.util.GitUtil;
+
+// NOTE: The same tree is discovered from the disk (effective models) and from a commit (raw models with the profiles
+// activated like maven would), both must give the same leaf modules in the same breadth-first order
+class ModuleDiscoveryTest {
+    private static final List<String> LEAF_MODULES = Arrays.asList("b", "a/x", "a/z", "a/w", "a/u", "a/y/deep");
+
+    @TempDir
+    File projectFolder;
+
+    @BeforeEach
+    void createProject() throws IOException {
+        write("pom.xml", pom("root", null, "<module>b</module><module>a</module>", ""));
+        write("b/pom.xml", pom("b", "root", "", ""));
+        write("a/pom.xml", pom("a", "root", "<module>x</module><module>y</module>",
+                profile("property", "<property><name>!skipZ</name></property>", "z")
+                        + profile("file-exists", "<file><exists>${basedir}/extra.txt</exists></file>", "w")
+                        + profile("file-missing", "<file><missing>${basedir}/absent.txt</missing></file>", "u")
+                        + profile("file-never", "<file><exists>${basedir}/nope.txt</exists></file>", "never")));
+        write("a/extra.txt", "");
+        write("a/y/pom.xml", pom("y", "a", "<module>deep</module>", ""));
+        for (String leaf : Arrays.asList("x", "z", "w", "u", "y/deep")) {
+            write("a/" + leaf + "/pom.xml", pom(leaf.replace('/', '-'), leaf.startsWith("y/") ? "y" : "a", "", ""));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 4 })
+    void discoversLeafModulesOnDisk(int threads) throws Exception {
+        assertEquals(LEAF_MODULES, new ModuleDiscovery().discoverLeafModules(projectFolder, threads));
+    }
+
+    @Test
+    void discoversLeafModulesFromGit() throws Exception {
+        try (GitUtil gitUtil = new GitUtil(commitAll())) {
+            assertEquals(LEAF_MODULES, new ModuleDiscovery().discoverLeafModules(gitUtil, "HEAD"));
+        }
+    }
+
+    // NOTE: A file activation look at the tree of the ref, not at the working tree
+    @Test
+    void activatesFileProfilesFromTreeOfRef() throws Exception {
+        try (GitUtil gitUtil = new GitUtil(commitAll())) {
+            Files.delete(new File(projectFolder, "a/extra.txt").toPath());
+            write("a/nope.txt", "");
+            write("a/never/pom.xml", pom("never", "a", "", ""));
+
+            assertEquals(LEAF_MODULES, new ModuleDiscovery().discoverLeafModules(gitUtil, "HEAD"));
+            assertEquals(Arrays.asList("b", "a/x", "a/z", "a/u", "a/never", "a/y/deep"),
+                    new ModuleDiscovery().discoverLeafModules(projectFolder, 2));
+        }
+    }
+
+    @Test
+    void rediscoversChangedPom() throws Exception {
+        ModuleDiscovery moduleDiscovery = new ModuleDiscovery();
+        assertEquals(LEAF_MODULES, moduleDiscovery.discoverLeafModules(projectFolder, 2));
+
+        write("a/y/pom.xml", pom("y", "a", "", ""));
+
+        assertEquals(Arrays.asList("b", "a/x", "a/y", "a/z", "a/w", "a/u"), moduleDiscovery.discoverLeafModules(projectFolder, 2));
+    }
+
+    @Test
+    void failsOnMissingModulePom() throws Exception {
+        Files.delete(new File(projectFolder, "a/y/deep/pom.xml").toPath());
+
+        assertThrows(IOException.class, () -> new ModuleDiscovery().discoverLeafModules(projectFolder, 2));
+        try (GitUtil gitUtil = new GitUtil(commitAll())) {
+            assertThrows(IllegalStateException.class, () -> new ModuleDiscovery().discoverLeafModules(gitUtil, "HEAD"));
+        }
+    }
+
+    private Git commitAll() throws Exception {
+        Git git = Git.init().setDirectory(projectFolder).call();
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("modules").setAuthor("test", "test@test").setCommitter("test", "test@test").call();
+        return git;
+    }
+
+    private static String pom(String artifactId, String parent, String modules, String profiles) {
+        return "<project><modelVersion>4.0.0</modelVersion>"
+                + (parent == null ? "" : "<parent><groupId>g</groupId><artifactId>" + parent + "</artifactId><version>1</version></parent>")
+                + "<groupId>g</groupId><artifactId>" + artifactId + "</artifactId><version>1</version>"
+                + (modules.isEmpty() && profiles.isEmpty() ? "" : "<packaging>pom</packaging>")
+                + "<modules>" + modules + "</modules><profiles>" + profiles + "</profiles></project>";
+    }
+
+    private static String profile(String id, String activation, String module) {
+        return "<profile><id>" + id + "</id><activation>" + activation + "</activation><modules><module>" + module
+                + "</module></modules></profile>";
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(projectFolder, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,117 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ModuleGraphTest {
+    // NOTE: api <- core <- server, core <- batch, tools is alone
+    private static ModuleGraph newGraph() {
+        Map<String, List<String>> dependencies = new HashMap<>();
+        dependencies.put("core", Collections.singletonList("api"));
+        dependencies.put("server", Arrays.asList("core", "api"));
+        dependencies.put("batch", Arrays.asList("core", "unknown", null));
+        return ModuleGraph.of(Arrays.asList("api", "batch", "core", "server", "tools"), dependencies);
+    }
+
+    @Test
+    void computesTransitiveClosures() {
+        ModuleGraph graph = newGraph();
+
+        assertEquals(Arrays.asList("api", "core"), graph.getDependencies("server"));
+        assertEquals(Arrays.asList("batch", "core", "server"), graph.getDependents("api"));
+        assertEquals(Collections.emptyList(), graph.getDependencies("tools"));
+        assertEquals(Arrays.asList("batch", "server", "tools"), graph.getRoots());
+        assertFalse(graph.hasCycle());
+        assertEquals(Arrays.asList("api", "core", "batch", "server", "tools"), graph.getTopologicalOrder());
+    }
+
+    @Test
+    void affectedRootsAreDependentRootsOfChangedModules() {
+        ModuleGraph graph = newGraph();
+
+        assertEquals(Arrays.asList("batch", "server"), graph.getAffectedRoots(Collections.singletonList("api")));
+        assertEquals(Collections.singletonList("server"), graph.getAffectedRoots(Collections.singletonList("server")));
+        assertEquals(Collections.singletonList("tools"), graph.getAffectedRoots(Arrays.asList("tools", "missing")));
+    }
+
+    @Test
+    void affectedModulesAlsoMakeTheDependenciesOfAffectedRoots() {
+        ModuleGraph graph = newGraph();
+
+        // NOTE: Like mvn -pl server -am, a change of server need api and core in the reactor
+        assertEquals(Arrays.asList("api", "core", "server"), graph.getAffectedModules(Collections.singletonList("server")));
+        // NOTE: A change of core affect batch and server, so api is built too
+        assertEquals(Arrays.asList("api", "batch", "core", "server"), graph.getAffectedModules(Collections.singletonList("core")));
+        assertEquals(Collections.singletonList("tools"), graph.getAffectedModules(Collections.singletonList("tools")));
+        assertEquals(Collections.emptyList(), graph.getAffectedModules(Collections.emptyList()));
+    }
+
+    @Test
+    void detectsCycles() {
+        Map<String, List<String>> dependencies = new HashMap<>();
+        dependencies.put("a", Collections.singletonList("b"));
+        dependencies.put("b", Collections.singletonList("c"));
+        dependencies.put("c", Arrays.asList("a", "c"));
+        dependencies.put("app", Collections.singletonList("a"));
+        ModuleGraph graph = ModuleGraph.of(Arrays.asList("a", "app", "b", "c", "lib"), dependencies);
+
+        assertTrue(graph.hasCycle());
+        assertEquals(Arrays.asList("a", "b", "c"), graph.getCyclicModules());
+        assertThrows(IllegalStateException.class, graph::getTopologicalOrder);
+        assertEquals(Arrays.asList("b", "c"), graph.getDependencies("a"));
+        assertEquals(Arrays.asList("a", "app", "b"), graph.getDependents("c"));
+        assertEquals(Collections.singletonList("app"), graph.getAffectedRoots(Collections.singletonList("b")));
+        assertEquals(Arrays.asList("a", "app", "b", "c"), graph.getAffectedModules(Collections.singletonList("c")));
+    }
+
+    @Test
+    void ignoresSelfDependency() {
+        ModuleGraph graph = ModuleGraph.of(Collections.singletonList("a"),
+                Collections.singletonMap("a", Collections.singletonList("a")));
+
+        assertFalse(graph.hasCycle());
+        assertEquals(Collections.singletonList("a"), graph.getRoots());
+    }
+
+    @Test
+    void keepsClasspathOrderOfDependencies() {
+        ModuleGraph graph = newGraph();
+
+        // NOTE: server list core before api, unlike the module order
+        assertEquals(Arrays.asList("core", "api"), graph.getOrderedDependencies("server"));
+        // batch only list core, api is a transitive dependency added after it
+        assertEquals(Arrays.asList("core", "api"), graph.getOrderedDependencies("batch"));
+        assertEquals(Collections.emptyList(), graph.getOrderedDependencies("tools"));
+    }
+
+    @Test
+    void readsWhatItWrites() throws Exception {
+        ModuleGraph graph = newGraph();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        graph.write(new DataOutputStream(bytes));
+
+        ModuleGraph readGraph = ModuleGraph.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(graph.getModules(), readGraph.getModules());
+        for (String module : graph.getModules()) {
+            assertEquals(graph.getDependencies(module), readGraph.getDependencies(module));
+            assertEquals(graph.getOrderedDependencies(module), readGraph.getOrderedDependencies(module));
+            assertEquals(graph.getDependents(module), readGraph.getDependents(module));
+        }
+        assertEquals(graph.getTopologicalOrder(), readGraph.getTopologicalOrder());
+    }
+}
@@ -0,0 +1,56 @@
+package com.ttl.internal.vn.tool.builder.maven;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+class ModulePathTrieTest {
+    private final ModulePathTrie trie = new ModulePathTrie(Arrays.asList("core", "core2", "server/core", "server/core-api"));
+
+    @Test
+    void doesNotMatchSiblingWithSamePrefix() {
+        assertEquals("core", trie.findModule("core/pom.xml"));
+        assertEquals("core2", trie.findModule("core2/pom.xml"));
+        assertEquals("core2", trie.findModule("core2/src/main/java/A.java"));
+        assertEquals("server/core", trie.findModule("server/core/src/A.java"));
+        assertEquals("server/core-api", trie.findModule("server/core-api/src/A.java"));
+        assertNull(trie.findModule("core3/pom.xml"));
+        assertNull(trie.findModule("cor/pom.xml"));
+    }
+
+    @Test
+    void matchesModuleFolderItself() {
+        assertEquals("core", trie.findModule("core"));
+        assertEquals("server/core", trie.findModule("server/core"));
+        assertNull(trie.findModule("server"));
+        assertNull(trie.findModule("server/pom.xml"));
+    }
+
+    @Test
+    void returnsDeepestModule() {
+        ModulePathTrie nestedTrie = new ModulePathTrie(Arrays.asList("app", "app/plugins/audit"));
+
+        assertEquals("app", nestedTrie.findModule("app/src/A.java"));
+        assertEquals("app/plugins/audit", nestedTrie.findModule("app/plugins/audit/src/A.java"));
+        assertEquals("app", nestedTrie.findModule("app/plugins/other/A.java"));
+    }
+
+    @Test
+    void ignoresEmptyAndCurrentFolderSegments() {
+        assertEquals("server/core", trie.findModule("./server//core/./pom.xml"));
+        assertEquals("server/core", trie.findModule("server" + File.separator + "core" + File.separator + "pom.xml"));
+    }
+
+    @Test
+    void rootModuleContainsEveryPath() {
+        ModulePathTrie rootTrie = new ModulePathTrie(Collections.singletonList(""));
+
+        assertEquals("", rootTrie.findModule("pom.xml"));
+        assertEquals("", rootTrie.findModule("src/main/java/A.java"));
+    }
+}
@@ -0,0 +1,172 @@
+package com.ttl.internal.vn.tool.builder.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class ConcurrentBuildTaskTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    void buildsTargetsSharingModuleAtTheSameTime() {
+        // NOTE: Both builds wait for each other while building the shared module, so they only finish when they run
+        // at the same time
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        // target -> modules built by it
+        Map<String, List<String>> builtModules = new ConcurrentHashMap<>();
+        AtomicInteger cleanups = new AtomicInteger();
+        ConcurrentBuildTask concurrentBuildTask = new ConcurrentBuildTask() {
+            @Override
+            public void cleanup() {
+                cleanups.incrementAndGet();
+            }
+        };
+        concurrentBuildTask.addBuild("v1..release/1", build(
+                step("common", () -> build(builtModules, "release/1", "common", barrier)),
+                step("app-1", () -> build(builtModules, "release/1", "app-1", null))));
+        concurrentBuildTask.addBuild("v2..release/2", build(
+                step("common", () -> build(builtModules, "release/2", "common", barrier)),
+                step("app-2", () -> build(builtModules, "release/2", "app-2", null))));
+        List<Throwable> errors = subscribe(concurrentBuildTask);
+
+        assertTrue(concurrentBuildTask.start());
+
+        assertTrue(errors.isEmpty(), "Unexpected errors " + errors);
+        assertTrue(concurrentBuildTask.isDone());
+        assertTrue(concurrentBuildTask.getBuilds().values().stream().allMatch(Task::isDone));
+        assertEquals(Arrays.asList("common", "app-1"), builtModules.get("release/1"));
+        assertEquals(Arrays.asList("common", "app-2"), builtModules.get("release/2"));
+        assertEquals(1, cleanups.get());
+        assertEquals(1., concurrentBuildTask.percentage());
+        assertEquals("v1..release/1: Done - 100%\nv2..release/2: Done - 100%", concurrentBuildTask.explainTask());
+    }
+
+    @Test
+    void failingTargetDoesNotStopTheOthers() {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        Map<String, List<String>> builtModules = new ConcurrentHashMap<>();
+        AtomicInteger cleanups = new AtomicInteger();
+        ConcurrentBuildTask concurrentBuildTask = new ConcurrentBuildTask() {
+            @Override
+            public void cleanup() {
+                cleanups.incrementAndGet();
+            }
+        };
+        concurrentBuildTask.addBuild("v1..release/1", build(
+                step("common", () -> build(builtModules, "release/1", "common", barrier)),
+                step("app-1", () -> {
+                    throw new IllegalStateException("app-1 doesn't compile");
+                })));
+        concurrentBuildTask.addBuild("v2..release/2", build(
+                step("common", () -> build(builtModules, "release/2", "common", barrier)),
+                step("app-2", () -> build(builtModules, "release/2", "app-2", null))));
+        List<Throwable> errors = subscribe(concurrentBuildTask);
+
+        assertFalse(concurrentBuildTask.start());
+
+        BuildTask failedBuild = concurrentBuildTask.getBuilds().get("v1..release/1");
+        BuildTask succeededBuild = concurrentBuildTask.getBuilds().get("v2..release/2");
+        assertTrue(failedBuild.isError());
+        assertTrue(succeededBuild.isDone());
+        assertEquals(Arrays.asList("common", "app-2"), builtModules.get("release/2"));
+        assertTrue(concurrentBuildTask.isError());
+        assertEquals(1, errors.size());
+        Throwable failure = errors.get(0);
+        assertEquals("Build of v1..release/1 failed: app-1 doesn't compile", failure.getMessage());
+        assertEquals("app-1 doesn't compile", failure.getCause().getMessage());
+        assertEquals(1, cleanups.get());
+        String[] progress = concurrentBuildTask.explainTask().split("\n");
+        assertTrue(progress[0].startsWith("v1..release/1: Failed"), progress[0]);
+        assertEquals("v2..release/2: Done - 100%", progress[1]);
+    }
+
+    @Test
+    void failsWithEveryFailedTarget() {
+        ConcurrentBuildTask concurrentBuildTask = new ConcurrentBuildTask();
+        concurrentBuildTask.addBuild("a..b", build(step("b", () -> {
+            throw new IllegalStateException("b failed");
+        })));
+        concurrentBuildTask.addBuild("c..d", build(step("d", () -> {
+            throw new IllegalStateException("d failed");
+        })));
+        List<Throwable> errors = subscribe(concurrentBuildTask);
+
+        assertFalse(concurrentBuildTask.start());
+
+        assertEquals(1, errors.size());
+        Throwable failure = errors.get(0);
+        assertTrue(failure.getMessage().startsWith("Build of "));
+        assertTrue(failure.getMessage().contains("a..b") && failure.getMessage().contains("c..d"));
+        assertEquals(1, failure.getSuppressed().length);
+    }
+
+    @Test
+    void runsPreparationTaskBeforeBuilds() {
+        List<String> steps = new ArrayList<>();
+        ConcurrentBuildTask concurrentBuildTask = new ConcurrentBuildTask();
+        concurrentBuildTask.setPreparationTask(step("fetch", () -> steps.add("fetch")));
+        concurrentBuildTask.addBuild("a..b", build(step("b", () -> steps.add("b"))));
+
+        assertTrue(concurrentBuildTask.start());
+
+        assertEquals(Arrays.asList("fetch", "b"), steps);
+        assertNotNull(concurrentBuildTask.getSubtasks().get(0));
+        assertEquals(2, concurrentBuildTask.getSubtasks().size());
+    }
+
+    private static void build(Map<String, List<String>> builtModules, String target, String module, CyclicBarrier barrier) {
+        if (barrier != null) {
+            try {
+                barrier.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException("The builds didn't run at the same time", e);
+            }
+        }
+        builtModules.computeIfAbsent(target, it -> new ArrayList<>()).add(module);
+    }
+
+    private static List<Throwable> subscribe(ConcurrentBuildTask concurrentBuildTask) {
+        List<Throwable> errors = new ArrayList<>();
+        concurrentBuildTask.subscribe(new DefaultSubscriber<Task>() {
+            @Override
+            public void onError(Throwable throwable) {
+                errors.add(throwable);
+            }
+        });
+        return errors;
+    }
+
+    private static BuildTask build(DiscreteTask... steps) {
+        BuildTask buildTask = new BuildTask() {
+            @Override
+            public void cleanup() {
+                /** noop */
+            }
+        };
+        Arrays.stream(steps).forEach(buildTask::addSubTask);
+        return buildTask;
+    }
+
+    private static DiscreteTask step(String name, Runnable runnable) {
+        return new DiscreteTask(name) {
+            @Override
+            public boolean start() {
+                inProgress = true;
+                runnable.run();
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package com.ttl.internal.vn.tool.builder.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import org.junit.jupiter.api.Test;
+
+class FutureTasksTest {
+    @Test
+    void runsTaskNotStartedInWaitingThread() throws Exception {
+        // NOTE: The only thread of the executor is busy until the task is done, so it could only run in this thread
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            FutureTask<Thread> task = new FutureTask<>(Thread::currentThread);
+            FutureTask<Void> busy = new FutureTask<>(() -> {
+                task.get();
+                return null;
+            });
+            executor.execute(busy);
+            executor.execute(task);
+
+            assertSame(Thread.currentThread(), FutureTasks.getResult(task));
+            busy.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void returnsResultOfTaskAlreadyDone() throws Exception {
+        FutureTask<String> task = new FutureTask<>(() -> "done");
+        task.run();
+
+        assertEquals("done", FutureTasks.getResult(task));
+    }
+
+    @Test
+    void throwsExceptionsOfTaskAsIs() {
+        IOException ioException = new IOException("io");
+        assertSame(ioException, assertThrows(IOException.class, () -> FutureTasks.getResult(new FutureTask<>(() -> {
+            throw ioException;
+        }))));
+
+        ClassNotFoundException classNotFoundException = new ClassNotFoundException("A");
+        assertSame(classNotFoundException, assertThrows(ClassNotFoundException.class,
+                () -> FutureTasks.getResult(new FutureTask<>(() -> {
+                    throw classNotFoundException;
+                }), ClassNotFoundException.class)));
+
+        IllegalStateException failure = assertThrows(IllegalStateException.class,
+                () -> FutureTasks.getResult(new FutureTask<>(() -> {
+                    throw new ClassNotFoundException("B");
+                })));
+        assertEquals("B", failure.getCause().getMessage());
+    }
+
+    @Test
+    void interruptedWaitIsIOException() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FutureTask<String> task = new FutureTask<>(() -> {
+            started.countDown();
+            release.await();
+            return "released";
+        });
+        Thread thread = new Thread(task);
+        thread.start();
+        try {
+            // NOTE: The task is running in the other thread, so this thread wait for it and is interrupted
+            started.await();
+            Thread.currentThread().interrupt();
+            IOException e = assertThrows(IOException.class, () -> FutureTasks.getResult(task));
+
+            assertTrue(e.getCause() instanceof InterruptedException);
+            assertTrue(Thread.interrupted());
+        } finally {
+            release.countDown();
+            thread.join();
+        }
+        assertEquals("released", FutureTasks.getResult(task));
+    }
+}
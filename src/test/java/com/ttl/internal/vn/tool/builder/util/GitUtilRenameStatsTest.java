@@ -0,0 +1,104 @@
+package com.ttl.internal.vn.tool.builder.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ttl.internal.vn.tool.builder.git.RenameSettings;
+import com.ttl.internal.vn.tool.builder.git.RenameStats;
+
+class GitUtilRenameStatsTest {
+    @TempDir
+    File workTree;
+    private Git git;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        git = Git.init().setDirectory(workTree).call();
+        write("exact.txt", lines("exact"));
+        write("content.txt", lines("content"));
+        write("deleted.txt", lines("deleted"));
+        commit("base");
+        // NOTE: exact.txt is an exact rename, content.txt a content rename and deleted.txt/added.txt are unrelated, so
+        // the content rename detection goes through 2 deleted x 2 added files
+        Files.move(new File(workTree, "exact.txt").toPath(), new File(workTree, "exact-moved.txt").toPath());
+        Files.delete(new File(workTree, "content.txt").toPath());
+        write("content-moved.txt", lines("content") + "one more line\n");
+        Files.delete(new File(workTree, "deleted.txt").toPath());
+        write("added.txt", "something else\n");
+        commit("target");
+    }
+
+    @AfterEach
+    void tearDown() {
+        git.close();
+    }
+
+    @Test
+    void countsPairsOfContentRenameDetection() throws Exception {
+        List<RenameStats> renameStats = new ArrayList<>();
+        try (GitUtil gitUtil = new GitUtil(git)) {
+            gitUtil.getDiff("HEAD~1", "HEAD", TreeFilter.ALL, RenameSettings.DEFAULT, renameStats::add);
+        }
+
+        assertEquals(1, renameStats.size());
+        assertEquals(4, renameStats.get(0).getMaxScoredPairs());
+        assertEquals(2, renameStats.get(0).getRenames());
+        assertFalse(renameStats.get(0).isOverRenameLimit());
+    }
+
+    @Test
+    void scoresNoPairWithExactRenamesOnly() throws Exception {
+        List<RenameStats> renameStats = new ArrayList<>();
+        try (GitUtil gitUtil = new GitUtil(git)) {
+            gitUtil.getDiff("HEAD~1", "HEAD", TreeFilter.ALL, RenameSettings.builder().exactOnly(true).build(),
+                    renameStats::add);
+        }
+
+        assertEquals(0, renameStats.get(0).getMaxScoredPairs());
+        assertEquals(1, renameStats.get(0).getRenames());
+    }
+
+    @Test
+    void scoresNoPairOverRenameLimit() throws Exception {
+        List<RenameStats> renameStats = new ArrayList<>();
+        try (GitUtil gitUtil = new GitUtil(git)) {
+            gitUtil.getDiff("HEAD~1", "HEAD", TreeFilter.ALL, RenameSettings.builder().renameLimit(1).build(),
+                    renameStats::add);
+        }
+
+        assertEquals(0, renameStats.get(0).getMaxScoredPairs());
+        assertTrue(renameStats.get(0).isOverRenameLimit());
+    }
+
+    private static String lines(String name) {
+        return StringUtils.repeat(name + " line\n", 20);
+    }
+
+    private void commit(String message) throws Exception {
+        git.add().addFilepattern(".").call();
+        git.add().setUpdate(true).addFilepattern(".").call();
+        git.commit().setMessage(message).setAuthor("test", "test@test").setCommitter("test", "test@test").call();
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(workTree, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
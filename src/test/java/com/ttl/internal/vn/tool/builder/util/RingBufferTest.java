@@ -0,0 +1,53 @@
+package com.ttl.internal.vn.tool.builder.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+class RingBufferTest {
+    @Test
+    void keepsElementsInInsertionOrderUntilFull() {
+        RingBuffer<String> ringBuffer = new RingBuffer<>(3);
+        ringBuffer.add("a");
+        ringBuffer.add("b");
+
+        assertEquals(2, ringBuffer.size());
+        assertEquals(Arrays.asList("a", "b"), ringBuffer.toList());
+    }
+
+    @Test
+    void overwritesOldestElementOnceFull() {
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(3);
+        for (int i = 1; i <= 7; i++) {
+            ringBuffer.add(i);
+        }
+
+        assertEquals(3, ringBuffer.size());
+        assertEquals(Arrays.asList(5, 6, 7), ringBuffer.toList());
+    }
+
+    @Test
+    void clearEmptiesTheBuffer() {
+        RingBuffer<String> ringBuffer = new RingBuffer<>(2);
+        ringBuffer.add("a");
+        ringBuffer.add("b");
+        ringBuffer.add("c");
+        ringBuffer.clear();
+
+        assertEquals(0, ringBuffer.size());
+        assertTrue(ringBuffer.toList().isEmpty());
+
+        ringBuffer.add("d");
+        assertEquals(Collections.singletonList("d"), ringBuffer.toList());
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(0));
+    }
+}